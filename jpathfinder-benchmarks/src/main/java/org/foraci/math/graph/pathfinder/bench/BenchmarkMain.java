@@ -0,0 +1,24 @@
+package org.foraci.math.graph.pathfinder.bench;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the GC profiler enabled, so allocation rates are
+ * reported next to timings. Accepts the usual JMH command line, for example
+ * <code>QueryBenchmark -p map=/data/maps/arena.map</code>.
+ */
+public class BenchmarkMain
+{
+	public static void main(String[] args) throws RunnerException,
+		CommandLineOptionException
+	{
+		CommandLineOptions cmd = new CommandLineOptions(args);
+		new Runner(new OptionsBuilder().parent(cmd).addProfiler(
+			GCProfiler.class).build()).run();
+	}
+}
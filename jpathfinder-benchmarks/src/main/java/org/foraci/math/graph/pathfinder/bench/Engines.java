@@ -0,0 +1,37 @@
+package org.foraci.math.graph.pathfinder.bench;
+
+import org.foraci.math.graph.pathfinder.PathFinder;
+import org.foraci.math.graph.pathfinder.astar.AStarPathFinder;
+import org.foraci.math.graph.pathfinder.dijkstra.DijkstraPathFinder;
+import org.foraci.math.graph.pathfinder.jps.JumpPointPathFinder;
+
+/** Builds the path finder named by a benchmark's <code>engine</code> parameter. */
+final class Engines
+{
+	private Engines()
+	{
+	}
+
+	static PathFinder build(String engine, MapState m)
+	{
+		switch (engine)
+		{
+		case "astar":
+			return AStarPathFinder.buildWeightedGridPathFinder(m.weights,
+				m.ids, m.rows, m.cols, m.pathCost, m.successorCost);
+		case "bidirectional":
+			AStarPathFinder pf = AStarPathFinder.buildWeightedGridPathFinder(
+				m.weights, m.ids, m.rows, m.cols, m.pathCost, m.successorCost);
+			pf.setBidirectional(true);
+			return pf;
+		case "jps":
+			return JumpPointPathFinder.buildGridPathFinder(m.weights, m.ids,
+				m.rows, m.cols, m.pathCost, m.successorCost);
+		case "dijkstra":
+			return DijkstraPathFinder.buildWeightedGridPathFinder(m.weights,
+				m.ids, m.rows, m.cols, m.successorCost);
+		default:
+			throw new IllegalArgumentException("unknown engine: " + engine);
+		}
+	}
+}
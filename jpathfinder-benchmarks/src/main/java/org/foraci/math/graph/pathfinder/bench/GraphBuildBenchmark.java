@@ -0,0 +1,36 @@
+package org.foraci.math.graph.pathfinder.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.foraci.math.graph.pathfinder.PathFinder;
+import org.foraci.math.graph.pathfinder.astar.AStarPathFinder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Measures the time to build a path finder's graph from a map. */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GraphBuildBenchmark
+{
+	@Benchmark
+	public PathFinder buildGrid(MapState m)
+	{
+		return AStarPathFinder.buildGridPathFinder(m.weights, m.ids, m.rows,
+			m.cols, m.pathCost, m.successorCost);
+	}
+
+	@Benchmark
+	public PathFinder buildWeightedGrid(MapState m)
+	{
+		return AStarPathFinder.buildWeightedGridPathFinder(m.weights, m.ids,
+			m.rows, m.cols, m.pathCost, m.successorCost);
+	}
+}
@@ -0,0 +1,98 @@
+package org.foraci.math.graph.pathfinder.bench;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+import org.foraci.math.graph.pathfinder.PathCostEstimator;
+import org.foraci.math.graph.pathfinder.PathNode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * A Moving AI map and its scenario, shared by all benchmark threads. The
+ * <code>map</code> parameter is a file path or a class path resource; the
+ * scenario is read from the same location with <code>.scen</code> appended.
+ */
+@State(Scope.Benchmark)
+public class MapState
+{
+	@Param("maps/rooms-256.map")
+	public String map;
+
+	/** The weight of swamp cells; 1 keeps the map uniform-cost. */
+	@Param("1")
+	public int swampWeight;
+
+	public int rows, cols;
+	public int[] weights, ids;
+	public int[] startIds, goalIds;
+	/** Octile distance times the lowest weight, 1. */
+	public PathCostEstimator pathCost;
+	/** 1 straight or sqrt(2) diagonally, times the average weight. */
+	public PathCostEstimator successorCost;
+
+	@Setup(Level.Trial)
+	public void load() throws IOException
+	{
+		MovingAiMap grid;
+		MovingAiScenario scenario;
+		try (InputStream in = open(map))
+		{
+			grid = MovingAiMap.load(in);
+		}
+		try (InputStream in = open(map + ".scen"))
+		{
+			scenario = MovingAiScenario.load(in);
+		}
+		rows = grid.height();
+		cols = grid.width();
+		weights = grid.weights(swampWeight);
+		ids = grid.ids();
+		List<MovingAiScenario.Problem> problems = scenario.problems();
+		startIds = new int[problems.size()];
+		goalIds = new int[problems.size()];
+		for (int i = 0; i < problems.size(); i++)
+		{
+			startIds[i] = problems.get(i).startId();
+			goalIds[i] = problems.get(i).goalId();
+		}
+		final int w = cols;
+		pathCost = new PathCostEstimator()
+			{
+				public float cost(PathNode start, PathNode dest)
+				{
+					int dx = Math.abs(start.id() % w - dest.id() % w);
+					int dy = Math.abs(start.id() / w - dest.id() / w);
+					return Math.max(dx, dy) + 0.41421356f * Math.min(dx, dy);
+				}
+			};
+		successorCost = new PathCostEstimator()
+			{
+				public float cost(PathNode start, PathNode dest)
+				{
+					float avg = 0.5f * (start.getWeight() + dest.getWeight());
+					boolean straight = start.id() % w == dest.id() % w
+						|| start.id() / w == dest.id() / w;
+					return straight ? avg : 1.41421356f * avg;
+				}
+			};
+	}
+
+	private static InputStream open(String location) throws IOException
+	{
+		File file = new File(location);
+		if (file.isFile())
+			return new FileInputStream(file);
+		InputStream in = MapState.class.getClassLoader().getResourceAsStream(
+			location);
+		if (in == null)
+			throw new IOException("no such file or resource: " + location);
+		return in;
+	}
+}
@@ -0,0 +1,154 @@
+package org.foraci.math.graph.pathfinder.bench;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+
+import org.foraci.math.graph.pathfinder.PathFinder;
+
+/**
+ * A grid map in the Moving AI benchmark format (<code>.map</code>):
+ *
+ * <pre>
+ * type octile
+ * height H
+ * width W
+ * map
+ * (H lines of W terrain characters)
+ * </pre>
+ *
+ * Terrain <code>.</code> and <code>G</code> is passable ground,
+ * <code>S</code> is passable swamp, and everything else (<code>@ O T
+ * W</code>) is blocked. The map converts to the <code>int[]</code> weight and
+ * id arrays taken by <code>buildGridPathFinder</code> and
+ * <code>buildWeightedGridPathFinder</code>, with the cell at
+ * <code>(x,y)</code> at index <code>y * width + x</code>.
+ */
+public final class MovingAiMap
+{
+	private final String type;
+	private final int width, height;
+	private final char[] terrain;
+
+	private MovingAiMap(String type, int width, int height, char[] terrain)
+	{
+		this.type = type;
+		this.width = width;
+		this.height = height;
+		this.terrain = terrain;
+	}
+
+	/** Loads a map from a file. */
+	public static MovingAiMap load(File file) throws IOException
+	{
+		try (InputStream in = new FileInputStream(file))
+		{
+			return load(in);
+		}
+	}
+
+	/** Loads a map from a stream, which is left open. */
+	public static MovingAiMap load(InputStream in) throws IOException
+	{
+		BufferedReader reader = new BufferedReader(new InputStreamReader(in,
+			StandardCharsets.US_ASCII));
+		String type = null;
+		int width = -1, height = -1;
+		String line;
+		while ((line = reader.readLine()) != null)
+		{
+			line = line.trim();
+			if (line.equals("map"))
+				break;
+			String[] kv = line.split("\\s+");
+			if (kv.length != 2)
+				throw new IOException("bad map header line: " + line);
+			if (kv[0].equals("type"))
+				type = kv[1];
+			else if (kv[0].equals("height"))
+				height = Integer.parseInt(kv[1]);
+			else if (kv[0].equals("width"))
+				width = Integer.parseInt(kv[1]);
+		}
+		if (width <= 0 || height <= 0)
+			throw new IOException("map header is missing width or height");
+		char[] terrain = new char[width * height];
+		for (int y = 0; y < height; y++)
+		{
+			line = reader.readLine();
+			if (line == null || line.length() < width)
+				throw new IOException("map row " + y + " is missing or short");
+			line.getChars(0, width, terrain, y * width);
+		}
+		return new MovingAiMap(type, width, height, terrain);
+	}
+
+	public String type()
+	{
+		return type;
+	}
+
+	public int width()
+	{
+		return width;
+	}
+
+	public int height()
+	{
+		return height;
+	}
+
+	/** Gets the terrain character at <code>(x,y)</code>. */
+	public char terrain(int x, int y)
+	{
+		return terrain[y * width + x];
+	}
+
+	public boolean isPassable(int x, int y)
+	{
+		char c = terrain(x, y);
+		return c == '.' || c == 'G' || c == 'S';
+	}
+
+	/**
+	 * Gets the cell weights: 1 for passable cells and
+	 * <code>PathFinder.WEIGHT_INF</code> for blocked ones.
+	 */
+	public int[] weights()
+	{
+		return weights(1);
+	}
+
+	/**
+	 * Gets the cell weights: 1 for ground, <code>swampWeight</code> for swamp
+	 * and <code>PathFinder.WEIGHT_INF</code> for blocked cells.
+	 */
+	public int[] weights(int swampWeight)
+	{
+		int[] weights = new int[terrain.length];
+		for (int i = 0; i < terrain.length; i++)
+		{
+			char c = terrain[i];
+			if (c == '.' || c == 'G')
+				weights[i] = 1;
+			else if (c == 'S')
+				weights[i] = swampWeight;
+			else
+				weights[i] = PathFinder.WEIGHT_INF;
+		}
+		return weights;
+	}
+
+	/** Gets the cell ids, which are the cell indices. */
+	public int[] ids()
+	{
+		int[] ids = new int[terrain.length];
+		for (int i = 0; i < ids.length; i++)
+			ids[i] = i;
+		return ids;
+	}
+}
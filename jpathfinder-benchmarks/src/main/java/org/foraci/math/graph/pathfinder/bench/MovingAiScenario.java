@@ -0,0 +1,111 @@
+package org.foraci.math.graph.pathfinder.bench;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The problems of a Moving AI scenario file (<code>.scen</code>): a
+ * <code>version 1</code> line followed by one tab-separated problem per line,
+ *
+ * <pre>
+ * bucket  map  width  height  startX  startY  goalX  goalY  optimalLength
+ * </pre>
+ *
+ * The optimal lengths assume diagonal moves of cost sqrt(2) that may not cut
+ * corners. The grids built by this library allow corner cutting, so their
+ * costs may be lower.
+ */
+public final class MovingAiScenario
+{
+	/** One problem of a scenario. */
+	public static final class Problem
+	{
+		public final int bucket;
+		public final String map;
+		public final int width, height;
+		public final int startX, startY, goalX, goalY;
+		public final double optimalLength;
+
+		Problem(String[] f)
+		{
+			bucket = Integer.parseInt(f[0]);
+			map = f[1];
+			width = Integer.parseInt(f[2]);
+			height = Integer.parseInt(f[3]);
+			startX = Integer.parseInt(f[4]);
+			startY = Integer.parseInt(f[5]);
+			goalX = Integer.parseInt(f[6]);
+			goalY = Integer.parseInt(f[7]);
+			optimalLength = Double.parseDouble(f[8]);
+		}
+
+		/**
+		 * Gets the id of the start cell, as given by
+		 * <code>MovingAiMap.ids()</code>.
+		 */
+		public int startId()
+		{
+			return startY * width + startX;
+		}
+
+		/**
+		 * Gets the id of the goal cell, as given by
+		 * <code>MovingAiMap.ids()</code>.
+		 */
+		public int goalId()
+		{
+			return goalY * width + goalX;
+		}
+	}
+
+	private final List<Problem> problems;
+
+	private MovingAiScenario(List<Problem> problems)
+	{
+		this.problems = Collections.unmodifiableList(problems);
+	}
+
+	/** Loads a scenario from a file. */
+	public static MovingAiScenario load(File file) throws IOException
+	{
+		try (InputStream in = new FileInputStream(file))
+		{
+			return load(in);
+		}
+	}
+
+	/** Loads a scenario from a stream, which is left open. */
+	public static MovingAiScenario load(InputStream in) throws IOException
+	{
+		BufferedReader reader = new BufferedReader(new InputStreamReader(in,
+			StandardCharsets.US_ASCII));
+		String line = reader.readLine();
+		if (line == null || !line.trim().startsWith("version"))
+			throw new IOException("scenario does not start with a version");
+		List<Problem> problems = new ArrayList<>();
+		while ((line = reader.readLine()) != null)
+		{
+			if (line.trim().isEmpty())
+				continue;
+			String[] f = line.split("\t");
+			if (f.length < 9)
+				throw new IOException("bad scenario line: " + line);
+			problems.add(new Problem(f));
+		}
+		return new MovingAiScenario(problems);
+	}
+
+	/** Gets the problems, in file order. */
+	public List<Problem> problems()
+	{
+		return problems;
+	}
+}
@@ -0,0 +1,121 @@
+package org.foraci.math.graph.pathfinder.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.foraci.math.graph.pathfinder.NoPathFoundException;
+import org.foraci.math.graph.pathfinder.PathFinder;
+import org.foraci.math.graph.pathfinder.SearchContext;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Runs the problems of a scenario round-robin, one per invocation, against
+ * each engine. <code>latency</code> samples per-query times;
+ * <code>throughput</code> also reports nodes expanded per second. Run with
+ * <code>-prof gc</code> (as <code>BenchmarkMain</code> does) for the
+ * allocation rate.
+ */
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class QueryBenchmark
+{
+	@Param({ "astar", "bidirectional", "jps", "dijkstra" })
+	public String engine;
+
+	private PathFinder finder;
+	private int[] startIds, goalIds;
+	/** Nodes each problem expands, counted once up front. */
+	private long[] expanded;
+	private int next;
+
+	/** Expansions, reported by JMH as a rate. */
+	@AuxCounters(AuxCounters.Type.OPERATIONS)
+	@State(Scope.Thread)
+	public static class Counters
+	{
+		public long expansions;
+
+		@Setup(Level.Iteration)
+		public void clear()
+		{
+			expansions = 0;
+		}
+	}
+
+	@Setup(Level.Trial)
+	public void setup(MapState m)
+	{
+		finder = Engines.build(engine, m);
+		startIds = m.startIds;
+		goalIds = m.goalIds;
+		expanded = new long[startIds.length];
+		SearchContext ctx = finder.newSearchContext();
+		for (int q = 0; q < startIds.length; q++)
+		{
+			try
+			{
+				finder.computeBestPath(startIds[q], goalIds[q], ctx);
+			}
+			catch (NoPathFoundException e)
+			{
+			}
+			expanded[q] = countClosed(ctx) + countClosed(ctx.reverse());
+		}
+		next = 0;
+	}
+
+	private static long countClosed(SearchContext ctx)
+	{
+		long n = 0;
+		for (int node = 0, size = ctx.graph().size(); node < size; node++)
+			if (ctx.state(node) == SearchContext.CLOSED)
+				n++;
+		return n;
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.SampleTime)
+	@OutputTimeUnit(TimeUnit.MICROSECONDS)
+	public float latency()
+	{
+		int q = next;
+		next = (q + 1) % startIds.length;
+		return query(q);
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.Throughput)
+	@OutputTimeUnit(TimeUnit.SECONDS)
+	public float throughput(Counters counters)
+	{
+		int q = next;
+		next = (q + 1) % startIds.length;
+		counters.expansions += expanded[q];
+		return query(q);
+	}
+
+	private float query(int q)
+	{
+		try
+		{
+			return finder.computeBestPath(startIds[q], goalIds[q]);
+		}
+		catch (NoPathFoundException e)
+		{
+			return -1;
+		}
+	}
+}
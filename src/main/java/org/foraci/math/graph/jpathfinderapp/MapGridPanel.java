@@ -15,35 +15,14 @@ import javax.swing.event.MouseInputAdapter;
 
 import org.foraci.math.graph.pathfinder.NoPathFoundException;
 import org.foraci.math.graph.pathfinder.PathCostEstimator;
-import org.foraci.math.graph.pathfinder.PathFinder;
 import org.foraci.math.graph.pathfinder.PathNode;
-import org.foraci.math.graph.pathfinder.astar.AStarPathFinder;
+import org.foraci.math.graph.pathfinder.dstar.DStarLitePlanner;
+import org.foraci.math.graph.pathfinder.graph.GridGraph;
 
 public class MapGridPanel extends JPanel
 {
 	/* weighted default cost function classes */
 
-	/**
-	 * Default path cost estimator. Uses a (fast) linear distance routine to
-	 * estimate cost.
-	 */
-	private final static PathCostEstimator WeightedPathCostEstimatorDefault = new PathCostEstimator()
-		{
-			public float cost(PathNode start, PathNode dest)
-			{
-				//get estimated cost; add a smidge so >0 if both nodes happen
-				// to have zero weights, otherwise else no successors will be
-                // chosen and no path will be found
-				float avg = 0.5f * (start.getWeight() + dest.getWeight()) + 0.01f;
-				int x0 = start.id() % NUM_GRID_CELLS_X, x1 = dest.id()
-					% NUM_GRID_CELLS_X;
-				int y0 = start.id() / NUM_GRID_CELLS_X, y1 = dest.id()
-					/ NUM_GRID_CELLS_X;
-				return (float) fastDistance(x1 - x0, y1 - y0) * avg;
-                    
-			}
-		};
-
 	/**
 	 * Default successor cost estimator. <code>start</code> and
 	 * <code>dest</code> are assumed to be neighbors.
@@ -64,6 +43,24 @@ public class MapGridPanel extends JPanel
 			}
 		};
 
+	/**
+	 * Path cost estimator for the incremental planner, which needs one that
+	 * never overestimates: the cost of the path if every cell on it had the
+	 * lowest weight, 1.
+	 */
+	private final static PathCostEstimator PlannerPathCostEstimatorDefault = new PathCostEstimator()
+		{
+			public float cost(PathNode start, PathNode dest)
+			{
+				int dx = Math.abs(start.id() % NUM_GRID_CELLS_X - dest.id()
+					% NUM_GRID_CELLS_X);
+				int dy = Math.abs(start.id() / NUM_GRID_CELLS_X - dest.id()
+					/ NUM_GRID_CELLS_X);
+				//straight steps cost 2, diagonal ones 3
+				return 2 * Math.max(dx, dy) + Math.min(dx, dy);
+			}
+		};
+
 	/** package private states for current mode of MapGridPanel */
 	public enum State { SW_NONE , SW_START, SW_DEST };
 
@@ -85,7 +82,8 @@ public class MapGridPanel extends JPanel
 		}
 	}
 
-	private int[][] grid, gridIds;
+	private final GridGraph map;
+	private DStarLitePlanner planner;
 	private LinkedList path = null;
 	private State wayPoint;
 	private Image imgStart, imgDest;
@@ -106,19 +104,9 @@ public class MapGridPanel extends JPanel
 		//
 		startpos = new Point(0, 0);
 		destpos = new Point(NUM_GRID_CELLS_X - 1, NUM_GRID_CELLS_Y - 1);
-		//alloc grid
-		grid = new int[NUM_GRID_CELLS_Y][NUM_GRID_CELLS_X];
-		gridIds = new int[NUM_GRID_CELLS_Y][NUM_GRID_CELLS_X];
-		//make min cost 1, b/c 0 can lead to (correct) unintuative looking
-		// results
-		int index = 0;
-		for (int j = 0; j < NUM_GRID_CELLS_Y; j++)
-		{
-			for (int i = 0; i < NUM_GRID_CELLS_X; i++)
-			{
-				gridIds[j][i] = index++;
-			}
-		}
+		//alloc grid; cell ids are the cell indices
+		map = new GridGraph(new float[NUM_GRID_CELLS_X * NUM_GRID_CELLS_Y],
+			null, NUM_GRID_CELLS_Y, NUM_GRID_CELLS_X);
 		generateRandomFill();
 		//add window component listener
 		addComponentListener(new ComponentAdapter()
@@ -148,17 +136,19 @@ public class MapGridPanel extends JPanel
 					if (wayPoint == State.SW_NONE)
 					{
 						if (e.getButton() == MouseEvent.BUTTON3)
-							grid[cy][cx] = (grid[cy][cx] == Integer.MAX_VALUE) ? 1
-								: Integer.MAX_VALUE;
+							map.setBlocked(cx, cy, map.isPassable(cx, cy));
+						else if (!map.isPassable(cx, cy))
+							map.setWeight(cx, cy, 1);
 						else
 						{
-							if (grid[cy][cx] == Integer.MAX_VALUE)
-								grid[cy][cx] = 1;
-							else
-								grid[cy][cx] = ++grid[cy][cx] % NUM_WEIGHT_LEVELS;
-							if (grid[cy][cx] == 0)
-								++grid[cy][cx];
+							//make min cost 1, b/c 0 can lead to (correct)
+							// unintuative looking results
+							int w = ((int) map.weight(map.node(cx, cy)) + 1)
+								% NUM_WEIGHT_LEVELS;
+							map.setWeight(cx, cy, w == 0 ? 1 : w);
 						}
+						//only the cell changed, so the planner keeps the rest
+						planner.cellChanged(cx, cy);
 					}
 					else if (wayPoint == State.SW_START)
 					{
@@ -183,7 +173,7 @@ public class MapGridPanel extends JPanel
 			{
 				if ((startpos.getX() == i && startpos.getY() == j)
 						|| (destpos.getX() == i && destpos.getY() == j)) {
-					grid[j][i] = 1;
+					map.setWeight(i, j, 1);
 					continue;
 				}
 				final double p;
@@ -193,9 +183,13 @@ public class MapGridPanel extends JPanel
 				} else {
 					p = 0.55;
 				}
-				grid[j][i] = (Math.random() < p) ? 1 : Integer.MAX_VALUE; //NUM_WEIGHT_LEVELS-1;
+				map.setWeight(i, j, (Math.random() < p) ? 1 : GridGraph.BLOCKED); //NUM_WEIGHT_LEVELS-1;
 			}
 		}
+		//every cell changed, so start planning afresh
+		planner = DStarLitePlanner.buildPlanner(map,
+			PlannerPathCostEstimatorDefault,
+			WeightedSuccessorCostEstimatorDefault);
 		mbi = null;
 	}
 	
@@ -219,9 +213,10 @@ public class MapGridPanel extends JPanel
 				//rect = new
 				// Rectangle2D.Float(i*StepX+1,ypos+1,StepX-1,StepY-1);
 				rect.setRect(i * stepX + 1, ypos + 1, stepX - 1, stepY - 1);
-				if (grid[j][i] >= 0 && grid[j][i] < NUM_WEIGHT_LEVELS)
+				float weight = map.weight(map.node(i, j));
+				if (weight >= 0 && weight < NUM_WEIGHT_LEVELS)
 				{
-					mg2d.setColor(WEIGHT_COLORS[grid[j][i]]);
+					mg2d.setColor(WEIGHT_COLORS[(int) weight]);
 					mg2d.fill(rect);
 				}
 				else
@@ -285,13 +280,11 @@ public class MapGridPanel extends JPanel
 
 	float findPath() throws NoPathFoundException
 	{
-		PathFinder pathfinder = AStarPathFinder.buildWeightedGridPathFinder(grid,
-			gridIds, WeightedPathCostEstimatorDefault,
-			WeightedSuccessorCostEstimatorDefault);
-		int startid = gridIds[(int) startpos.getY()][(int) startpos.getX()];
-		int destid = gridIds[(int) destpos.getY()][(int) destpos.getX()];
-		float cost = pathfinder.computeBestPath(startid, destid);
-		path = pathfinder.getBestPath();
+		//the planner repairs its last search for the cells changed since
+		int startid = map.id(map.node(startpos.x, startpos.y));
+		int destid = map.id(map.node(destpos.x, destpos.y));
+		float cost = planner.plan(startid, destid);
+		path = planner.getBestPath();
 		return cost;
 	}
 
@@ -327,17 +320,17 @@ public class MapGridPanel extends JPanel
 		if (res) cnt++; else cnt+=10;
 		//draw path if exists
 		g2d.setStroke(new BasicStroke(2));
-		int item = 0;
 		if (path != null && path.size() > 0)
 		{
 			Line2D ln;
 			int x, y;
-			x = ((PathNode) path.get(0)).id() % NUM_GRID_CELLS_X;
-			y = ((PathNode) path.get(0)).id() / NUM_GRID_CELLS_X;
+			x = ((PathNode) path.getFirst()).id() % NUM_GRID_CELLS_X;
+			y = ((PathNode) path.getFirst()).id() / NUM_GRID_CELLS_X;
 			int lastX = x * stepX + stepX / 2, lastY = y * stepY + stepY / 2;
-			while (item < path.size())
+			//iterate, since get(i) on a LinkedList walks the list each time
+			for (Object item : path)
 			{
-				PathNode node = (PathNode) path.get(item++);
+				PathNode node = (PathNode) item;
 				x = node.id() % NUM_GRID_CELLS_X;
 				y = node.id() / NUM_GRID_CELLS_X;
 				ln = new Line2D.Float(lastX, lastY, x = stepX * x + stepX / 2,
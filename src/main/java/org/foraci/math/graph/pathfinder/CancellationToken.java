@@ -0,0 +1,22 @@
+package org.foraci.math.graph.pathfinder;
+
+/**
+ * A flag through which any thread may ask the queries given it in their
+ * <code>SearchLimits</code> to stop. Queries check it every few expansions,
+ * so a cancelled query stops soon after, not at once.
+ */
+public final class CancellationToken
+{
+	private volatile boolean cancelled;
+
+	/** Asks every query using this token to stop. */
+	public void cancel()
+	{
+		cancelled = true;
+	}
+
+	public boolean isCancelled()
+	{
+		return cancelled;
+	}
+}
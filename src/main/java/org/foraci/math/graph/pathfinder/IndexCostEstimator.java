@@ -0,0 +1,21 @@
+package org.foraci.math.graph.pathfinder;
+
+/**
+ * A cost estimator working on node indices of the path finder's graph rather
+ * than on <code>PathNode</code> views, so an engine can call it with what it
+ * already holds. The built-in grid estimators, <code>GridStepCost</code> and
+ * the metrics made by <code>GridDistance</code>, are final classes, so a path
+ * finder using one of them makes a monomorphic call that the JIT can inline.
+ * <br/>Estimators are called by any number of threads at once, and must not
+ * keep per-call state.
+ *
+ * @see PathCostAdapter
+ */
+public interface IndexCostEstimator
+{
+	/**
+	 * Gets the cost, or estimated cost, from the node at index
+	 * <code>from</code> to the node at index <code>to</code>.
+	 */
+	float cost(int from, int to);
+}
@@ -0,0 +1,350 @@
+package org.foraci.math.graph.pathfinder;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.foraci.math.graph.pathfinder.graph.Graph;
+import org.foraci.math.graph.pathfinder.util.IntIntHashMap;
+
+/**
+ * A bounded cache of path results in front of a <code>PathFinder</code>, for
+ * workloads where a few popular (start, destination) pairs make up most of
+ * the queries. Each entry holds the cost and the node indices of one path
+ * (or the fact that there is none), and is tagged with the
+ * <code>version()</code> of the graph it was computed on; an entry whose
+ * version no longer matches the graph's is treated as a miss and dropped.
+ * <br/>Entries are evicted least recently used first once there are more
+ * than <code>maxEntries</code> of them, or once their paths hold more than
+ * <code>maxPathNodes</code> nodes in all. The entries are spread over
+ * several independently locked segments, each evicting on its own, so the
+ * order of eviction across segments is only approximately LRU.
+ * <br/>A cache may be used by any number of threads at once. Misses run on
+ * the path finder with the calling thread's context, so, as with batch
+ * queries, the path finder's own <code>getBestPath()</code> is left
+ * undefined for that thread. Two threads missing on the same pair at the
+ * same time both search it.
+ */
+public final class PathCache
+{
+	private static final int MAX_SEGMENTS = 16;
+
+	/** A cached result; <code>path</code> is empty if there is none. */
+	private static final class Entry
+	{
+		final float cost;
+		final int[] path; //node indices, start to destination
+		long version; //graph version the entry is valid for
+
+		Entry(float cost, int[] path, long version)
+		{
+			this.cost = cost;
+			this.path = path;
+			this.version = version;
+		}
+	}
+
+	/** A segment of the cache, ordered from least to most recently used. */
+	private static final class Segment extends LinkedHashMap<Long, Entry>
+	{
+		private static final long serialVersionUID = 1L;
+
+		int pathNodes; //total length of the paths held
+
+		Segment()
+		{
+			super(16, 0.75f, true);
+		}
+	}
+
+	private final PathFinder finder;
+	private final Graph graph;
+	private final Segment[] segments;
+	private final int segmentEntries, segmentNodes;
+	private final LongAdder hits = new LongAdder(),
+		misses = new LongAdder(), evictions = new LongAdder();
+	/** The entry of each thread's last query. */
+	private final ThreadLocal<Entry> last = new ThreadLocal<Entry>();
+
+	/**
+	 * Constructs a cache of at most <code>maxEntries</code> paths of any
+	 * length.
+	 */
+	public PathCache(PathFinder finder, int maxEntries)
+	{
+		this(finder, maxEntries, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Constructs a cache of at most <code>maxEntries</code> paths holding at
+	 * most <code>maxPathNodes</code> nodes in all.
+	 *
+	 * @throws IllegalArgumentException
+	 *             if either bound is less than 1.
+	 */
+	public PathCache(PathFinder finder, int maxEntries, int maxPathNodes)
+	{
+		if (maxEntries < 1 || maxPathNodes < 1)
+			throw new IllegalArgumentException("cache bounds must be positive");
+		this.finder = finder;
+		this.graph = finder.graph;
+		//enough segments to spread contention, but few enough that each can
+		//hold a fair share of the entries
+		int n = 1;
+		while (n < MAX_SEGMENTS && n * 4 <= maxEntries)
+			n *= 2;
+		segments = new Segment[n];
+		for (int i = 0; i < n; i++)
+			segments[i] = new Segment();
+		segmentEntries = (maxEntries + n - 1) / n;
+		segmentNodes = maxPathNodes == Integer.MAX_VALUE ? maxPathNodes
+			: (maxPathNodes + n - 1) / n;
+	}
+
+	/** Gets the path finder this cache answers for. */
+	public PathFinder getPathFinder()
+	{
+		return finder;
+	}
+
+	/**
+	 * Gets the best path from the node with id <code>startId</code> to the
+	 * node with id <code>endId</code> from the cache, computing it with the
+	 * path finder on a miss.
+	 *
+	 * @return the path cost.
+	 * @throws NoPathFoundException
+	 *             if a path can not be found.
+	 */
+	public float computeBestPath(int startId, int endId)
+		throws NoPathFoundException
+	{
+		int start = graph.indexOf(startId), dest = graph.indexOf(endId);
+		if (start < 0 || dest < 0)
+		{
+			last.set(null);
+			throw new NoPathFoundException();
+		}
+		Long key = Long.valueOf(((long) start << 32) | dest);
+		Segment segment = segmentFor(start, dest);
+		long version = graph.version();
+		Entry entry;
+		synchronized (segment)
+		{
+			entry = segment.get(key);
+			if (entry != null && entry.version != version)
+			{
+				segment.remove(key);
+				segment.pathNodes -= entry.path.length;
+				entry = null;
+			}
+		}
+		if (entry != null)
+			hits.increment();
+		else
+		{
+			misses.increment();
+			entry = search(startId, endId, version);
+			synchronized (segment)
+			{
+				Entry old = segment.put(key, entry);
+				if (old != null)
+					segment.pathNodes -= old.path.length;
+				segment.pathNodes += entry.path.length;
+				evict(segment);
+			}
+		}
+		last.set(entry);
+		if (entry.cost == Float.POSITIVE_INFINITY)
+			throw new NoPathFoundException();
+		return entry.cost;
+	}
+
+	/**
+	 * Get the best path found by the calling thread's last call to
+	 * <code>computeBestPath()</code> or <code>null</code> if a
+	 * <code>NoPathFoundException</code> exception was thrown.
+	 */
+	public LinkedList<PathNode> getBestPath()
+	{
+		Entry entry = last.get();
+		if (entry == null || entry.cost == Float.POSITIVE_INFINITY)
+			return null;
+		LinkedList<PathNode> path = new LinkedList<>();
+		for (int node : entry.path)
+			path.add(finder.pathNode(node));
+		return path;
+	}
+
+	/**
+	 * Gets the number of nodes on the path found by the calling thread's
+	 * last call to <code>computeBestPath()</code>, or 0 if there was none.
+	 */
+	public int getBestPathLength()
+	{
+		Entry entry = last.get();
+		return entry == null ? 0 : entry.path.length;
+	}
+
+	/**
+	 * Writes the ids of the nodes on the path found by the calling thread's
+	 * last call to <code>computeBestPath()</code> to the front of
+	 * <code>ids</code>, which must hold <code>getBestPathLength()</code>
+	 * elements.
+	 *
+	 * @return the number of ids written, 0 if there was no path.
+	 * @throws IllegalArgumentException
+	 *             if <code>ids</code> is too short.
+	 */
+	public int getBestPathIds(int[] ids)
+	{
+		Entry entry = last.get();
+		if (entry == null)
+			return 0;
+		int[] path = entry.path;
+		if (ids.length < path.length)
+			throw new IllegalArgumentException("result array is too short");
+		for (int i = 0; i < path.length; i++)
+			ids[i] = graph.id(path[i]);
+		return path.length;
+	}
+
+	/**
+	 * Reports that the given nodes were blocked or made more expensive, and
+	 * that no other change was made since the graph was at
+	 * <code>previousVersion</code>. Since no path became cheaper, every
+	 * entry computed at <code>previousVersion</code> whose path avoids the
+	 * nodes is still the best one; those entries are kept and marked valid
+	 * for the graph's current version. Entries whose paths cross the nodes
+	 * are dropped, as are entries computed at any other earlier version,
+	 * since other changes may have been made since. This assumes the cost of
+	 * a step depends only on the nodes it joins, as with the built-in
+	 * estimators. Any other kind of change, such as unblocking a node, is
+	 * left to the version check, which drops every entry.
+	 * <br/>This must not run concurrently with changes to the graph.
+	 *
+	 * @param nodes
+	 *            the indices of the changed nodes.
+	 * @param previousVersion
+	 *            the <code>version()</code> of the graph just before the
+	 *            nodes were changed.
+	 */
+	public void nodesRaised(int[] nodes, long previousVersion)
+	{
+		IntIntHashMap changed = new IntIntHashMap(nodes.length);
+		for (int node : nodes)
+			changed.put(node, 1);
+		long version = graph.version();
+		for (Segment segment : segments)
+			synchronized (segment)
+			{
+				for (Iterator<Entry> it = segment.values().iterator(); it
+					.hasNext();)
+				{
+					Entry entry = it.next();
+					if (entry.version == version)
+						continue; //computed since the change
+					if (entry.version == previousVersion
+						&& !crosses(entry.path, changed))
+						entry.version = version;
+					else
+					{
+						it.remove();
+						segment.pathNodes -= entry.path.length;
+					}
+				}
+			}
+	}
+
+	/** Drops every entry. The counters are kept. */
+	public void clear()
+	{
+		for (Segment segment : segments)
+			synchronized (segment)
+			{
+				segment.clear();
+				segment.pathNodes = 0;
+			}
+	}
+
+	/** Gets the number of entries held, stale or not. */
+	public int size()
+	{
+		int size = 0;
+		for (Segment segment : segments)
+			synchronized (segment)
+			{
+				size += segment.size();
+			}
+		return size;
+	}
+
+	/** Gets the number of queries answered from the cache. */
+	public long getHitCount()
+	{
+		return hits.sum();
+	}
+
+	/** Gets the number of queries that had to be searched. */
+	public long getMissCount()
+	{
+		return misses.sum();
+	}
+
+	/** Gets the number of entries evicted to stay within the bounds. */
+	public long getEvictionCount()
+	{
+		return evictions.sum();
+	}
+
+	/** Sets the hit, miss and eviction counts back to 0. */
+	public void resetCounters()
+	{
+		hits.reset();
+		misses.reset();
+		evictions.reset();
+	}
+
+	private Segment segmentFor(int start, int dest)
+	{
+		int h = start * 0x9E3779B9 + dest;
+		h ^= h >>> 16;
+		return segments[h & (segments.length - 1)];
+	}
+
+	/** Runs a query on the path finder and wraps up its result. */
+	private Entry search(int startId, int endId, long version)
+	{
+		SearchContext ctx = finder.context();
+		if (finder.tryComputeBestPath(startId, endId, ctx) != SearchResult.FOUND)
+			return new Entry(Float.POSITIVE_INFINITY, new int[0], version);
+		int[] path = new int[ctx.getPathLength()];
+		System.arraycopy(ctx.getPathNodes(), 0, path, 0, path.length);
+		return new Entry(ctx.getPathCost(), path, version);
+	}
+
+	/** Evicts the least recently used entries of a segment over its bounds. */
+	private void evict(Segment segment)
+	{
+		Iterator<Entry> it = segment.values().iterator();
+		//the entry just added is the most recent, so it is never evicted while
+		//others remain
+		while (segment.size() > 1 && (segment.size() > segmentEntries
+			|| segment.pathNodes > segmentNodes))
+		{
+			Entry entry = it.next();
+			it.remove();
+			segment.pathNodes -= entry.path.length;
+			evictions.increment();
+		}
+	}
+
+	private static boolean crosses(int[] path, IntIntHashMap nodes)
+	{
+		for (int node : path)
+			if (nodes.get(node) >= 0)
+				return true;
+		return false;
+	}
+}
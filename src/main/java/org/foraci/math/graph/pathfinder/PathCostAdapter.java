@@ -0,0 +1,34 @@
+package org.foraci.math.graph.pathfinder;
+
+import org.foraci.math.graph.pathfinder.graph.GraphNode;
+
+/**
+ * Calls a <code>PathCostEstimator</code> through the
+ * <code>IndexCostEstimator</code> interface, by re-pointing two node views
+ * at the indices given. The path finders use one per query when no index
+ * estimator is set, so existing estimators keep working unchanged.
+ * <br/>Since the views are re-pointed on every call, an adapter must be used
+ * by one thread at a time.
+ */
+public final class PathCostAdapter implements IndexCostEstimator
+{
+	private final PathCostEstimator estimator;
+	private final GraphNode from, to;
+
+	/**
+	 * Constructs an adapter passing <code>from</code> and <code>to</code>,
+	 * re-pointed, to <code>estimator</code>.
+	 */
+	public PathCostAdapter(PathCostEstimator estimator, GraphNode from,
+		GraphNode to)
+	{
+		this.estimator = estimator;
+		this.from = from;
+		this.to = to;
+	}
+
+	public float cost(int from, int to)
+	{
+		return estimator.cost(this.from.at(from), this.to.at(to));
+	}
+}
@@ -1,26 +1,54 @@
 package org.foraci.math.graph.pathfinder;
 
 import java.util.LinkedList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.IntConsumer;
 
+import org.foraci.math.graph.pathfinder.graph.Graph;
+import org.foraci.math.graph.pathfinder.graph.GraphNode;
+import org.foraci.math.graph.pathfinder.util.ParallelRange;
+
+/**
+ * Base class of the path finders. A path finder's graph is never modified by
+ * a query; all search state is kept in a <code>SearchContext</code>, so one
+ * path finder may serve concurrent queries from any number of threads, each
+ * using its own context. The cost estimators should be set before a path
+ * finder is shared between threads.
+ * <br/>Queries are instrumented only on request: with a
+ * <code>SearchListener</code>, <code>SearchMetrics</code> or a context set to
+ * record statistics, each query records its <code>SearchStats</code>.
+ * Otherwise the engines run exactly as they would without instrumentation.
+ */
 public abstract class PathFinder
 {
 	public static final int WEIGHT_INF = Integer.MAX_VALUE;
 
 	/**
-	 * Privately built graph is simply an array of <code>PathNode</code>s.
-	 * This should never be exposed to clients.
+	 * Privately built graph in a compact, primitive form. This should never
+	 * be exposed to clients.
 	 */
-	protected PathNode[] graph;
+	protected Graph graph;
 	/**
 	 * Used to find the guessed path cost between two arbitrary
 	 * <code>PathNode</code>s.
 	 */
 	protected PathCostEstimator pathCost;
+	private SearchListener listener;
+	private SearchMetrics metrics;
+	/** The context of each thread calling the context-less methods. */
+	private final ThreadLocal<SearchContext> contexts = new ThreadLocal<SearchContext>()
+		{
+			protected SearchContext initialValue()
+			{
+				return newSearchContext();
+			}
+		};
 
 	/**
 	 * Helps initialize an instance of a subclass of this path finder.
 	 */
-	protected PathFinder(PathNode[] graph, PathCostEstimator pathCost)
+	protected PathFinder(Graph graph, PathCostEstimator pathCost)
 	{
 		this.graph = graph;
 		this.pathCost = pathCost;
@@ -35,20 +63,493 @@ public abstract class PathFinder
 		this.pathCost = pathCost;
 	}
 
+	/**
+	 * Sets the listener to receive the events of every query, or
+	 * <code>null</code> for none.
+	 */
+	public void setSearchListener(SearchListener listener)
+	{
+		this.listener = listener;
+	}
+
+	public SearchListener getSearchListener()
+	{
+		return listener;
+	}
+
+	/**
+	 * Sets the metrics to record the statistics of every query into, or
+	 * <code>null</code> for none. Several path finders may share one.
+	 */
+	public void setSearchMetrics(SearchMetrics metrics)
+	{
+		this.metrics = metrics;
+	}
+
+	public SearchMetrics getSearchMetrics()
+	{
+		return metrics;
+	}
+
+	/** Gets the calling thread's context. */
+	protected SearchContext context()
+	{
+		return contexts.get();
+	}
+
+	/**
+	 * Creates a new context for running queries against this path finder (or
+	 * any other path finder sharing its graph).
+	 */
+	public SearchContext newSearchContext()
+	{
+		return new SearchContext(graph);
+	}
+
 	/**
 	 * Computes the best path for the internal graph of path nodes returning the
-	 * cost.
-	 * 
+	 * cost, using the calling thread's context.
+	 *
 	 * @see #computeBestPath(int,int)
 	 * @return the path cost.
 	 * @throws NoPathFoundException
 	 *             if a path can not be found.
 	 */
-	public abstract float computeBestPath(PathNode start, PathNode end)
-		throws NoPathFoundException;
+	public float computeBestPath(PathNode start, PathNode end)
+		throws NoPathFoundException
+	{
+		return computeBestPath(start, end, context());
+	}
+
+	/**
+	 * Computes the best path given a starting and destination node, using the
+	 * specified context.
+	 *
+	 * @return the path cost.
+	 * @throws NoPathFoundException
+	 *             if a path can not be found.
+	 */
+	public float computeBestPath(PathNode start, PathNode end,
+		SearchContext ctx) throws NoPathFoundException
+	{
+		checkContext(ctx);
+		ctx.reset();
+		if (start == null || end == null)
+			throw new NoPathFoundException();
+		return found(run(indexOf(start), indexOf(end), ctx));
+	}
+
+	/**
+	 * Computes the best path given ids of the nodes specified when creating
+	 * an instance of this path finder, using the calling thread's context.
+	 *
+	 * @return the path cost.
+	 * @throws NoPathFoundException
+	 *             if a path can not be found.
+	 */
+	public float computeBestPath(int startId, int endId)
+		throws NoPathFoundException
+	{
+		return computeBestPath(startId, endId, context());
+	}
+
+	/**
+	 * Computes the best path given ids of the nodes specified when creating
+	 * an instance of this path finder, using the specified context.
+	 *
+	 * @return the path cost.
+	 * @throws NoPathFoundException
+	 *             if a path can not be found.
+	 */
+	public float computeBestPath(int startId, int endId, SearchContext ctx)
+		throws NoPathFoundException
+	{
+		checkContext(ctx);
+		ctx.reset();
+		return found(run(graph.indexOf(startId), graph.indexOf(endId), ctx));
+	}
+
+	/**
+	 * Computes the best path given ids of the nodes specified when creating
+	 * an instance of this path finder, stopping early if a limit is reached,
+	 * using the calling thread's context.
+	 *
+	 * @see #computeBestPath(int,int,SearchLimits,SearchContext)
+	 */
+	public SearchResult computeBestPath(int startId, int endId,
+		SearchLimits limits)
+	{
+		return computeBestPath(startId, endId, limits, context());
+	}
+
+	/**
+	 * Computes the best path given ids of the nodes specified when creating
+	 * an instance of this path finder, stopping early if a limit is reached,
+	 * using the specified context. Rather than throwing a
+	 * <code>NoPathFoundException</code>, the result has the status
+	 * <code>NO_PATH</code>. A query stopped by a limit returns a partial
+	 * result, whose path is also left in the context.
+	 */
+	public SearchResult computeBestPath(int startId, int endId,
+		SearchLimits limits, SearchContext ctx)
+	{
+		checkContext(ctx);
+		ctx.reset();
+		ctx.startLimits(limits);
+		int dest = graph.indexOf(endId);
+		float cost = run(graph.indexOf(startId), dest, ctx);
+		if (cost == Float.POSITIVE_INFINITY)
+			return new SearchResult(SearchResult.NO_PATH, cost, new int[0],
+				ctx.getExpansions());
+		int[] ids = new int[ctx.getPathLength()];
+		ctx.writePathIds(ids, 0);
+		return new SearchResult(status(ctx, dest), cost, ids,
+			ctx.getExpansions());
+	}
+
+	/**
+	 * Computes the best path given ids of the nodes specified when creating
+	 * an instance of this path finder, using the calling thread's context,
+	 * without throwing.
+	 *
+	 * @see #tryComputeBestPath(int,int,SearchContext)
+	 */
+	public int tryComputeBestPath(int startId, int endId)
+	{
+		return tryComputeBestPath(startId, endId, context());
+	}
+
+	/**
+	 * Computes the best path given ids of the nodes specified when creating
+	 * an instance of this path finder, using the specified context, without
+	 * throwing or building the <code>LinkedList</code> of
+	 * <code>getBestPath()</code>. The path is left in the context, to be read
+	 * with <code>getPathCost()</code>, <code>getPathLength()</code> and
+	 * <code>writePathIds()</code> or <code>writePathCoordinates()</code>
+	 * into arrays the caller reuses. Once the context has grown to the
+	 * longest path, a query with <code>IndexCostEstimator</code>s allocates
+	 * nothing, whether it finds a path or not.
+	 *
+	 * @return <code>SearchResult.FOUND</code>, or
+	 *         <code>SearchResult.NO_PATH</code> if there is no path.
+	 */
+	public int tryComputeBestPath(int startId, int endId, SearchContext ctx)
+	{
+		checkContext(ctx);
+		ctx.reset();
+		return tryRun(graph.indexOf(startId), graph.indexOf(endId), ctx);
+	}
+
+	/**
+	 * Computes the best path given ids of the nodes specified when creating
+	 * an instance of this path finder, stopping early if a limit is reached,
+	 * using the specified context, without throwing. As with
+	 * <code>tryComputeBestPath(int,int,SearchContext)</code>, the path is
+	 * left in the context; after a limit stops the query it is the partial
+	 * path a <code>SearchResult</code> would hold.
+	 *
+	 * @return the status code a <code>SearchResult</code> would have.
+	 */
+	public int tryComputeBestPath(int startId, int endId, SearchLimits limits,
+		SearchContext ctx)
+	{
+		checkContext(ctx);
+		ctx.reset();
+		ctx.startLimits(limits);
+		return tryRun(graph.indexOf(startId), graph.indexOf(endId), ctx);
+	}
+
+	/** Runs one query without building its list path or throwing. */
+	private int tryRun(int start, int dest, SearchContext ctx)
+	{
+		ctx.setListPath(false);
+		float cost;
+		try
+		{
+			cost = run(start, dest, ctx);
+		}
+		finally
+		{
+			ctx.setListPath(true);
+		}
+		return cost == Float.POSITIVE_INFINITY ? SearchResult.NO_PATH
+			: status(ctx, dest);
+	}
+
+	/** Gets the status of a query that left a path. */
+	private static int status(SearchContext ctx, int dest)
+	{
+		int length = ctx.getPathLength();
+		//a path stopping short of dest was left by a limit
+		return length > 0 && ctx.getPathNodes()[length - 1] == dest
+			? SearchResult.FOUND : ctx.getLimitStatus();
+	}
+
+	/**
+	 * Looks up the node indices of many ids at once.
+	 *
+	 * @return the index of the node with each id, or <code>-1</code> where
+	 *         there is no passable node with that id.
+	 */
+	public int[] lookupIds(int[] ids)
+	{
+		return lookupIds(ids, new int[ids.length]);
+	}
+
+	/**
+	 * Looks up the node indices of many ids at once, writing them into
+	 * <code>out</code>.
+	 *
+	 * @return <code>out</code>, holding the index of the node with each id or
+	 *         <code>-1</code> where there is no passable node with that id.
+	 */
+	public int[] lookupIds(int[] ids, int[] out)
+	{
+		for (int i = 0; i < ids.length; i++)
+			out[i] = graph.indexOf(ids[i]);
+		return out;
+	}
+
+	/**
+	 * Computes the costs of many paths at once, spreading the queries over
+	 * the common <code>ForkJoinPool</code>.
+	 *
+	 * @see #computeBestPaths(int[],int[],float[],int[][],int[],Executor)
+	 */
+	public void computeBestPaths(int[] startIds, int[] endIds, float[] costs)
+	{
+		computeBestPaths(startIds, endIds, costs, null, null,
+			ForkJoinPool.commonPool());
+	}
 
-	public abstract float computeBestPath(int startId, int endId)
-		throws NoPathFoundException;
+	/**
+	 * Computes many paths at once, spreading the queries over the common
+	 * <code>ForkJoinPool</code>.
+	 *
+	 * @see #computeBestPaths(int[],int[],float[],int[][],int[],Executor)
+	 */
+	public void computeBestPaths(int[] startIds, int[] endIds, float[] costs,
+		int[][] paths, int[] pathLengths)
+	{
+		computeBestPaths(startIds, endIds, costs, paths, pathLengths,
+			ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Computes the best paths from each <code>startIds[i]</code> to
+	 * <code>endIds[i]</code>, running the queries on <code>executor</code>
+	 * and returning once all are done. Each worker thread reuses its own
+	 * context across queries and batches, and results go straight into the
+	 * arrays passed, so a batch allocates next to nothing once the path
+	 * buffers have grown to size.
+	 * <br/><code>costs[i]</code> receives the cost of path <code>i</code>, or
+	 * <code>Float.POSITIVE_INFINITY</code> if there is none. If
+	 * <code>paths</code> is not <code>null</code>, the ids of the nodes on
+	 * path <code>i</code> are written to the front of <code>paths[i]</code>
+	 * and their number to <code>pathLengths[i]</code> (0 if there is no
+	 * path). A <code>paths[i]</code> that is <code>null</code> or too short
+	 * is replaced with a larger array, so the same buffers may be passed
+	 * again to the next batch.
+	 * <br/>The <code>LinkedList</code> paths of <code>getBestPath()</code>
+	 * are not built by batch queries, and are left undefined for the calling
+	 * thread.
+	 *
+	 * @param executor
+	 *            runs the queries; a <code>ForkJoinPool</code> splits them
+	 *            into tasks, any other executor is handed one task per
+	 *            available processor, with the calling thread helping.
+	 * @throws IllegalArgumentException
+	 *             if the arrays passed are shorter than <code>startIds</code>.
+	 */
+	public void computeBestPaths(final int[] startIds, final int[] endIds,
+		final float[] costs, final int[][] paths, final int[] pathLengths,
+		Executor executor)
+	{
+		int n = startIds.length;
+		if (endIds.length < n || costs.length < n
+			|| (paths != null && (paths.length < n || pathLengths.length < n)))
+			throw new IllegalArgumentException("result arrays are too short");
+		ParallelRange.run(n, executor, new IntConsumer()
+			{
+				public void accept(int i)
+				{
+					batchQuery(i, startIds, endIds, costs, paths, pathLengths);
+				}
+			});
+	}
+
+	/**
+	 * Runs one query of a batch using the calling thread's context, writing
+	 * its result into the batch's arrays.
+	 */
+	private void batchQuery(int i, int[] startIds, int[] endIds,
+		float[] costs, int[][] paths, int[] pathLengths)
+	{
+		SearchContext ctx = context();
+		ctx.reset();
+		ctx.setListPath(false);
+		try
+		{
+			costs[i] = run(graph.indexOf(startIds[i]), graph.indexOf(endIds[i]),
+				ctx);
+		}
+		finally
+		{
+			ctx.setListPath(true);
+		}
+		if (paths == null)
+			return;
+		int length = ctx.getPathLength();
+		int[] path = paths[i];
+		if (path == null || path.length < length)
+			paths[i] = path = new int[Math.max(length, path == null ? 0
+				: 2 * path.length)];
+		pathLengths[i] = ctx.writePathIds(path, 0);
+	}
+
+	/**
+	 * Get the best path found by the calling thread's last call to
+	 * <code>computeBestPath()</code> or <code>null</code> if a
+	 * <code>NoPathFoundException</code> exception was thrown.
+	 */
+	public LinkedList getBestPath()
+	{
+		return context().getBestPath();
+	}
 
-	public abstract LinkedList getBestPath();
+	/**
+	 * Maps a client-supplied node to its index in <code>graph</code>.
+	 *
+	 * @return the node index, or <code>-1</code> if it is not in the graph.
+	 */
+	protected int indexOf(PathNode node)
+	{
+		if (node instanceof GraphNode && ((GraphNode) node).graph() == graph)
+			return ((GraphNode) node).index();
+		return graph.indexOf(node.id());
+	}
+
+	/**
+	 * Creates the <code>PathNode</code> returned in best paths for the node
+	 * at <code>index</code>.
+	 */
+	protected PathNode pathNode(int index)
+	{
+		return new GraphNode(graph, index);
+	}
+
+	/**
+	 * Throws a <code>NoPathFoundException</code> if <code>cost</code> is that
+	 * of a query that found no path, for the throwing overloads.
+	 *
+	 * @return <code>cost</code>.
+	 */
+	private static float found(float cost) throws NoPathFoundException
+	{
+		if (cost == Float.POSITIVE_INFINITY)
+			throw new NoPathFoundException();
+		return cost;
+	}
+
+	/**
+	 * Runs one query on a freshly reset context, recording its statistics if
+	 * anything asked for them.
+	 *
+	 * @return the path cost, or <code>Float.POSITIVE_INFINITY</code> if a
+	 *         path can not be found.
+	 */
+	private float run(int start, int dest, SearchContext ctx)
+	{
+		graph.beginQuery(start, dest);
+		SearchListener listener = this.listener;
+		SearchMetrics metrics = this.metrics;
+		if (listener == null && metrics == null && !ctx.isRecordStats())
+		{
+			float cost = search(start, dest, ctx);
+			ctx.setPathCost(cost);
+			return cost;
+		}
+		SearchStats stats = ctx.startStats(listener, start, dest);
+		long startTime = System.nanoTime();
+		float cost = Float.POSITIVE_INFINITY;
+		try
+		{
+			cost = search(start, dest, ctx);
+			ctx.setPathCost(cost);
+			return cost;
+		}
+		finally
+		{
+			stats.finish(cost, cost != Float.POSITIVE_INFINITY
+				&& status(ctx, dest) != SearchResult.FOUND,
+				System.nanoTime() - startTime);
+			if (metrics != null)
+				metrics.record(stats);
+		}
+	}
+
+	/**
+	 * Runs one query on a freshly reset context. Implementations must leave
+	 * the path in the context with <code>buildPath()</code> when one is
+	 * found, and report their work to the context's <code>getStats()</code>
+	 * when it is not <code>null</code>. They report that there is no path by
+	 * their return value rather than by throwing, so that the queries that
+	 * do not throw pay nothing for it; the throwing overloads of
+	 * <code>computeBestPath()</code> turn it into a
+	 * <code>NoPathFoundException</code>.
+	 *
+	 * @param start
+	 *            the index of the starting node, or <code>-1</code>.
+	 * @param dest
+	 *            the index of the destination node, or <code>-1</code>.
+	 * @return the path cost, or <code>Float.POSITIVE_INFINITY</code> if a
+	 *         path can not be found.
+	 */
+	protected abstract float search(int start, int dest, SearchContext ctx);
+
+	/**
+	 * Move backwards through the parents of the path whose end is specified
+	 * by <code>destination</code> and build a list from the back to front.
+	 */
+	protected void buildPath(SearchContext ctx, int destination)
+	{
+		int[] parent = ctx.parent();
+		int length = 0;
+		for (int node = destination; node >= 0; node = parent[node])
+			length++;
+		int[] path = ctx.pathBuffer(length);
+		for (int node = destination, i = length; node >= 0; node = parent[node])
+			path[--i] = node;
+		setPath(ctx, length);
+	}
+
+	/**
+	 * Leaves a path given as the indices of its nodes, from start to
+	 * destination, in the context. For engines that do not record the path
+	 * in <code>parent()</code>.
+	 */
+	protected void buildPath(SearchContext ctx, int[] nodes, int length)
+	{
+		System.arraycopy(nodes, 0, ctx.pathBuffer(length), 0, length);
+		setPath(ctx, length);
+	}
+
+	private void setPath(SearchContext ctx, int length)
+	{
+		ctx.setPathLength(length);
+		if (!ctx.isListPath())
+			return;
+		int[] path = ctx.getPathNodes();
+		LinkedList<PathNode> bestPath = new LinkedList<>();
+		for (int i = 0; i < length; i++)
+			bestPath.add(pathNode(path[i]));
+		ctx.setBestPath(bestPath);
+	}
+
+	private void checkContext(SearchContext ctx)
+	{
+		if (ctx.graph() != graph)
+			throw new IllegalArgumentException(
+				"context was created for another graph");
+	}
 }
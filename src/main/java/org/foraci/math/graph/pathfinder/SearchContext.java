@@ -0,0 +1,506 @@
+package org.foraci.math.graph.pathfinder;
+
+import java.nio.BufferOverflowException;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.LinkedList;
+
+import org.foraci.math.graph.pathfinder.graph.Graph;
+import org.foraci.math.graph.pathfinder.graph.GridCoordinates;
+import org.foraci.math.graph.pathfinder.util.IndexedMinHeap;
+import org.foraci.math.graph.pathfinder.util.RadixHeap;
+
+/**
+ * The per-query scratch state of a <code>PathFinder</code>: path costs,
+ * parents, node states and the OPEN set, all indexed by node. Keeping this
+ * state out of the graph lets any number of threads search one shared graph
+ * at the same time, each with its own context.
+ * <br/>Nodes are stamped with the generation of the query that last visited
+ * them, and a node whose stamp does not match the current query is treated
+ * as unvisited. Resetting a context between queries therefore costs time
+ * proportional to the nodes the previous query touched, not to the graph.
+ * <br/>A context may be reused for any number of queries against path
+ * finders sharing its graph, but only by one thread at a time.
+ * <code>PathFinder</code> keeps one per calling thread; others may be
+ * created with <code>PathFinder.newSearchContext()</code>.
+ * <br/>The per-node arrays are allocated on first use, so engines that keep
+ * their own, smaller scratch state do not pay for them.
+ * <br/>With <code>setRecordStats(true)</code>, each query also records its
+ * <code>SearchStats</code>, read back with <code>getStats()</code>.
+ * <br/>Engines that may stop short of the optimal path leave a bound on how
+ * far short in <code>getSuboptimalityBound()</code>.
+ * <br/>A query may run under <code>SearchLimits</code>, which the engines
+ * check with <code>limitReached()</code> as they expand nodes.
+ * <br/>The path found by the last query stays in the context as node
+ * indices, and can be written out as ids or grid coordinates into arrays
+ * or buffers the caller reuses, so reading it allocates nothing.
+ */
+public final class SearchContext
+{
+	/* node states */
+	public static final byte UNVISITED = 0, OPEN = 1, CLOSED = 2;
+
+	private final Graph graph;
+	private float[] g; //cost to get to the node
+	private float[] h; //estimated cost from the node to destination
+	private int[] parent;
+	private byte[] state;
+	private int[] stamp; //generation in which state was last set
+	private int generation;
+	private IndexedMinHeap open;
+	private final int[] neighbors;
+	private int[] nodes; //scratch list of nodes, kept across queries
+	private RadixHeap radix; //created by the first engine that needs it
+	private SearchContext reverse; //likewise
+	private LinkedList<PathNode> bestPath;
+	private int[] path; //node indices of the last path found
+	private int pathLength;
+	private float pathCost = Float.POSITIVE_INFINITY;
+	private float bound; //suboptimality bound of the last path found
+	private boolean listPath = true; //whether to build bestPath
+	private boolean recordStats;
+	private SearchStats stats; //reused across queries
+	private SearchStats activeStats; //null unless the query records stats
+	private boolean limited; //whether the query runs under limits
+	private long expansions, maxExpansions, deadline;
+	private CancellationToken cancellation;
+	private int limitStatus; //the limit reached, if any
+
+	SearchContext(Graph graph)
+	{
+		this.graph = graph;
+		generation = 1;
+		neighbors = new int[graph.maxDegree()];
+		bestPath = null;
+		path = new int[16];
+		pathLength = 0;
+		bound = 1;
+	}
+
+	private void allocate()
+	{
+		int n = graph.size();
+		g = new float[n];
+		h = new float[n];
+		parent = new int[n];
+		state = new byte[n];
+		stamp = new int[n];
+		open = new IndexedMinHeap(n);
+	}
+
+	/** Clears the state left by a previous query. */
+	public void reset()
+	{
+		if (open != null)
+			open.clear();
+		if (radix != null)
+			radix.clear();
+		if (reverse != null)
+			reverse.reset();
+		if (++generation == 0)
+		{ //stamps wrapped around, so old ones could match again
+			if (stamp != null)
+				Arrays.fill(stamp, 0);
+			generation = 1;
+		}
+		bestPath = null;
+		pathLength = 0;
+		pathCost = Float.POSITIVE_INFINITY;
+		bound = 1;
+		activeStats = null;
+		limited = false;
+		expansions = 0;
+		limitStatus = SearchResult.FOUND;
+	}
+
+	/** Gets the graph this context was created for. */
+	public Graph graph()
+	{
+		return graph;
+	}
+
+	/** The cost to get to each node. */
+	public float[] g()
+	{
+		if (g == null)
+			allocate();
+		return g;
+	}
+
+	/** The estimated cost from each node to the destination. */
+	public float[] h()
+	{
+		if (g == null)
+			allocate();
+		return h;
+	}
+
+	/** The index of each node's parent, or -1 for the start node. */
+	public int[] parent()
+	{
+		if (g == null)
+			allocate();
+		return parent;
+	}
+
+	/**
+	 * Gets the state of a node in the current query: <code>UNVISITED</code>,
+	 * <code>OPEN</code> or <code>CLOSED</code>. The <code>g</code>,
+	 * <code>h</code> and <code>parent</code> of an unvisited node are
+	 * undefined.
+	 */
+	public byte state(int node)
+	{
+		return stamp != null && stamp[node] == generation ? state[node]
+			: UNVISITED;
+	}
+
+	/**
+	 * Sets the state of a node in the current query. Engines may use states
+	 * of their own beyond <code>CLOSED</code>.
+	 */
+	public void setState(int node, byte state)
+	{
+		if (g == null)
+			allocate();
+		this.state[node] = state;
+		stamp[node] = generation;
+	}
+
+	/** The OPEN set. */
+	public IndexedMinHeap open()
+	{
+		if (g == null)
+			allocate();
+		return open;
+	}
+
+	/**
+	 * A monotone queue, for engines that settle nodes in order of cost
+	 * without needing decrease-key.
+	 */
+	public RadixHeap radixQueue()
+	{
+		if (radix == null)
+			radix = new RadixHeap();
+		return radix;
+	}
+
+	/**
+	 * A second context over the same graph that is reset along with this
+	 * one, for the backward half of a bidirectional search.
+	 */
+	public SearchContext reverse()
+	{
+		if (reverse == null)
+			reverse = new SearchContext(graph);
+		return reverse;
+	}
+
+	/** A buffer large enough for the neighbors of any node. */
+	public int[] neighbors()
+	{
+		return neighbors;
+	}
+
+	/**
+	 * A scratch list of nodes for engines that keep one while they search,
+	 * grown to hold at least <code>length</code>, keeping its contents. It is
+	 * kept across queries, so that they allocate nothing once it is large
+	 * enough.
+	 */
+	public int[] nodeBuffer(int length)
+	{
+		if (nodes == null)
+			nodes = new int[Math.max(length, 64)];
+		else if (nodes.length < length)
+			nodes = Arrays.copyOf(nodes, Math.max(length, 2 * nodes.length));
+		return nodes;
+	}
+
+	/**
+	 * Get the best path found by the last query run with this context or
+	 * <code>null</code> if a <code>NoPathFoundException</code> exception was
+	 * thrown.
+	 */
+	public LinkedList<PathNode> getBestPath()
+	{
+		return bestPath;
+	}
+
+	void setBestPath(LinkedList<PathNode> bestPath)
+	{
+		this.bestPath = bestPath;
+	}
+
+	/**
+	 * Gets the number of nodes on the path found by the last query run with
+	 * this context, or 0 if no path was found.
+	 */
+	public int getPathLength()
+	{
+		return pathLength;
+	}
+
+	/**
+	 * Gets the indices of the nodes on the path found by the last query run
+	 * with this context, from start to destination, in the first
+	 * <code>getPathLength()</code> elements. The array is reused by later
+	 * queries.
+	 */
+	public int[] getPathNodes()
+	{
+		return path;
+	}
+
+	/**
+	 * Gets the cost of the path found by the last query run with this
+	 * context, or <code>Float.POSITIVE_INFINITY</code> if no path was found.
+	 */
+	public float getPathCost()
+	{
+		return pathCost;
+	}
+
+	void setPathCost(float pathCost)
+	{
+		this.pathCost = pathCost;
+	}
+
+	/**
+	 * Writes the ids of the nodes on the path found by the last query run
+	 * with this context into <code>out</code>, from <code>offset</code> on.
+	 *
+	 * @return the number of ids written, <code>getPathLength()</code>.
+	 * @throws IllegalArgumentException
+	 *             if <code>out</code> has less room than that.
+	 */
+	public int writePathIds(int[] out, int offset)
+	{
+		checkRoom(out.length - offset, pathLength);
+		for (int i = 0; i < pathLength; i++)
+			out[offset + i] = graph.id(path[i]);
+		return pathLength;
+	}
+
+	/**
+	 * Writes the ids of the nodes on the path found by the last query run
+	 * with this context into <code>out</code>, at its position.
+	 *
+	 * @return the number of ids written, <code>getPathLength()</code>.
+	 * @throws BufferOverflowException
+	 *             if <code>out</code> has less room than that, in which case
+	 *             nothing is written.
+	 */
+	public int writePathIds(IntBuffer out)
+	{
+		if (out.remaining() < pathLength)
+			throw new BufferOverflowException();
+		for (int i = 0; i < pathLength; i++)
+			out.put(graph.id(path[i]));
+		return pathLength;
+	}
+
+	/**
+	 * Writes the <code>(x,y)</code> coordinates of the cells on the path
+	 * found by the last query run with this context into <code>out</code>,
+	 * from <code>offset</code> on, as <code>x0, y0, x1, y1, ...</code>.
+	 *
+	 * @return the number of cells written, <code>getPathLength()</code>.
+	 * @throws IllegalArgumentException
+	 *             if <code>out</code> has room for fewer cells, or if the
+	 *             graph is not a grid.
+	 */
+	public int writePathCoordinates(int[] out, int offset)
+	{
+		GridCoordinates grid = grid();
+		checkRoom(out.length - offset, 2 * pathLength);
+		for (int i = 0; i < pathLength; i++)
+		{
+			out[offset + 2 * i] = grid.x(path[i]);
+			out[offset + 2 * i + 1] = grid.y(path[i]);
+		}
+		return pathLength;
+	}
+
+	/**
+	 * Writes the <code>(x,y)</code> coordinates of the cells on the path
+	 * found by the last query run with this context into <code>out</code>,
+	 * at its position, as <code>x0, y0, x1, y1, ...</code>.
+	 *
+	 * @return the number of cells written, <code>getPathLength()</code>.
+	 * @throws BufferOverflowException
+	 *             if <code>out</code> has room for fewer cells, in which case
+	 *             nothing is written.
+	 * @throws IllegalArgumentException
+	 *             if the graph is not a grid.
+	 */
+	public int writePathCoordinates(IntBuffer out)
+	{
+		GridCoordinates grid = grid();
+		if (out.remaining() < 2 * pathLength)
+			throw new BufferOverflowException();
+		for (int i = 0; i < pathLength; i++)
+			out.put(grid.x(path[i])).put(grid.y(path[i]));
+		return pathLength;
+	}
+
+	private GridCoordinates grid()
+	{
+		if (!(graph instanceof GridCoordinates))
+			throw new IllegalArgumentException("the graph is not a grid");
+		return (GridCoordinates) graph;
+	}
+
+	private static void checkRoom(int room, int needed)
+	{
+		if (room < needed)
+			throw new IllegalArgumentException("room for " + room
+				+ " elements, " + needed + " needed");
+	}
+
+	/**
+	 * Gets the factor by which the cost of the path found by the last query
+	 * run with this context may exceed the optimal cost: above 1 for a path
+	 * found with an inflated heuristic, such as by an anytime search stopped
+	 * at its deadline, and 1 otherwise.
+	 */
+	public float getSuboptimalityBound()
+	{
+		return bound;
+	}
+
+	/** Sets the suboptimality bound of the path found by the query. */
+	public void setSuboptimalityBound(float bound)
+	{
+		this.bound = bound;
+	}
+
+	/** Gets the path buffer, grown to hold at least <code>length</code>. */
+	int[] pathBuffer(int length)
+	{
+		if (path.length < length)
+			path = new int[Math.max(length, 2 * path.length)];
+		return path;
+	}
+
+	void setPathLength(int pathLength)
+	{
+		this.pathLength = pathLength;
+	}
+
+	/**
+	 * Sets whether queries run with this context record their statistics,
+	 * whether or not the path finder has a listener or metrics.
+	 */
+	public void setRecordStats(boolean recordStats)
+	{
+		this.recordStats = recordStats;
+	}
+
+	public boolean isRecordStats()
+	{
+		return recordStats;
+	}
+
+	/**
+	 * Gets the statistics of the current or last query run with this
+	 * context, or <code>null</code> if it did not record any. Engines update
+	 * them as they search, when present. The object is reused by later
+	 * queries.
+	 */
+	public SearchStats getStats()
+	{
+		return activeStats;
+	}
+
+	/** Starts recording the statistics of the query about to run. */
+	SearchStats startStats(SearchListener listener, int start, int dest)
+	{
+		if (stats == null)
+			stats = new SearchStats();
+		stats.start(graph, listener, start < 0 ? -1 : graph.id(start),
+			dest < 0 ? -1 : graph.id(dest));
+		activeStats = stats;
+		return stats;
+	}
+
+	/** Starts checking the limits of the query about to run. */
+	void startLimits(SearchLimits limits)
+	{
+		limited = true;
+		maxExpansions = limits.getMaxExpansions();
+		long timeout = limits.getTimeoutNanos();
+		deadline = timeout == Long.MAX_VALUE ? Long.MAX_VALUE //none
+			: System.nanoTime() + timeout;
+		cancellation = limits.getCancellation();
+	}
+
+	/** Returns <code>true</code> if the current query runs under limits. */
+	public boolean isLimited()
+	{
+		return limited;
+	}
+
+	/**
+	 * Counts one expansion against the limits of the current query, which
+	 * must be limited. Engines call this before each expansion and stop
+	 * when it returns <code>true</code>, leaving the path to the expanded
+	 * node with the lowest estimated cost to the destination, or the start
+	 * alone if they have no such estimate. The clock and the cancellation
+	 * token are checked every 32 expansions.
+	 *
+	 * @return <code>true</code> if a limit has been reached.
+	 */
+	public boolean limitReached()
+	{
+		if (limitStatus != SearchResult.FOUND)
+			return true;
+		if (expansions >= maxExpansions)
+			limitStatus = SearchResult.EXPANSION_LIMIT;
+		else if ((expansions & 31) == 0)
+		{
+			if (cancellation != null && cancellation.isCancelled())
+				limitStatus = SearchResult.CANCELLED;
+			else if (deadline != Long.MAX_VALUE
+				&& System.nanoTime() - deadline >= 0)
+				limitStatus = SearchResult.DEADLINE;
+		}
+		if (limitStatus != SearchResult.FOUND)
+			return true;
+		expansions++;
+		return false;
+	}
+
+	/** Gets the number of expansions counted against the limits. */
+	public long getExpansions()
+	{
+		return expansions;
+	}
+
+	/**
+	 * Gets the status code of the limit that stopped the last query, or
+	 * <code>SearchResult.FOUND</code> if none did.
+	 */
+	public int getLimitStatus()
+	{
+		return limitStatus;
+	}
+
+	/**
+	 * Sets whether queries build the <code>LinkedList</code> returned by
+	 * <code>getBestPath()</code>. Batch queries and
+	 * <code>PathFinder.tryComputeBestPath()</code> turn this off and read
+	 * paths from <code>getPathNodes()</code> instead, which allocates
+	 * nothing.
+	 */
+	void setListPath(boolean listPath)
+	{
+		this.listPath = listPath;
+	}
+
+	boolean isListPath()
+	{
+		return listPath;
+	}
+}
@@ -0,0 +1,62 @@
+package org.foraci.math.graph.pathfinder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits on the work of one query: how many nodes it may expand, how long it
+ * may run and a token through which it may be cancelled. A query stopped by
+ * a limit returns a partial <code>SearchResult</code> instead of running on
+ * until it finds a path or runs out of nodes.
+ * <br/>Limits may be shared by queries on any number of threads, as long as
+ * they are not changed while in use. Every <code>PathFinder</code> engine
+ * checks them.
+ */
+public final class SearchLimits
+{
+	private long maxExpansions = Long.MAX_VALUE;
+	private long timeoutNanos = Long.MAX_VALUE;
+	private CancellationToken cancellation;
+
+	/** Constructs limits that let a query run to completion. */
+	public SearchLimits()
+	{
+	}
+
+	/** Sets the number of nodes a query may expand. */
+	public void setMaxExpansions(long maxExpansions)
+	{
+		if (maxExpansions < 0)
+			throw new IllegalArgumentException("maxExpansions < 0");
+		this.maxExpansions = maxExpansions;
+	}
+
+	public long getMaxExpansions()
+	{
+		return maxExpansions;
+	}
+
+	/** Sets how long a query may run, counted from when it starts. */
+	public void setTimeout(long timeout, TimeUnit unit)
+	{
+		if (timeout < 0)
+			throw new IllegalArgumentException("timeout < 0");
+		this.timeoutNanos = unit.toNanos(timeout);
+	}
+
+	/** Gets how long a query may run, in nanoseconds. */
+	public long getTimeoutNanos()
+	{
+		return timeoutNanos;
+	}
+
+	/** Sets the token through which queries may be cancelled, or none. */
+	public void setCancellation(CancellationToken cancellation)
+	{
+		this.cancellation = cancellation;
+	}
+
+	public CancellationToken getCancellation()
+	{
+		return cancellation;
+	}
+}
@@ -0,0 +1,38 @@
+package org.foraci.math.graph.pathfinder;
+
+/**
+ * Receives the events of the queries run by a path finder, once set with
+ * <code>PathFinder.setSearchListener()</code>. Events are delivered on the
+ * thread running the query, in the middle of the search, so a listener
+ * should return quickly and must be thread-safe if the path finder is
+ * shared. The built-in engines that search node by node (A*, jump point
+ * search and Dijkstra) report every event; the others only report
+ * <code>finished()</code>.
+ */
+public interface SearchListener
+{
+	/**
+	 * A node was taken off the OPEN set to have its successors generated.
+	 *
+	 * @param g
+	 *            the cost to get to the node.
+	 */
+	void expanded(int nodeId, float g);
+
+	/**
+	 * A cheaper way to reach node <code>toId</code> was found, through node
+	 * <code>fromId</code>. A backward search relaxes edges from the node it
+	 * expanded to the node it reached, against the edges' direction.
+	 *
+	 * @param g
+	 *            the new cost to get to <code>toId</code>.
+	 */
+	void relaxed(int fromId, int toId, float g);
+
+	/**
+	 * A query finished, whether a path was found or not; a query stopped by
+	 * a limit has <code>SearchStats.isPartial()</code> set. The statistics
+	 * are reused by the next query run with the same context.
+	 */
+	void finished(SearchStats stats);
+}
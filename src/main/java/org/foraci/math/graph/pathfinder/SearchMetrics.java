@@ -0,0 +1,170 @@
+package org.foraci.math.graph.pathfinder;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongBinaryOperator;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Aggregate statistics of the queries run by one or more path finders, set
+ * with <code>PathFinder.setSearchMetrics()</code>: totals of the per-query
+ * <code>SearchStats</code>, plus histograms of wall time and of nodes
+ * expanded. Recording is lock-free, so one instance may collect from any
+ * number of threads. <code>register()</code> exports it over JMX.
+ */
+public final class SearchMetrics implements SearchMetricsMXBean
+{
+	/* histogram buckets, by powers of two */
+	private static final int BUCKETS = 32;
+
+	private final LongAdder queries = new LongAdder(),
+		failed = new LongAdder(), partial = new LongAdder(),
+		expanded = new LongAdder(), generated = new LongAdder(),
+		reopened = new LongAdder(), heapOps = new LongAdder(),
+		nanos = new LongAdder();
+	private final LongAccumulator peakOpen = new LongAccumulator(
+		new LongBinaryOperator()
+		{
+			public long applyAsLong(long a, long b)
+			{
+				return Math.max(a, b);
+			}
+		}, 0);
+	private final AtomicLongArray timeHistogram = new AtomicLongArray(BUCKETS),
+		expansionHistogram = new AtomicLongArray(BUCKETS);
+
+	/** Adds the statistics of a finished query. */
+	public void record(SearchStats stats)
+	{
+		queries.increment();
+		if (!stats.isFound())
+			failed.increment();
+		if (stats.isPartial())
+			partial.increment();
+		expanded.add(stats.getExpanded());
+		generated.add(stats.getGenerated());
+		reopened.add(stats.getReopened());
+		heapOps.add(stats.getHeapOperations());
+		nanos.add(stats.getTimeNanos());
+		peakOpen.accumulate(stats.getPeakOpen());
+		timeHistogram.incrementAndGet(bucket(stats.getTimeNanos() / 1000));
+		expansionHistogram.incrementAndGet(bucket(stats.getExpanded()));
+	}
+
+	/**
+	 * Registers these metrics with the platform MBean server, under the
+	 * name <code>org.foraci.math.graph.pathfinder:type=SearchMetrics,name=</code>
+	 * followed by <code>name</code>.
+	 *
+	 * @return the name registered.
+	 * @throws JMException
+	 *             if the name is malformed or already registered.
+	 */
+	public ObjectName register(String name) throws JMException
+	{
+		ObjectName objectName = new ObjectName(
+			"org.foraci.math.graph.pathfinder:type=SearchMetrics,name="
+				+ ObjectName.quote(name));
+		ManagementFactory.getPlatformMBeanServer().registerMBean(this,
+			objectName);
+		return objectName;
+	}
+
+	public long getQueryCount()
+	{
+		return queries.sum();
+	}
+
+	public long getFailedQueryCount()
+	{
+		return failed.sum();
+	}
+
+	public long getPartialQueryCount()
+	{
+		return partial.sum();
+	}
+
+	public long getExpandedCount()
+	{
+		return expanded.sum();
+	}
+
+	public long getGeneratedCount()
+	{
+		return generated.sum();
+	}
+
+	public long getReopenedCount()
+	{
+		return reopened.sum();
+	}
+
+	public long getHeapOperationCount()
+	{
+		return heapOps.sum();
+	}
+
+	public long getMaxPeakOpen()
+	{
+		return peakOpen.get();
+	}
+
+	public long getTotalTimeNanos()
+	{
+		return nanos.sum();
+	}
+
+	public double getMeanTimeMicros()
+	{
+		long count = queries.sum();
+		return count == 0 ? 0 : nanos.sum() / 1000.0 / count;
+	}
+
+	public long[] getTimeHistogram()
+	{
+		return snapshot(timeHistogram);
+	}
+
+	public long[] getExpansionHistogram()
+	{
+		return snapshot(expansionHistogram);
+	}
+
+	public void reset()
+	{
+		queries.reset();
+		failed.reset();
+		partial.reset();
+		expanded.reset();
+		generated.reset();
+		reopened.reset();
+		heapOps.reset();
+		nanos.reset();
+		peakOpen.reset();
+		for (int i = 0; i < BUCKETS; i++)
+		{
+			timeHistogram.set(i, 0);
+			expansionHistogram.set(i, 0);
+		}
+	}
+
+	/** Gets the bucket of a value: 0 for 0, else 1 + floor(log2(value)). */
+	private static int bucket(long value)
+	{
+		return Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(Math.max(
+			0, value)));
+	}
+
+	private static long[] snapshot(AtomicLongArray histogram)
+	{
+		long[] counts = new long[BUCKETS];
+		for (int i = 0; i < BUCKETS; i++)
+			counts[i] = histogram.get(i);
+		return counts;
+	}
+}
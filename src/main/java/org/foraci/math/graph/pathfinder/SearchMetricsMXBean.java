@@ -0,0 +1,58 @@
+package org.foraci.math.graph.pathfinder;
+
+/**
+ * The management interface of <code>SearchMetrics</code>, through which the
+ * aggregate statistics of a path finder's queries are exported over JMX.
+ */
+public interface SearchMetricsMXBean
+{
+	/** Gets the number of queries recorded. */
+	long getQueryCount();
+
+	/**
+	 * Gets the number of queries that found no path to their destination,
+	 * including those stopped by a limit with a partial path.
+	 */
+	long getFailedQueryCount();
+
+	/** Gets the number of queries stopped by a limit with a partial path. */
+	long getPartialQueryCount();
+
+	/** Gets the number of nodes expanded by all queries. */
+	long getExpandedCount();
+
+	/** Gets the number of nodes generated by all queries. */
+	long getGeneratedCount();
+
+	/** Gets the number of nodes re-opened by all queries. */
+	long getReopenedCount();
+
+	/** Gets the number of OPEN set operations by all queries. */
+	long getHeapOperationCount();
+
+	/** Gets the largest OPEN set any query reached. */
+	long getMaxPeakOpen();
+
+	/** Gets the wall time of all queries, in nanoseconds. */
+	long getTotalTimeNanos();
+
+	/** Gets the average wall time of a query, in microseconds. */
+	double getMeanTimeMicros();
+
+	/**
+	 * Gets the number of queries by wall time: element <code>i</code> counts
+	 * the queries that took from 2<sup>i-1</sup> up to 2<sup>i</sup>
+	 * microseconds, element 0 those under one microsecond.
+	 */
+	long[] getTimeHistogram();
+
+	/**
+	 * Gets the number of queries by nodes expanded: element <code>i</code>
+	 * counts the queries that expanded from 2<sup>i-1</sup> up to
+	 * 2<sup>i</sup> nodes, element 0 those that expanded none.
+	 */
+	long[] getExpansionHistogram();
+
+	/** Sets every count back to 0. */
+	void reset();
+}
@@ -0,0 +1,90 @@
+package org.foraci.math.graph.pathfinder;
+
+/**
+ * The outcome of a query run under <code>SearchLimits</code>. A query that
+ * finds its destination, or shows there is no path to it, is complete. One
+ * stopped by a limit is partial: its path leads to the node, of those it
+ * expanded, with the lowest estimated cost to the destination, so a caller
+ * can start along it while a full search runs elsewhere. Engines with no
+ * such estimate (Dijkstra, contraction hierarchies and HPA*) leave a path
+ * of the start alone.
+ */
+public final class SearchResult
+{
+	/** A path to the destination was found. */
+	public static final int FOUND = 0;
+	/** There is no path to the destination. */
+	public static final int NO_PATH = 1;
+	/** The query expanded as many nodes as it was allowed to. */
+	public static final int EXPANSION_LIMIT = 2;
+	/** The query ran out of time. */
+	public static final int DEADLINE = 3;
+	/** The query was cancelled. */
+	public static final int CANCELLED = 4;
+
+	private final int status;
+	private final float cost;
+	private final int[] pathIds;
+	private final long expanded;
+
+	SearchResult(int status, float cost, int[] pathIds, long expanded)
+	{
+		this.status = status;
+		this.cost = cost;
+		this.pathIds = pathIds;
+		this.expanded = expanded;
+	}
+
+	/** Gets the status code of the query. */
+	public int getStatus()
+	{
+		return status;
+	}
+
+	/** Returns <code>true</code> if a limit stopped the query. */
+	public boolean isPartial()
+	{
+		return status >= EXPANSION_LIMIT;
+	}
+
+	/**
+	 * Gets the cost of the path, or <code>Float.POSITIVE_INFINITY</code> if
+	 * there is none.
+	 */
+	public float getCost()
+	{
+		return cost;
+	}
+
+	/**
+	 * Gets the ids of the nodes on the path, from start to its end, or an
+	 * empty array if there is no path. The array must not be modified.
+	 */
+	public int[] getPathIds()
+	{
+		return pathIds;
+	}
+
+	/**
+	 * Gets the id of the node the path ends at: the destination, unless the
+	 * result is partial. <code>-1</code> if there is no path.
+	 */
+	public int getEndId()
+	{
+		return pathIds.length > 0 ? pathIds[pathIds.length - 1] : -1;
+	}
+
+	/** Gets the number of nodes expanded, counted against the limits. */
+	public long getExpanded()
+	{
+		return expanded;
+	}
+
+	public String toString()
+	{
+		String[] names = { "FOUND", "NO_PATH", "EXPANSION_LIMIT", "DEADLINE",
+			"CANCELLED" };
+		return "SearchResult[" + names[status] + ", cost=" + cost
+			+ ", length=" + pathIds.length + ", expanded=" + expanded + "]";
+	}
+}
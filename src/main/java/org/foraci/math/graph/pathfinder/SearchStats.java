@@ -0,0 +1,196 @@
+package org.foraci.math.graph.pathfinder;
+
+import org.foraci.math.graph.pathfinder.graph.Graph;
+
+/**
+ * The statistics of one query: how much of the graph it searched, how hard
+ * it worked the OPEN set and how long it took. A <code>SearchContext</code>
+ * records them when asked to, or when its path finder has a
+ * <code>SearchListener</code> or <code>SearchMetrics</code>; otherwise the
+ * engines find no statistics to update and pay nothing for them.
+ * <br/>The engines report their work through the event methods, which also
+ * pass the events on to the path finder's listener.
+ */
+public final class SearchStats
+{
+	private Graph graph;
+	private SearchListener listener;
+	private int startId, destId;
+	private int expanded, generated, reopened, peakOpen;
+	private long heapOps, nanos;
+	private float cost;
+	private boolean partial;
+
+	SearchStats()
+	{
+	}
+
+	/** Clears the statistics for a new query. */
+	void start(Graph graph, SearchListener listener, int startId, int destId)
+	{
+		this.graph = graph;
+		this.listener = listener;
+		this.startId = startId;
+		this.destId = destId;
+		expanded = generated = reopened = peakOpen = 0;
+		heapOps = nanos = 0;
+		cost = Float.POSITIVE_INFINITY;
+		partial = false;
+	}
+
+	/**
+	 * Records the outcome of the query and reports it to the listener.
+	 *
+	 * @param partial
+	 *            whether a limit stopped the query short of its destination.
+	 */
+	void finish(float cost, boolean partial, long nanos)
+	{
+		this.cost = cost;
+		this.partial = partial;
+		this.nanos = nanos;
+		if (listener != null)
+			listener.finished(this);
+	}
+
+	/** The search began from a node, adding it to the OPEN set. */
+	public void started(int node)
+	{
+		generated++;
+		heapOps++;
+	}
+
+	/**
+	 * A node was polled from the OPEN set and expanded.
+	 *
+	 * @param openSize
+	 *            the size of the OPEN set once the node was polled.
+	 */
+	public void expanded(int node, float g, int openSize)
+	{
+		expanded++;
+		heapOps++;
+		peakOpen = Math.max(peakOpen, openSize + 1);
+		if (listener != null)
+			listener.expanded(graph.id(node), g);
+	}
+
+	/** A stale entry was polled from the OPEN set and thrown away. */
+	public void discarded()
+	{
+		heapOps++;
+	}
+
+	/** A node was reached for the first time and added to the OPEN set. */
+	public void generated(int from, int node, float g)
+	{
+		generated++;
+		heapOps++;
+		if (listener != null)
+			listener.relaxed(graph.id(from), graph.id(node), g);
+	}
+
+	/** A cheaper way to a node in the OPEN set was found. */
+	public void improved(int from, int node, float g)
+	{
+		heapOps++;
+		if (listener != null)
+			listener.relaxed(graph.id(from), graph.id(node), g);
+	}
+
+	/**
+	 * A cheaper way to an expanded node was found, and it was put back in
+	 * the OPEN set.
+	 */
+	public void reopened(int from, int node, float g)
+	{
+		reopened++;
+		heapOps++;
+		if (listener != null)
+			listener.relaxed(graph.id(from), graph.id(node), g);
+	}
+
+	/** Gets the id of the query's start node. */
+	public int getStartId()
+	{
+		return startId;
+	}
+
+	/** Gets the id of the query's destination node. */
+	public int getDestId()
+	{
+		return destId;
+	}
+
+	/**
+	 * Returns <code>true</code> if the query found a path to its
+	 * destination. A partial path does not count.
+	 */
+	public boolean isFound()
+	{
+		return cost != Float.POSITIVE_INFINITY && !partial;
+	}
+
+	/**
+	 * Returns <code>true</code> if a limit stopped the query, which left a
+	 * partial path to the node it expanded closest to the destination.
+	 */
+	public boolean isPartial()
+	{
+		return partial;
+	}
+
+	/**
+	 * Gets the cost of the path found, partial or not, or
+	 * <code>Float.POSITIVE_INFINITY</code> if there was none.
+	 */
+	public float getCost()
+	{
+		return cost;
+	}
+
+	/** Gets the number of nodes expanded. */
+	public int getExpanded()
+	{
+		return expanded;
+	}
+
+	/** Gets the number of nodes reached and added to the OPEN set. */
+	public int getGenerated()
+	{
+		return generated;
+	}
+
+	/** Gets the number of expanded nodes put back in the OPEN set. */
+	public int getReopened()
+	{
+		return reopened;
+	}
+
+	/** Gets the largest size the OPEN set reached. */
+	public int getPeakOpen()
+	{
+		return peakOpen;
+	}
+
+	/** Gets the number of adds, polls and key decreases on the OPEN set. */
+	public long getHeapOperations()
+	{
+		return heapOps;
+	}
+
+	/** Gets the wall time of the query, in nanoseconds. */
+	public long getTimeNanos()
+	{
+		return nanos;
+	}
+
+	public String toString()
+	{
+		return "SearchStats[" + startId + "->" + destId + ", cost=" + cost
+			+ (partial ? " (partial)" : "") + ", expanded=" + expanded
+			+ ", generated=" + generated + ", reopened=" + reopened
+			+ ", peakOpen=" + peakOpen + ", heapOps=" + heapOps + ", nanos="
+			+ nanos + "]";
+	}
+}
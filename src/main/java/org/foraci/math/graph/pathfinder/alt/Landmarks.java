@@ -0,0 +1,495 @@
+package org.foraci.math.graph.pathfinder.alt;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.IntConsumer;
+
+import org.foraci.math.graph.pathfinder.IndexCostEstimator;
+import org.foraci.math.graph.pathfinder.NoPathFoundException;
+import org.foraci.math.graph.pathfinder.PathCostEstimator;
+import org.foraci.math.graph.pathfinder.PathNode;
+import org.foraci.math.graph.pathfinder.SearchContext;
+import org.foraci.math.graph.pathfinder.dijkstra.DijkstraPathFinder;
+import org.foraci.math.graph.pathfinder.graph.Graph;
+import org.foraci.math.graph.pathfinder.graph.GraphNode;
+import org.foraci.math.graph.pathfinder.util.ParallelRange;
+import org.foraci.math.graph.pathfinder.util.SnapshotReader;
+import org.foraci.math.graph.pathfinder.util.SnapshotWriter;
+
+import static org.foraci.math.graph.pathfinder.SearchContext.CLOSED;
+
+/**
+ * The ALT heuristic (A*, landmarks and the triangle inequality). The costs
+ * from a few landmark nodes to every node are computed up front; by the
+ * triangle inequality, the cost from <code>v</code> to <code>t</code> is at
+ * least <code>|d(L,t) - d(L,v)|</code> for every landmark <code>L</code>.
+ * Unlike a geometric distance, this bound knows about walls and weights, so
+ * A* expands far fewer nodes on mazes and weighted maps.
+ * <br/>Costs are quantized to 16 bits per landmark and stored node-major, so
+ * the landmark costs of a node share a cache line or two. Rounding is
+ * always toward a lower bound, so the heuristic never overestimates.
+ * <br/>The bound assumes the cost of an edge is the same both ways and that
+ * every neighbor relation is mutual, as on grids with
+ * <code>GridStepCost</code>. Nodes not reachable from a landmark get no
+ * bound from it. The landmarks are usable by any engine, as an
+ * <code>IndexCostEstimator</code> or a <code>PathCostEstimator</code>, by
+ * any number of threads at once.
+ * <br/>From 1 to 64 landmarks may be used; 8 to 16 is usually plenty.
+ */
+public final class Landmarks implements IndexCostEstimator, PathCostEstimator
+{
+	/** The kind of the snapshots written by <code>writeSnapshot()</code>. */
+	public static final int SNAPSHOT_KIND = 0x4C4D4B53; //"LMKS"
+
+	private static final char UNREACHABLE = 0xFFFF;
+	private static final int LEVELS = 0xFFFE; //highest quantized cost
+
+	private final Graph graph;
+	private final int count;
+	private final int[] landmarks; //node index of each landmark
+	private final float[] scales; //cost of one quantization step of each
+	/* quantized cost from landmark i to node n, at n * count + i */
+	private final char[] dist;
+
+	private Landmarks(Graph graph, int[] landmarks, float[] scales,
+		char[] dist)
+	{
+		this.graph = graph;
+		this.count = landmarks.length;
+		this.landmarks = landmarks;
+		this.scales = scales;
+		this.dist = dist;
+	}
+
+	/**
+	 * Selects landmarks by farthest-point sampling: the first is the node
+	 * farthest from the first passable node, and each next one the node
+	 * whose cost from the nearest landmark chosen so far is highest. Each
+	 * choice depends on the costs from the landmarks before it, so the
+	 * landmarks are swept one at a time. Fewer landmarks are chosen if the
+	 * component searched has fewer nodes.
+	 *
+	 * @param successorCost
+	 *            the cost to travel from a node to its given neighbor.
+	 */
+	public static Landmarks selectFarthest(Graph graph,
+		IndexCostEstimator successorCost, int count)
+	{
+		checkCount(count);
+		int n = graph.size();
+		DijkstraPathFinder finder = DijkstraPathFinder.buildIndexPathFinder(
+			graph, successorCost);
+		SearchContext ctx = finder.newSearchContext();
+		char[] dist = new char[n * count];
+		int[] landmarks = new int[count];
+		float[] scales = new float[count];
+		float[] nearest = new float[n]; //cost from the nearest landmark
+		sweep(finder, firstPassable(graph), ctx);
+		for (int node = 0; node < n; node++)
+			nearest[node] = ctx.state(node) == CLOSED ? ctx.g()[node]
+				: Float.POSITIVE_INFINITY;
+		int next = farthest(nearest);
+		Arrays.fill(nearest, Float.POSITIVE_INFINITY);
+		int chosen = 0;
+		while (chosen < count && next >= 0)
+		{
+			sweep(finder, next, ctx);
+			store(ctx, chosen, next, count, landmarks, scales, dist);
+			chosen++;
+			float[] g = ctx.g();
+			for (int node = 0; node < n; node++)
+				if (ctx.state(node) == CLOSED && g[node] < nearest[node])
+					nearest[node] = g[node];
+			next = farthest(nearest);
+		}
+		return trim(graph, chosen, count, landmarks, scales, dist);
+	}
+
+	/**
+	 * Selects landmarks with the avoid strategy and computes their costs,
+	 * using the common <code>ForkJoinPool</code>.
+	 *
+	 * @see #selectAvoid(Graph,IndexCostEstimator,int,long,Executor)
+	 */
+	public static Landmarks selectAvoid(Graph graph,
+		IndexCostEstimator successorCost, int count, long seed)
+	{
+		return selectAvoid(graph, successorCost, count, seed,
+			ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Selects landmarks with the avoid strategy of Goldberg and Harrelson,
+	 * which puts each new landmark where the bounds of those chosen so far
+	 * are weakest. From a random root, each node is weighted by how much its
+	 * cost exceeds its current bound, subtrees of the shortest path tree
+	 * holding a landmark are dropped, and the walk down the tree always
+	 * takes the heaviest subtree; the leaf it ends at is the next landmark.
+	 * The shortest path tree from each root is swept alongside the costs
+	 * from the landmark before it, two at a time on <code>executor</code>.
+	 *
+	 * @param seed
+	 *            seeds the choice of roots, so a seed always gives the same
+	 *            landmarks.
+	 */
+	public static Landmarks selectAvoid(Graph graph,
+		final IndexCostEstimator successorCost, int count, long seed,
+		Executor executor)
+	{
+		checkCount(count);
+		final int n = graph.size();
+		final int stride = count;
+		final DijkstraPathFinder finder = DijkstraPathFinder
+			.buildIndexPathFinder(graph, successorCost);
+		final SearchContext[] ctx = { finder.newSearchContext(),
+			finder.newSearchContext() }; //the root's, the landmark's
+		final char[] dist = new char[n * count];
+		final int[] landmarks = new int[count];
+		final float[] scales = new float[count];
+		Random random = new Random(seed);
+		boolean[] isLandmark = new boolean[n];
+		long[] order = new long[n];
+		float[] size = new float[n];
+		int[] heaviest = new int[n];
+		int first = firstPassable(graph);
+		int chosen = 0, stored = 0;
+		for (int tries = 0; chosen < count && tries < 4 * count; tries++)
+		{
+			final int root = randomPassable(graph, random, first);
+			final int last = stored < chosen ? stored++ : -1;
+			//sweep from the root while storing the costs of the last landmark
+			ParallelRange.run(last >= 0 ? 2 : 1, executor, new IntConsumer()
+				{
+					public void accept(int i)
+					{
+						if (i == 0)
+							sweep(finder, root, ctx[0]);
+						else
+						{
+							sweep(finder, landmarks[last], ctx[1]);
+							store(ctx[1], last, landmarks[last], stride,
+								landmarks, scales, dist);
+						}
+					}
+				});
+			int leaf = avoidLeaf(root, ctx[0], chosen, count, dist, scales,
+				isLandmark, order, size, heaviest);
+			if (isLandmark[leaf])
+				continue;
+			isLandmark[leaf] = true;
+			landmarks[chosen++] = leaf;
+		}
+		if (stored < chosen)
+		{ //the costs of the last landmark chosen
+			sweep(finder, landmarks[stored], ctx[1]);
+			store(ctx[1], stored, landmarks[stored], count, landmarks, scales,
+				dist);
+		}
+		return trim(graph, chosen, count, landmarks, scales, dist);
+	}
+
+	/**
+	 * Computes the costs from the landmarks given, using the common
+	 * <code>ForkJoinPool</code>.
+	 *
+	 * @see #build(Graph,IndexCostEstimator,int[],Executor)
+	 */
+	public static Landmarks build(Graph graph,
+		IndexCostEstimator successorCost, int[] landmarkIds)
+	{
+		return build(graph, successorCost, landmarkIds,
+			ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Computes the costs from the landmarks given, sweeping from all of them
+	 * in parallel on <code>executor</code>, each thread with its own search
+	 * context.
+	 *
+	 * @throws IllegalArgumentException
+	 *             if there is no passable node with one of the ids given.
+	 */
+	public static Landmarks build(Graph graph,
+		IndexCostEstimator successorCost, int[] landmarkIds,
+		Executor executor)
+	{
+		checkCount(landmarkIds.length);
+		final int count = landmarkIds.length;
+		final int[] landmarks = new int[count];
+		for (int i = 0; i < count; i++)
+			if ((landmarks[i] = graph.indexOf(landmarkIds[i])) < 0)
+				throw new IllegalArgumentException("no node with id "
+					+ landmarkIds[i]);
+		final DijkstraPathFinder finder = DijkstraPathFinder
+			.buildIndexPathFinder(graph, successorCost);
+		final ThreadLocal<SearchContext> contexts = new ThreadLocal<SearchContext>()
+			{
+				protected SearchContext initialValue()
+				{
+					return finder.newSearchContext();
+				}
+			};
+		final float[] scales = new float[count];
+		final char[] dist = new char[graph.size() * count];
+		ParallelRange.run(count, executor, new IntConsumer()
+			{
+				public void accept(int i)
+				{
+					SearchContext ctx = contexts.get();
+					sweep(finder, landmarks[i], ctx);
+					store(ctx, i, landmarks[i], count, landmarks, scales, dist);
+				}
+			});
+		return new Landmarks(graph, landmarks, scales, dist);
+	}
+
+	/**
+	 * Loads landmarks saved with <code>writeSnapshot()</code> for use over
+	 * <code>graph</code>, which must be the graph they were computed on.
+	 *
+	 * @throws IOException
+	 *             if the file can not be read, does not hold landmarks or
+	 *             holds landmarks of a graph of another size.
+	 */
+	public static Landmarks readSnapshot(File file, Graph graph)
+		throws IOException
+	{
+		try (SnapshotReader in = new SnapshotReader(file))
+		{
+			in.expectKind(SNAPSHOT_KIND);
+			int n = in.readInt();
+			int[] landmarks = in.readInts();
+			float[] scales = in.readFloats();
+			char[] dist = in.readChars();
+			if (n != graph.size() || landmarks == null || scales == null
+				|| dist == null || scales.length != landmarks.length
+				|| dist.length != n * landmarks.length)
+				throw new IOException("bad snapshot in " + file);
+			return new Landmarks(graph, landmarks, scales, dist);
+		}
+	}
+
+	/**
+	 * Saves the landmarks and their costs to a snapshot file, to be loaded
+	 * with <code>readSnapshot()</code>. The graph is not saved; see
+	 * <code>GraphSnapshot</code>.
+	 *
+	 * @throws IOException
+	 *             if the file can not be written.
+	 */
+	public void writeSnapshot(File file) throws IOException
+	{
+		try (SnapshotWriter out = new SnapshotWriter(file, SNAPSHOT_KIND))
+		{
+			out.writeInt(graph.size());
+			out.writeInts(landmarks);
+			out.writeFloats(scales);
+			out.writeChars(dist);
+		}
+	}
+
+	/** Gets the number of landmarks. */
+	public int count()
+	{
+		return count;
+	}
+
+	/** Gets the ids of the landmarks. */
+	public int[] landmarkIds()
+	{
+		int[] ids = new int[count];
+		for (int i = 0; i < count; i++)
+			ids[i] = graph.id(landmarks[i]);
+		return ids;
+	}
+
+	public float cost(int from, int to)
+	{
+		return bound(dist, count, scales, count, from, to);
+	}
+
+	public float cost(PathNode start, PathNode dest)
+	{
+		int from = indexOf(start), to = indexOf(dest);
+		return from < 0 || to < 0 ? 0 : cost(from, to);
+	}
+
+	private int indexOf(PathNode node)
+	{
+		if (node instanceof GraphNode && ((GraphNode) node).graph() == graph)
+			return ((GraphNode) node).index();
+		return graph.indexOf(node.id());
+	}
+
+	/** Computes the shortest path tree from a node into a context. */
+	private static void sweep(DijkstraPathFinder finder, int node,
+		SearchContext ctx)
+	{
+		try
+		{
+			finder.computeShortestPathTree(ctx.graph().id(node), ctx);
+		}
+		catch (NoPathFoundException e)
+		{ //the node is passable, so its id is found
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Quantizes the costs of the shortest path tree in <code>ctx</code> as
+	 * those of landmark <code>i</code>.
+	 */
+	private static void store(SearchContext ctx, int i, int landmark,
+		int count, int[] landmarks, float[] scales, char[] dist)
+	{
+		float[] g = ctx.g();
+		int n = ctx.graph().size();
+		float max = 0;
+		for (int node = 0; node < n; node++)
+			if (ctx.state(node) == CLOSED && g[node] > max)
+				max = g[node];
+		float scale = max > 0 ? max / LEVELS : 1;
+		for (int node = 0, at = i; node < n; node++, at += count)
+			dist[at] = ctx.state(node) == CLOSED ? (char) Math.min(LEVELS,
+				(int) (g[node] / scale)) : UNREACHABLE;
+		landmarks[i] = landmark;
+		scales[i] = scale;
+	}
+
+	/**
+	 * Gets the node with the highest finite cost, or -1 if the highest is 0.
+	 */
+	private static int farthest(float[] costs)
+	{
+		int best = -1;
+		float max = 0;
+		for (int node = 0; node < costs.length; node++)
+			if (costs[node] > max && costs[node] != Float.POSITIVE_INFINITY)
+			{
+				max = costs[node];
+				best = node;
+			}
+		return best;
+	}
+
+	/**
+	 * Walks the shortest path tree from <code>root</code> in
+	 * <code>ctx</code> down its heaviest subtrees, where a node weighs the
+	 * amount by which its cost from the root exceeds the bound of the first
+	 * <code>chosen</code> landmarks, and subtrees holding a landmark weigh
+	 * nothing.
+	 *
+	 * @return the leaf reached, or the root if every subtree holds a
+	 *         landmark.
+	 */
+	private static int avoidLeaf(int root, SearchContext ctx, int chosen,
+		int count, char[] dist, float[] scales, boolean[] isLandmark,
+		long[] order, float[] size, int[] heaviest)
+	{
+		float[] g = ctx.g();
+		int[] parent = ctx.parent();
+		int reached = 0;
+		for (int node = 0, n = ctx.graph().size(); node < n; node++)
+			if (ctx.state(node) == CLOSED)
+			{ //costs are non-negative, so their bits sort as the costs do
+				order[reached++] = ((long) Float.floatToIntBits(g[node]) << 32)
+					| node;
+				size[node] = 0;
+				heaviest[node] = -1;
+			}
+		Arrays.sort(order, 0, reached);
+		//children cost more than their parents, so come first from the back
+		for (int k = reached - 1; k >= 0; k--)
+		{
+			int node = (int) order[k];
+			int p = parent[node];
+			if (isLandmark[node] || size[node] < 0)
+				size[node] = -1; //holds a landmark
+			else
+				size[node] += Math.max(0, g[node]
+					- bound(dist, count, scales, chosen, root, node));
+			if (p < 0)
+				continue;
+			if (size[node] < 0)
+				size[p] = -1;
+			else
+			{
+				if (size[p] >= 0)
+					size[p] += size[node];
+				if (heaviest[p] < 0 || size[node] > size[heaviest[p]])
+					heaviest[p] = node;
+			}
+		}
+		//the root's own subtree holds every landmark reached; walk it anyway
+		int node = root;
+		while (heaviest[node] >= 0)
+			node = heaviest[node];
+		return node;
+	}
+
+	/**
+	 * Gets the bound of the first <code>used</code> landmarks on the cost
+	 * from <code>from</code> to <code>to</code>.
+	 */
+	private static float bound(char[] dist, int count, float[] scales,
+		int used, int from, int to)
+	{
+		//costs lie within one step above their quantized values, so a
+		//difference of k steps bounds the cost from below by k - 1 steps
+		int a = from * count, b = to * count;
+		float bound = 0;
+		for (int i = 0; i < used; i++)
+		{
+			int da = dist[a + i], db = dist[b + i];
+			if (da == UNREACHABLE || db == UNREACHABLE)
+				continue;
+			float h = (Math.abs(da - db) - 1) * scales[i];
+			if (h > bound)
+				bound = h;
+		}
+		return bound;
+	}
+
+	/** Packs the costs of the first <code>chosen</code> landmarks. */
+	private static Landmarks trim(Graph graph, int chosen, int count,
+		int[] landmarks, float[] scales, char[] dist)
+	{
+		if (chosen == count)
+			return new Landmarks(graph, landmarks, scales, dist);
+		int n = graph.size();
+		char[] packed = new char[n * chosen];
+		for (int node = 0; node < n; node++)
+			System.arraycopy(dist, node * count, packed, node * chosen, chosen);
+		return new Landmarks(graph, Arrays.copyOf(landmarks, chosen),
+			Arrays.copyOf(scales, chosen), packed);
+	}
+
+	private static int firstPassable(Graph graph)
+	{
+		for (int node = 0, n = graph.size(); node < n; node++)
+			if (graph.isPassable(node))
+				return node;
+		throw new IllegalArgumentException("graph has no passable node");
+	}
+
+	private static int randomPassable(Graph graph, Random random, int first)
+	{
+		for (int tries = 0; tries < 64; tries++)
+		{
+			int node = random.nextInt(graph.size());
+			if (graph.isPassable(node))
+				return node;
+		}
+		return first;
+	}
+
+	private static void checkCount(int count)
+	{
+		if (count < 1 || count > 64)
+			throw new IllegalArgumentException("landmark count out of 1..64");
+	}
+}
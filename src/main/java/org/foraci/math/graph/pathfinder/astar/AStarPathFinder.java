@@ -1,38 +1,102 @@
 package org.foraci.math.graph.pathfinder.astar;
 
-import java.util.*;
+import java.util.concurrent.TimeUnit;
 
-import org.foraci.math.graph.pathfinder.NoPathFoundException;
+import org.foraci.math.graph.pathfinder.IndexCostEstimator;
+import org.foraci.math.graph.pathfinder.PathCostAdapter;
 import org.foraci.math.graph.pathfinder.PathCostEstimator;
 import org.foraci.math.graph.pathfinder.PathFinder;
 import org.foraci.math.graph.pathfinder.PathNode;
+import org.foraci.math.graph.pathfinder.SearchContext;
+import org.foraci.math.graph.pathfinder.SearchStats;
+import org.foraci.math.graph.pathfinder.graph.Graph;
+import org.foraci.math.graph.pathfinder.graph.GridGraph;
+import org.foraci.math.graph.pathfinder.util.IndexedMinHeap;
 
+import static org.foraci.math.graph.pathfinder.SearchContext.CLOSED;
+import static org.foraci.math.graph.pathfinder.SearchContext.OPEN;
+import static org.foraci.math.graph.pathfinder.SearchContext.UNVISITED;
+
+/**
+ * Path finder using the A* heuristic. The graph is shared and read-only, so a
+ * single instance may run queries on many threads at once.
+ * <br/>In bidirectional mode a second frontier grows from the destination
+ * toward the start, so long queries through narrow corridors do not have to
+ * flood the whole area around the start. That mode requires every neighbor
+ * relation in the graph to be mutual, as it is on grids.
+ * <br/>Costs are estimated with the <code>PathCostEstimator</code>s given,
+ * or with <code>IndexCostEstimator</code>s on node indices, which spare the
+ * search re-pointing node views for every call.
+ * <br/>In anytime mode (ARA*) a query first searches with the heuristic
+ * inflated by a weight, which finds a path quickly, then lowers the weight
+ * and improves the path, reusing the work done so far, until the weight
+ * reaches 1 or the time budget runs out. The bound on how far the path
+ * returned is from optimal is left in the context's
+ * <code>getSuboptimalityBound()</code>.
+ */
 public final class AStarPathFinder extends PathFinder
 {
-	private PriorityQueue<AStarPathNode> open;
-	private PriorityQueue<AStarPathNode> closed;
-	private PathNode curDest;
-	private LinkedList<AStarPathNode> bestPath;
+	/* states of anytime searches, beyond those of SearchContext */
+	private static final byte INCONS = 3; //improved while CLOSED
+	private static final byte SEEN = 4; //CLOSED in an earlier iteration
+
 	private PathCostEstimator successorCost;
+	/* used instead of the estimators above when set */
+	private IndexCostEstimator indexPathCost, indexSuccessorCost;
+	private boolean bidirectional;
+	private float initialWeight = 1; //above 1 in anytime mode
+	private float weightStep;
+	private long budgetNanos;
 
 	/**
 	 * Constructs an instance of this path finder.
 	 */
-	private AStarPathFinder(PathNode[] graph, PathCostEstimator pathCost,
+	private AStarPathFinder(Graph graph, PathCostEstimator pathCost,
 		PathCostEstimator successorCost)
 	{
 		super(graph, pathCost);
 		this.successorCost = successorCost;
-		open = new PriorityQueue<>();
-		closed = new PriorityQueue<>();
-		curDest = null;
-		bestPath = null;
+	}
+
+	/**
+	 * Factory method to build an <code>AStarPathFinder</code> over an
+	 * already built graph.
+	 *
+	 * @param pathCost A <code>PathCostEstimator</code> that can guess the cost to
+	 *   a travel from a given PathNode to another given PathNode.
+	 * @param successorCost A <code>PathCostEstimator</code> that can calculate
+	 *   the cost to a travel from a given PathNode to its given successor
+	 *   PathNode.
+	 */
+	public static AStarPathFinder buildPathFinder(Graph graph,
+		PathCostEstimator pathCost, PathCostEstimator successorCost)
+	{
+		return new AStarPathFinder(graph, pathCost, successorCost);
+	}
+
+	/**
+	 * Factory method to build an <code>AStarPathFinder</code> over an
+	 * already built graph, estimating costs on node indices.
+	 *
+	 * @param pathCost An <code>IndexCostEstimator</code> that can guess the
+	 *   cost to travel from a given node to another given node.
+	 * @param successorCost An <code>IndexCostEstimator</code> that can
+	 *   calculate the cost to travel from a given node to its given successor.
+	 * @see org.foraci.math.graph.pathfinder.graph.GridDistance
+	 * @see org.foraci.math.graph.pathfinder.graph.GridStepCost
+	 */
+	public static AStarPathFinder buildIndexPathFinder(Graph graph,
+		IndexCostEstimator pathCost, IndexCostEstimator successorCost)
+	{
+		AStarPathFinder finder = new AStarPathFinder(graph, null, null);
+		finder.setIndexCostEstimators(pathCost, successorCost);
+		return finder;
 	}
 
 	/**
 	 * Factory method to build an <code>AStarPathFinder</code> with a internal
 	 * graph representing a 2D grid of nodes.
-	 * 
+	 *
 	 * @param arrGraph
 	 *            An array of <code>int</code> s representing graph nodes. A
 	 *            value of <code>PathFinder.WEIGHT_INF</code> indicates a
@@ -51,56 +115,23 @@ public final class AStarPathFinder extends PathFinder
 		int[][] arrIds, PathCostEstimator pathCost,
 		PathCostEstimator successorCost)
 	{
-		int rows = arrGraph.length;
-		int cols = arrGraph[0].length;
-		int[] tmp = new int[rows * cols];
-		int[] tmpids = new int[rows * cols];
-		for (int j = 0; j < rows; j++)
-			for (int i = 0; i < cols; i++)
-			{
-				tmp[i + j * cols] = arrGraph[j][i];
-				tmpids[i + j * cols] = arrIds[j][i];
-			}
-		return AStarPathFinder.buildGridPathFinder(tmp, tmpids, rows, cols,
-			pathCost, successorCost);
+		return new AStarPathFinder(GridGraph.build(arrGraph, arrIds), pathCost,
+			successorCost);
 	}
 
 	public static AStarPathFinder buildGridPathFinder(int[] arrGraph,
 		int[] arrIds, int rows, int cols, PathCostEstimator pathCost,
 		PathCostEstimator successorCost)
 	{
-		int i, j;
-		int colsp = cols + 2, rowsp = rows + 2;
-		int[] arrGraphPad = new int[(rows + 2) * (cols + 2)];
-		AStarPathNode[] graph = new AStarPathNode[rows * cols];
-		for (i = 0; i < cols + 2; i++)
-			for (j = 0; j < rows + 2; j++)
-			{
-				if (i == 0 || i == cols + 1 || j == 0 || j == rows + 1)
-					arrGraphPad[j * colsp + i] = Integer.MAX_VALUE; //edges are
-																	// blocked
-				else
-					arrGraphPad[j * colsp + i] = arrGraph[(j - 1) * cols
-						+ (i - 1)];
-			}
-		for (i = 0; i < cols; i++)
-			for (j = 0; j < rows; j++)
-				if (arrGraph[j * cols + i] != Integer.MAX_VALUE)
-					graph[j * cols + i] = new AStarPathNode(1.0f, arrIds[j
-						* cols + i]);
-				else
-					graph[j * cols + i] = null;
-		connectNeighbors(arrGraph, rows, cols, colsp, arrGraphPad, graph);
 		//create new pathfinder with default cost calculation functions
-		AStarPathFinder pathFinder = new AStarPathFinder(graph, pathCost,
-			successorCost);
-		return pathFinder;
+		return new AStarPathFinder(GridGraph.build(arrGraph, arrIds, rows,
+			cols), pathCost, successorCost);
 	}
 
 	/**
 	 * Factory method to build an <code>AStarPathFinder</code> with a internal
 	 * graph representing a 2D grid of <i>weighted </i> nodes.
-	 * 
+	 *
 	 * @param arrGraph
 	 *            An array of <code>int</code> s representing graph nodes. A
 	 *            value of <code>PathFinder.WEIGHT_INF</code> indicates a
@@ -119,305 +150,471 @@ public final class AStarPathFinder extends PathFinder
 		int[][] arrIds, PathCostEstimator pathCost,
 		PathCostEstimator successorCost)
 	{
-		int rows = arrGraph.length;
-		int cols = arrGraph[0].length;
-		int[] tmp = new int[rows * cols];
-		int[] tmpids = new int[rows * cols];
-		for (int j = 0; j < rows; j++)
-			for (int i = 0; i < cols; i++)
-			{
-				tmp[i + j * cols] = arrGraph[j][i];
-				tmpids[i + j * cols] = arrIds[j][i];
-			}
-		return AStarPathFinder.buildWeightedGridPathFinder(tmp, tmpids, rows,
-			cols, pathCost, successorCost);
+		return new AStarPathFinder(GridGraph.buildWeighted(arrGraph, arrIds),
+			pathCost, successorCost);
 	}
 
 	public static AStarPathFinder buildWeightedGridPathFinder(int[] arrGraph,
 		int[] arrIds, int rows, int cols, PathCostEstimator pathCost,
 		PathCostEstimator successorCost)
 	{
-		int i, j;
-		int colsp = cols + 2, rowsp = rows + 2;
-		int[] arrGraphPad = new int[(rows + 2) * (cols + 2)];
-		AStarPathNode[] graph = new AStarPathNode[rows * cols];
-		for (i = 0; i < cols + 2; i++)
-			for (j = 0; j < rows + 2; j++)
-			{
-				if (i == 0 || i == cols + 1 || j == 0 || j == rows + 1)
-					arrGraphPad[j * colsp + i] = Integer.MAX_VALUE; //edges are
-																	// blocked
-				else
-					arrGraphPad[j * colsp + i] = arrGraph[(j - 1) * cols
-						+ (i - 1)];
-			}
-		int weight;
-		for (i = 0; i < cols; i++)
-			for (j = 0; j < rows; j++)
-				if ((weight = arrGraph[j * cols + i]) != Integer.MAX_VALUE)
-				{
-					graph[j * cols + i] = new AStarPathNode((float) weight,
-						arrIds[j * cols + i]);
-				}
-				else
-					graph[j * cols + i] = null;
-		connectNeighbors(arrGraph, rows, cols, colsp, arrGraphPad, graph);
 		//create new pathfinder with cost calculation functions
-		AStarPathFinder pathFinder = new AStarPathFinder(graph, pathCost,
-			successorCost);
-		return pathFinder;
+		return new AStarPathFinder(GridGraph.buildWeighted(arrGraph, arrIds,
+			rows, cols), pathCost, successorCost);
 	}
 
-	private static void connectNeighbors(int[] arrGraph, int rows, int cols, int colsp, int[] arrGraphPad, AStarPathNode[] graph) {
-		int i, j;
-		ArrayList<AStarPathNode> neighbors = new ArrayList<>(8); // max of 8 neighbors
-		for (i = 0; i < cols; i++)
-			for (j = 0; j < rows; j++) {
-				neighbors.clear();
-				if (arrGraph[j * cols + i] == Integer.MAX_VALUE) { //no node present here
-					continue;
-				}
-				if (arrGraphPad[(j + 1) * colsp + i] != Integer.MAX_VALUE) //left
-					neighbors.add(graph[j * cols + (i - 1)]);
-				if (arrGraphPad[(j + 1) * colsp + (i + 2)] != Integer.MAX_VALUE) //right
-					neighbors.add(graph[j * cols + (i + 1)]);
-				if (arrGraphPad[j * colsp + (i + 1)] != Integer.MAX_VALUE) //top
-					neighbors.add(graph[(j - 1) * cols + i]);
-				if (arrGraphPad[(j + 2) * colsp + (i + 1)] != Integer.MAX_VALUE) //bottom
-					neighbors.add(graph[(j + 1) * cols + i]);
-				if (arrGraphPad[j * colsp + i] != Integer.MAX_VALUE) //top left
-					neighbors.add(graph[(j - 1) * cols + (i - 1)]);
-				if (arrGraphPad[j * colsp + (i + 2)] != Integer.MAX_VALUE) //top right
-					neighbors.add(graph[(j - 1) * cols + (i + 1)]);
-				if (arrGraphPad[(j + 2) * colsp + i] != Integer.MAX_VALUE) //bottom left
-					neighbors.add(graph[(j + 1) * cols + (i - 1)]);
-				if (arrGraphPad[(j + 2) * colsp + (i + 2)] != Integer.MAX_VALUE) //bottom right
-					neighbors.add(graph[(j + 1) * cols + (i + 1)]);
-				//create an array for neighbors and fill with vector contents
-				AStarPathNode[] arrNeigh = new AStarPathNode[neighbors.size()];
-				neighbors.toArray(arrNeigh);
-				graph[j * cols + i].setNeighbors(arrNeigh);
-			}
+	protected PathNode pathNode(int index)
+	{
+		return new AStarPathNode(graph, index);
 	}
 
 	/**
-	 * Compute the best path given ids of the of the nodes specified when
-	 * creating an instance of this pathfinder.
-	 * 
-	 * @return the cost of the path found.
-	 * @throws NoPathFoundException
-	 *             if no path can be found from <code>(x0,y0)</code> to
-	 *             <code>(x1,y1)</code>.
+	 * Sets whether queries search from both endpoints at once. Costs found
+	 * are the same as in the default, forward-only mode when the path cost
+	 * estimator never overestimates.
 	 */
-	public float computeBestPath(int startId, int destId)
-		throws NoPathFoundException
+	public void setBidirectional(boolean bidirectional)
 	{
-		PathNode pStart = null, pDest = null;
-
-		for (PathNode pathNode : graph) {
-			if (pathNode != null) {
-				if (pathNode.id() == startId)
-					pStart = pathNode;
-				else if (pathNode.id() == destId)
-					pDest = pathNode;
-				if (pStart != null && pDest != null)
-					break;
-			}
-		}
-		return computeBestPath(pStart, pDest);
+		this.bidirectional = bidirectional;
+	}
+
+	public boolean isBidirectional()
+	{
+		return bidirectional;
 	}
 
 	/**
-	 * Compute the best path given a starting and destination node.
-	 * 
-	 * @param pStart
-	 *            the starting node.
-	 * @param pDest
-	 *            the destination node.
-	 * @return the cost of the path found.
-	 * @throws NoPathFoundException
-	 *             if no path can be found from <code>pStart</code> to
-	 *             <code>pDest</code>.
+	 * Sets the path finder to anytime mode, or back to exact searches with
+	 * an <code>initialWeight</code> of 1. In anytime mode, the first path of
+	 * a query is searched for with the heuristic multiplied by
+	 * <code>initialWeight</code>, however long it takes. The weight is then
+	 * lowered by <code>weightStep</code> at a time while
+	 * <code>budget</code> lasts, each search improving on the last. Anytime
+	 * searches are forward-only, whether or not bidirectional mode is set.
+	 *
+	 * @throws IllegalArgumentException
+	 *             if <code>initialWeight</code> is below 1,
+	 *             <code>weightStep</code> is not positive or
+	 *             <code>budget</code> is negative.
 	 */
-	public float computeBestPath(PathNode pStart, PathNode pDest)
-		throws NoPathFoundException
+	public void setAnytime(float initialWeight, float weightStep, long budget,
+		TimeUnit unit)
 	{
-		bestPath = null;
-		if (pStart == null || pDest == null)
-			throw new NoPathFoundException();
-		open = new PriorityQueue<>();
-		closed = new PriorityQueue<>();
-		AStarPathNode start = (AStarPathNode) pStart;
-		curDest = pDest; //setup global ptr to destination path node
-
-		int index;
-		int NumNeigh;
-		AStarPathNode[] bnNeigh, bnSucc;
+		if (!(initialWeight >= 1) || !(weightStep > 0) || budget < 0)
+			throw new IllegalArgumentException("bad anytime parameters");
+		this.initialWeight = initialWeight;
+		this.weightStep = weightStep;
+		this.budgetNanos = unit.toNanos(budget);
+	}
+
+	public boolean isAnytime()
+	{
+		return initialWeight > 1;
+	}
+
+	protected float search(int start, int dest, SearchContext ctx)
+	{
+		if (start < 0 || dest < 0)
+			return Float.POSITIVE_INFINITY;
+		if (initialWeight > 1)
+			return searchAnytime(start, dest, ctx);
+		if (bidirectional)
+			return searchBidirectional(start, dest, ctx);
+		float[] g = ctx.g(), h = ctx.h();
+		int[] parent = ctx.parent(), neighbors = ctx.neighbors();
+		IndexedMinHeap open = ctx.open();
+		SearchStats stats = ctx.getStats(); //null unless instrumented
+		IndexCostEstimator pathCost = pathCost();
+		IndexCostEstimator successorCost = successorCost();
+		boolean limited = ctx.isLimited();
+		int closest = start; //expanded node with the lowest h, if limited
+
+		int bestNode, succ, numNeigh;
 		float newCost;
 
 		//start by adding start node to OPEN set
-		start.g(0);
-		start.h(pathCost.cost(start, curDest)); //est cost to dest
-		start.f(start.g() + start.h());
-		open.add(start);
+		g[start] = 0;
+		h[start] = pathCost.cost(start, dest); //est cost to dest
+		parent[start] = -1;
+		ctx.setState(start, OPEN);
+		open.add(start, g[start] + h[start]);
+		if (stats != null)
+			stats.started(start);
 
-		AStarPathNode bestNode, succ;
 		do
 		{
+			if (limited && ctx.limitReached())
+			{ //stop with a partial path
+				buildPath(ctx, closest);
+				return g[closest];
+			}
 			//get best node (removes from OPEN set and placed in CLOSED)
-			bestNode = getBestNode();
+			bestNode = open.poll();
+			ctx.setState(bestNode, CLOSED);
+			if (stats != null)
+				stats.expanded(bestNode, g[bestNode], open.size());
+			if (limited && h[bestNode] < h[closest])
+				closest = bestNode;
 			//check if bestNode is destination
-			if (bestNode == curDest)
+			if (bestNode == dest)
 			{
-				buildPath(bestNode);
-				return bestNode.g(); //now path may be retrieved by calling
-									 // getBestPath() method
+				buildPath(ctx, bestNode);
+				return g[bestNode]; //now path may be retrieved by calling
+									// getBestPath() method
 			}
-			//neighbors
-			bnNeigh = (AStarPathNode[]) bestNode.getNeighbors();
-			NumNeigh = (bnNeigh != null) ? bnNeigh.length : 0;
-			//successors
-			bnSucc = new AStarPathNode[NumNeigh];
-			bestNode.setSuccessors(bnSucc);
-			for (int i = 0; i < NumNeigh; i++)
+			numNeigh = graph.neighbors(bestNode, neighbors);
+			for (int i = 0; i < numNeigh; i++)
 			{
-				succ = bnNeigh[i];
-				//get index of next free successor slot in bestNode
-				// since 'succ' is always eventually added to 'bestNode',
-				// thus 'i' is index into succ[] array
-				index = i;
-				newCost = bestNode.g() + successorCost.cost(bestNode, succ);
-				if ((open.contains(succ)))
+				succ = neighbors[i];
+				newCost = g[bestNode] + successorCost.cost(bestNode, succ);
+				switch (ctx.state(succ))
 				{
-					bnSucc[index] = succ;
-					if (succ.g() > newCost)
+				case OPEN:
+					if (g[succ] > newCost)
 					{ //a better path is found to succ
-						succ.g(newCost);
-						succ.f(succ.g() + succ.h());
-						succ.setParent(bestNode);
+						g[succ] = newCost;
+						parent[succ] = bestNode;
+						open.decreaseKey(succ, newCost + h[succ]);
+						if (stats != null)
+							stats.improved(bestNode, succ, newCost);
 					}
-				}
-				else if ((closed.contains(succ)))
-				{
-					bnSucc[index] = succ;
-					if (succ.g() > newCost)
-					{ //a better path is found to succ
-						succ.g(newCost);
-						succ.f(succ.g() + succ.h());
-						succ.setParent(bestNode);
-						downPropagate(succ);
+					break;
+				case CLOSED:
+					if (g[succ] > newCost)
+					{ //a better path is found to succ; re-open it so the
+					  // improvement propagates to its successors
+						g[succ] = newCost;
+						parent[succ] = bestNode;
+						ctx.setState(succ, OPEN);
+						open.add(succ, newCost + h[succ]);
+						if (stats != null)
+							stats.reopened(bestNode, succ, newCost);
 					}
-				}
-				else
-				{ //not in OPEN nor CLOSED set
-					succ.g(newCost);
-					succ.h(pathCost.cost(succ, curDest));
-					succ.f(succ.g() + succ.h());
-					succ.setParent(bestNode);
-					open.add(succ);
-					bnSucc[index] = succ;
+					break;
+				default: //not in OPEN nor CLOSED set
+					g[succ] = newCost;
+					h[succ] = pathCost.cost(succ, dest);
+					parent[succ] = bestNode;
+					ctx.setState(succ, OPEN);
+					open.add(succ, newCost + h[succ]);
+					if (stats != null)
+						stats.generated(bestNode, succ, newCost);
 				}
 			}
 		} while (!open.isEmpty());
 		//no path can be found
-		throw new NoPathFoundException();
+		return Float.POSITIVE_INFINITY;
 	}
 
 	/**
-	 * Get the best path that was found from a call to
-	 * <code>AStarPathFinder.computeBestPath()</code> or <code>null</code>
-	 * if a <code>NoPathFoundException</code> exception was thrown.
-	 * 
-	 * @return Returns the <code>LinkedList</code> of
-	 *         <code>AStarPathNode</code>s.
+	 * Searches forward from <code>start</code> in <code>fwd</code> and
+	 * backward from <code>dest</code> in its reverse context, always
+	 * expanding the smaller frontier. Whenever a node labeled by both
+	 * searches improves, the best meeting cost <code>best</code> is updated.
+	 * Each search keeps an OPEN node on an optimal path whose <code>f</code>
+	 * is at most the optimal cost (CLOSED nodes are re-opened when improved),
+	 * so once either frontier's lowest <code>f</code> reaches
+	 * <code>best</code>, no cheaper path remains.
 	 */
-	public LinkedList getBestPath()
+	private float searchBidirectional(int start, int dest, SearchContext fwd)
 	{
-		return bestPath;
+		SearchContext bwd = fwd.reverse();
+		int[] neighbors = fwd.neighbors();
+		SearchStats stats = fwd.getStats(); //null unless instrumented
+		IndexCostEstimator pathCost = pathCost();
+		IndexCostEstimator successorCost = successorCost();
+		float best = Float.POSITIVE_INFINITY;
+		int meet = -1;
+		boolean limited = fwd.isLimited();
+		int closest = start; //forward-expanded node with the lowest h
+
+		fwd.g()[start] = 0;
+		fwd.h()[start] = pathCost.cost(start, dest);
+		fwd.parent()[start] = -1;
+		fwd.setState(start, OPEN);
+		fwd.open().add(start, fwd.h()[start]);
+		bwd.g()[dest] = 0;
+		bwd.h()[dest] = fwd.h()[start];
+		bwd.parent()[dest] = -1;
+		bwd.setState(dest, OPEN);
+		bwd.open().add(dest, bwd.h()[dest]);
+		if (stats != null)
+		{
+			stats.started(start);
+			stats.started(dest);
+		}
+		if (start == dest)
+		{
+			best = 0;
+			meet = start;
+		}
+
+		while (!fwd.open().isEmpty() && !bwd.open().isEmpty())
+		{
+			if (fwd.open().peekKey() >= best || bwd.open().peekKey() >= best)
+				break;
+			if (limited && fwd.limitReached())
+			{ //stop with a partial path from the forward half
+				buildPath(fwd, closest);
+				return fwd.g()[closest];
+			}
+			boolean forward = fwd.open().size() <= bwd.open().size();
+			SearchContext ctx = forward ? fwd : bwd;
+			SearchContext other = forward ? bwd : fwd;
+			float[] g = ctx.g(), h = ctx.h(), otherG = other.g();
+			int[] parent = ctx.parent();
+			IndexedMinHeap open = ctx.open();
+
+			int bestNode = open.poll();
+			ctx.setState(bestNode, CLOSED);
+			if (stats != null)
+				stats.expanded(bestNode, g[bestNode], fwd.open().size()
+					+ bwd.open().size());
+			if (limited && forward && h[bestNode] < h[closest])
+				closest = bestNode;
+			int numNeigh = graph.neighbors(bestNode, neighbors);
+			for (int i = 0; i < numNeigh; i++)
+			{
+				int succ = neighbors[i];
+				//the backward search walks edges from succ to bestNode
+				float newCost = g[bestNode]
+					+ (forward ? successorCost.cost(bestNode, succ)
+						: successorCost.cost(succ, bestNode));
+				byte state = ctx.state(succ);
+				if (state != UNVISITED && g[succ] <= newCost)
+					continue;
+				if (state == UNVISITED)
+					h[succ] = forward ? pathCost.cost(succ, dest) : pathCost
+						.cost(start, succ);
+				g[succ] = newCost;
+				parent[succ] = bestNode;
+				if (state == OPEN)
+					open.decreaseKey(succ, newCost + h[succ]);
+				else
+				{
+					ctx.setState(succ, OPEN);
+					open.add(succ, newCost + h[succ]);
+				}
+				if (stats != null)
+				{
+					if (state == OPEN)
+						stats.improved(bestNode, succ, newCost);
+					else if (state == CLOSED)
+						stats.reopened(bestNode, succ, newCost);
+					else
+						stats.generated(bestNode, succ, newCost);
+				}
+				if (other.state(succ) != UNVISITED
+					&& newCost + otherG[succ] < best)
+				{ //the frontiers meet at succ
+					best = newCost + otherG[succ];
+					meet = succ;
+				}
+			}
+		}
+		if (meet < 0)
+			return Float.POSITIVE_INFINITY;
+		//chain the backward half onto the forward parents, then build
+		int[] parentF = fwd.parent(), parentB = bwd.parent();
+		for (int node = meet; node != dest; node = parentB[node])
+			parentF[parentB[node]] = node;
+		buildPath(fwd, dest);
+		return best;
 	}
 
 	/**
-	 * Sets the <code>PathCostEstimator</code> to determine the cost to travel
-	 * from a node to it's successor. The nodes passed are assumed to be direct
-	 * neighbors.
+	 * Searches with a falling heuristic weight, as ARA*. Each iteration
+	 * expands nodes in order of <code>g + weight * h</code> until none left
+	 * in OPEN is keyed below the cost to <code>dest</code>, which is then
+	 * within <code>weight</code> times the optimal cost. A CLOSED node that
+	 * improves is not re-opened but kept aside (<code>INCONS</code>) until
+	 * the next iteration, which starts from OPEN and those nodes, with all
+	 * others keeping their costs. Since costs only fall, the parents of
+	 * <code>dest</code> lead back to <code>start</code> at any time, so the
+	 * search may stop mid-iteration once the budget is spent.
 	 */
-	public void setSuccessorCostEstimator(PathCostEstimator successorCost)
+	private float searchAnytime(int start, int dest, SearchContext ctx)
 	{
-		this.successorCost = successorCost;
-	}
+		long deadline = System.nanoTime() + budgetNanos;
+		float[] g = ctx.g(), h = ctx.h();
+		int[] parent = ctx.parent(), neighbors = ctx.neighbors();
+		IndexedMinHeap open = ctx.open();
+		SearchStats stats = ctx.getStats(); //null unless instrumented
+		IndexCostEstimator pathCost = pathCost();
+		IndexCostEstimator successorCost = successorCost();
+		int[] closed = ctx.nodeBuffer(64); //nodes CLOSED in this iteration
+		int numClosed = 0, expanded = 0;
+		float weight = initialWeight;
+		float bound = Float.POSITIVE_INFINITY; //none until a path is found
+		boolean limited = ctx.isLimited();
+		int closest = start; //expanded node with the lowest h, if limited
+		int end = dest; //where the path returned ends
 
-	private void downPropagate(AStarPathNode parent)
-	{
-		//stack for Depth-First traversal of parents' successors
-		Deque<AStarPathNode> stack = new ArrayDeque<>();
-		AStarPathNode succ;
-		int index;
-		float newCost;
-		AStarPathNode[] pSuccessors = parent.getSuccessors();
-		int NumSuccessors = (pSuccessors != null) ? pSuccessors.length : 0;
+		g[start] = 0;
+		h[start] = pathCost.cost(start, dest);
+		parent[start] = -1;
+		ctx.setState(start, OPEN);
+		open.add(start, weight * h[start]);
+		if (stats != null)
+			stats.started(start);
 
-		//insert parents' immediate successors into stack only if they have g
-		// propagated to them
-		index = 0;
-		while (index < NumSuccessors)
+		while (true)
 		{
-			succ = pSuccessors[index];
-			newCost = parent.g() + successorCost.cost(parent, succ);
-			if (succ.getParent() == parent || newCost < succ.g())
+			boolean late = false;
+			while (!open.isEmpty() && open.peekKey() < (ctx.state(dest)
+				== UNVISITED ? Float.POSITIVE_INFINITY : g[dest]))
 			{
-				succ.g(newCost);
-				succ.f(succ.g() + succ.h());
-				succ.setParent(parent);
-				stack.push(succ);
+				//once there is a path, watch the clock every so often
+				if (bound != Float.POSITIVE_INFINITY && (++expanded & 31) == 0
+					&& System.nanoTime() - deadline >= 0)
+				{
+					late = true;
+					break;
+				}
+				if (limited && ctx.limitReached())
+				{ //keep the path found so far, or else stop with a partial one
+					if (bound == Float.POSITIVE_INFINITY)
+						end = closest;
+					late = true;
+					break;
+				}
+				int bestNode = open.poll();
+				ctx.setState(bestNode, CLOSED);
+				if (numClosed == closed.length)
+					closed = ctx.nodeBuffer(numClosed + 1);
+				closed[numClosed++] = bestNode;
+				if (stats != null)
+					stats.expanded(bestNode, g[bestNode], open.size());
+				if (limited && h[bestNode] < h[closest])
+					closest = bestNode;
+				int numNeigh = graph.neighbors(bestNode, neighbors);
+				for (int i = 0; i < numNeigh; i++)
+				{
+					int succ = neighbors[i];
+					float newCost = g[bestNode]
+						+ successorCost.cost(bestNode, succ);
+					byte state = ctx.state(succ);
+					if (state == UNVISITED)
+						h[succ] = pathCost.cost(succ, dest);
+					else if (g[succ] <= newCost)
+						continue;
+					g[succ] = newCost;
+					parent[succ] = bestNode;
+					switch (state)
+					{
+					case OPEN:
+						open.decreaseKey(succ, newCost + weight * h[succ]);
+						if (stats != null)
+							stats.improved(bestNode, succ, newCost);
+						break;
+					case CLOSED:
+						ctx.setState(succ, INCONS);
+						if (stats != null)
+							stats.reopened(bestNode, succ, newCost);
+						break;
+					case INCONS:
+						if (stats != null)
+							stats.improved(bestNode, succ, newCost);
+						break;
+					default: //not visited, or only in an earlier iteration
+						ctx.setState(succ, OPEN);
+						open.add(succ, newCost + weight * h[succ]);
+						if (stats != null)
+						{
+							if (state == SEEN)
+								stats.reopened(bestNode, succ, newCost);
+							else
+								stats.generated(bestNode, succ, newCost);
+						}
+					}
+				}
 			}
-			index++;
-		}
-		//
-		while (!stack.isEmpty())
-		{
-			parent = stack.pop();
-			pSuccessors = parent.getSuccessors();
-			NumSuccessors = (pSuccessors != null) ? pSuccessors.length : 0;
-			//
-			index = 0;
-			while (index < NumSuccessors)
+			if (late)
+				break;
+			if (ctx.state(dest) == UNVISITED)
+				return Float.POSITIVE_INFINITY;
+			//no node left to expand can lead to a path cheaper than lowest
+			float lowest = g[dest];
+			for (int i = 0, n = open.size(); i < n; i++)
 			{
-				succ = pSuccessors[index];
-				newCost = parent.g() + successorCost.cost(parent, succ);
-				if (succ.getParent() == parent || newCost < succ.g())
+				int node = open.elementAt(i);
+				lowest = Math.min(lowest, g[node] + h[node]);
+			}
+			for (int i = 0; i < numClosed; i++)
+			{
+				int node = closed[i];
+				if (ctx.state(node) == INCONS)
+					lowest = Math.min(lowest, g[node] + h[node]);
+			}
+			bound = g[dest] <= lowest ? 1 : Math.min(weight, g[dest] / lowest);
+			if (bound <= 1 || System.nanoTime() - deadline >= 0)
+				break;
+			//lower the weight, then start over from OPEN and INCONS
+			weight = Math.max(1, Math.min(weight - weightStep, bound));
+			for (int i = 0, n = open.size(); i < n; i++)
+			{
+				int node = open.elementAt(i);
+				open.setKeyAt(i, g[node] + weight * h[node]);
+			}
+			open.heapify();
+			for (int i = 0; i < numClosed; i++)
+			{
+				int node = closed[i];
+				if (ctx.state(node) == INCONS)
 				{
-					succ.g(newCost);
-					succ.f(succ.g() + succ.h());
-					succ.setParent(parent);
-					stack.push(succ);
+					ctx.setState(node, OPEN);
+					open.add(node, g[node] + weight * h[node]);
 				}
-				index++;
+				else
+					ctx.setState(node, SEEN);
 			}
+			numClosed = 0;
 		}
+		buildPath(ctx, end);
+		if (end == dest)
+			ctx.setSuboptimalityBound(bound);
+		//the path may be cheaper than g[end] if nodes on it have improved
+		int[] path = ctx.getPathNodes();
+		float cost = 0;
+		for (int i = 1, n = ctx.getPathLength(); i < n; i++)
+			cost += successorCost.cost(path[i - 1], path[i]);
+		return cost;
+	}
+
+	/**
+	 * Sets the <code>PathCostEstimator</code> to determine the cost to travel
+	 * from a node to it's successor. The nodes passed are assumed to be direct
+	 * neighbors.
+	 */
+	public void setSuccessorCostEstimator(PathCostEstimator successorCost)
+	{
+		this.successorCost = successorCost;
 	}
 
 	/**
-	 * Move backwards through path whose end is specified by
-	 * <code>destination</code> and build a list from the back to front.
+	 * Sets <code>IndexCostEstimator</code>s to use instead of the
+	 * <code>PathCostEstimator</code>s. Either may be <code>null</code> to go
+	 * back to the <code>PathCostEstimator</code> it replaces.
 	 */
-	private void buildPath(AStarPathNode destination)
+	public void setIndexCostEstimators(IndexCostEstimator pathCost,
+		IndexCostEstimator successorCost)
 	{
-		if (destination == null)
-			return;
-		bestPath = new LinkedList<>();
-		do
-		{
-			bestPath.addFirst(destination);
-			destination = destination.getParent();
-		} while (destination != null);
+		this.indexPathCost = pathCost;
+		this.indexSuccessorCost = successorCost;
 	}
 
-	private AStarPathNode getBestNode()
+	/** Gets the path cost estimator of a query. */
+	private IndexCostEstimator pathCost()
 	{
-		if (open.isEmpty())
-			return null;
-		AStarPathNode best = open.remove();
-		closed.add(best);
-		return best;
+		return indexPathCost != null ? indexPathCost : new PathCostAdapter(
+			pathCost, new AStarPathNode(graph, 0), new AStarPathNode(graph, 0));
+	}
+
+	/** Gets the successor cost estimator of a query. */
+	private IndexCostEstimator successorCost()
+	{
+		return indexSuccessorCost != null ? indexSuccessorCost
+			: new PathCostAdapter(successorCost, new AStarPathNode(graph, 0),
+				new AStarPathNode(graph, 0));
 	}
 }
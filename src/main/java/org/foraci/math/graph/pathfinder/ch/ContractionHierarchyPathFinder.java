@@ -0,0 +1,469 @@
+package org.foraci.math.graph.pathfinder.ch;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+import org.foraci.math.graph.pathfinder.IndexCostEstimator;
+import org.foraci.math.graph.pathfinder.PathCostAdapter;
+import org.foraci.math.graph.pathfinder.PathCostEstimator;
+import org.foraci.math.graph.pathfinder.PathFinder;
+import org.foraci.math.graph.pathfinder.SearchContext;
+import org.foraci.math.graph.pathfinder.SearchStats;
+import org.foraci.math.graph.pathfinder.graph.Graph;
+import org.foraci.math.graph.pathfinder.graph.GraphNode;
+import org.foraci.math.graph.pathfinder.graph.GraphSnapshot;
+import org.foraci.math.graph.pathfinder.util.IndexedMinHeap;
+import org.foraci.math.graph.pathfinder.util.SnapshotReader;
+import org.foraci.math.graph.pathfinder.util.SnapshotWriter;
+
+import static org.foraci.math.graph.pathfinder.SearchContext.CLOSED;
+import static org.foraci.math.graph.pathfinder.SearchContext.OPEN;
+import static org.foraci.math.graph.pathfinder.SearchContext.UNVISITED;
+
+/**
+ * Path finder using contraction hierarchies (Geisberger, Sanders, Schultes
+ * and Delling, 2008), for static graphs queried very often. Building it
+ * contracts the nodes in order of importance, adding shortcuts that keep
+ * the costs between the nodes left unchanged (see <code>Contractor</code>).
+ * A query then searches from both ends only along edges leading to nodes
+ * contracted later, so it settles a few hundred nodes even on graphs of
+ * millions, and unpacks the shortcuts on the path it finds into the edges
+ * of the graph.
+ * <br/>Paths are optimal. Any graph may be used, with edges in either or
+ * both directions; the graph must not change once the hierarchy is built.
+ * <code>writeSnapshot()</code> saves the graph and the hierarchy so that
+ * <code>readSnapshot()</code> can load them in later runs without
+ * contracting again.
+ * <br/>Queries take too little time to need <code>SearchLimits</code>, and
+ * ignore them.
+ */
+public final class ContractionHierarchyPathFinder extends PathFinder
+{
+	/** The kind of snapshot holding a path finder, "CHPF". */
+	public static final int SNAPSHOT_KIND = 0x43485046;
+
+	/* where an edge being unpacked is kept */
+	private static final int UP = 0, DOWN = 1;
+
+	/* edges from each node up to nodes contracted later: targets, costs and
+	   the nodes shortcuts bypass (-1 for edges of the graph) */
+	private final int[] outOffsets, outTargets, outMiddles;
+	private final float[] outCosts;
+	/* edges into each node from nodes contracted later, likewise */
+	private final int[] inOffsets, inSources, inMiddles;
+	private final float[] inCosts;
+
+	/**
+	 * Constructs an instance of this path finder from a hierarchy already
+	 * built.
+	 */
+	private ContractionHierarchyPathFinder(Graph graph, int[] outOffsets,
+		int[] outTargets, float[] outCosts, int[] outMiddles,
+		int[] inOffsets, int[] inSources, float[] inCosts, int[] inMiddles)
+	{
+		super(graph, null); //no heuristic
+		this.outOffsets = outOffsets;
+		this.outTargets = outTargets;
+		this.outCosts = outCosts;
+		this.outMiddles = outMiddles;
+		this.inOffsets = inOffsets;
+		this.inSources = inSources;
+		this.inCosts = inCosts;
+		this.inMiddles = inMiddles;
+	}
+
+	/**
+	 * Factory method to build a <code>ContractionHierarchyPathFinder</code>
+	 * over an already built graph, contracting it on the common
+	 * <code>ForkJoinPool</code>.
+	 *
+	 * @param successorCost A <code>PathCostEstimator</code> that can calculate
+	 *   the cost to a travel from a given PathNode to its given successor
+	 *   PathNode.
+	 */
+	public static ContractionHierarchyPathFinder buildPathFinder(Graph graph,
+		PathCostEstimator successorCost)
+	{
+		//edge costs are read once, on the calling thread
+		return buildIndexPathFinder(graph, new PathCostAdapter(successorCost,
+			new GraphNode(graph, 0), new GraphNode(graph, 0)),
+			ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Factory method to build a <code>ContractionHierarchyPathFinder</code>
+	 * over an already built graph, contracting it on the common
+	 * <code>ForkJoinPool</code>.
+	 */
+	public static ContractionHierarchyPathFinder buildIndexPathFinder(
+		Graph graph, IndexCostEstimator successorCost)
+	{
+		return buildIndexPathFinder(graph, successorCost,
+			ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Factory method to build a <code>ContractionHierarchyPathFinder</code>
+	 * over an already built graph.
+	 *
+	 * @param executor
+	 *            finds the shortcuts of each round of contraction, as in
+	 *            <code>computeBestPaths()</code>.
+	 */
+	public static ContractionHierarchyPathFinder buildIndexPathFinder(
+		Graph graph, IndexCostEstimator successorCost, Executor executor)
+	{
+		Contractor contractor = new Contractor(graph, successorCost);
+		contractor.contract(executor);
+		int n = graph.size();
+		EdgeLists out = contractor.out(), in = contractor.in();
+		int[] outOffsets = offsets(out, n), inOffsets = offsets(in, n);
+		int[] outTargets = new int[outOffsets[n]];
+		int[] outMiddles = new int[outOffsets[n]];
+		float[] outCosts = new float[outOffsets[n]];
+		int[] inSources = new int[inOffsets[n]];
+		int[] inMiddles = new int[inOffsets[n]];
+		float[] inCosts = new float[inOffsets[n]];
+		long[] order = new long[16];
+		for (int node = 0; node < n; node++)
+		{
+			order = copy(out, node, outOffsets[node], outTargets, outCosts,
+				outMiddles, order);
+			out.clear(node);
+			order = copy(in, node, inOffsets[node], inSources, inCosts,
+				inMiddles, order);
+			in.clear(node);
+		}
+		return new ContractionHierarchyPathFinder(graph, outOffsets,
+			outTargets, outCosts, outMiddles, inOffsets, inSources, inCosts,
+			inMiddles);
+	}
+
+	/**
+	 * Loads a path finder saved with <code>writeSnapshot()</code>.
+	 *
+	 * @throws IOException
+	 *             if the file can not be read or does not hold a
+	 *             <code>ContractionHierarchyPathFinder</code>.
+	 */
+	public static ContractionHierarchyPathFinder readSnapshot(File file)
+		throws IOException
+	{
+		try (SnapshotReader in = new SnapshotReader(file))
+		{
+			in.expectKind(SNAPSHOT_KIND);
+			Graph graph = GraphSnapshot.readGraph(in);
+			int[] outOffsets = in.readInts();
+			int[] outTargets = in.readInts();
+			float[] outCosts = in.readFloats();
+			int[] outMiddles = in.readInts();
+			int[] inOffsets = in.readInts();
+			int[] inSources = in.readInts();
+			float[] inCosts = in.readFloats();
+			int[] inMiddles = in.readInts();
+			int n = graph.size();
+			if (outOffsets == null || inOffsets == null
+				|| outOffsets.length != n + 1 || inOffsets.length != n + 1
+				|| outTargets.length != outOffsets[n]
+				|| outCosts.length != outOffsets[n]
+				|| outMiddles.length != outOffsets[n]
+				|| inSources.length != inOffsets[n]
+				|| inCosts.length != inOffsets[n]
+				|| inMiddles.length != inOffsets[n])
+				throw new IOException("bad snapshot in " + file);
+			return new ContractionHierarchyPathFinder(graph, outOffsets,
+				outTargets, outCosts, outMiddles, inOffsets, inSources,
+				inCosts, inMiddles);
+		}
+	}
+
+	/**
+	 * Saves the graph and the hierarchy built over it to a snapshot file, to
+	 * be loaded with <code>readSnapshot()</code>.
+	 *
+	 * @throws IOException
+	 *             if the file can not be written.
+	 */
+	public void writeSnapshot(File file) throws IOException
+	{
+		try (SnapshotWriter out = new SnapshotWriter(file, SNAPSHOT_KIND))
+		{
+			GraphSnapshot.writeGraph(out, graph);
+			out.writeInts(outOffsets);
+			out.writeInts(outTargets);
+			out.writeFloats(outCosts);
+			out.writeInts(outMiddles);
+			out.writeInts(inOffsets);
+			out.writeInts(inSources);
+			out.writeFloats(inCosts);
+			out.writeInts(inMiddles);
+		}
+	}
+
+	/** Gets the number of shortcuts added to the graph. */
+	public int shortcutCount()
+	{
+		int count = 0;
+		for (int middle : outMiddles)
+			if (middle >= 0)
+				count++;
+		for (int middle : inMiddles)
+			if (middle >= 0)
+				count++;
+		return count;
+	}
+
+	/**
+	 * Searches upward from <code>start</code> in <code>fwd</code> and from
+	 * <code>dest</code> in its reverse context, always expanding the side
+	 * with the lower cost next, until both sides reach the cost of the best
+	 * meeting node found. A node is not expanded if a node above it reaches
+	 * it more cheaply (stall-on-demand): such a node is not on a shortest
+	 * path from that side.
+	 */
+	protected float search(int start, int dest, SearchContext fwd)
+	{
+		if (start < 0 || dest < 0)
+			return Float.POSITIVE_INFINITY;
+		SearchContext bwd = fwd.reverse();
+		SearchStats stats = fwd.getStats(); //null unless instrumented
+		boolean limited = fwd.isLimited();
+		float best = Float.POSITIVE_INFINITY;
+		int meet = -1;
+
+		fwd.g()[start] = 0;
+		fwd.parent()[start] = -1;
+		fwd.setState(start, OPEN);
+		fwd.open().add(start, 0);
+		bwd.g()[dest] = 0;
+		bwd.parent()[dest] = -1;
+		bwd.setState(dest, OPEN);
+		bwd.open().add(dest, 0);
+		if (stats != null)
+		{
+			stats.started(start);
+			stats.started(dest);
+		}
+		if (start == dest)
+		{
+			best = 0;
+			meet = start;
+		}
+
+		while (true)
+		{
+			IndexedMinHeap openF = fwd.open(), openB = bwd.open();
+			boolean doneF = openF.isEmpty() || openF.peekKey() >= best;
+			boolean doneB = openB.isEmpty() || openB.peekKey() >= best;
+			if (doneF && doneB)
+				break;
+			if (limited && fwd.limitReached())
+			{ //no heuristic tells which node is closest, so stay at the start
+				buildPath(fwd, start);
+				return 0;
+			}
+			boolean forward = doneB
+				|| (!doneF && openF.peekKey() <= openB.peekKey());
+			SearchContext ctx = forward ? fwd : bwd;
+			SearchContext other = forward ? bwd : fwd;
+			float[] g = ctx.g(), otherG = other.g();
+			int[] parent = ctx.parent();
+			IndexedMinHeap open = ctx.open();
+			/* the edges this side walks up, and those coming down to it */
+			int[] upOffsets = forward ? outOffsets : inOffsets;
+			int[] upNodes = forward ? outTargets : inSources;
+			float[] upCosts = forward ? outCosts : inCosts;
+			int[] downOffsets = forward ? inOffsets : outOffsets;
+			int[] downNodes = forward ? inSources : outTargets;
+			float[] downCosts = forward ? inCosts : outCosts;
+
+			int node = open.poll();
+			ctx.setState(node, CLOSED);
+			if (stats != null)
+				stats.expanded(node, g[node], openF.size() + openB.size());
+			if (stalled(node, g, ctx, downOffsets, downNodes, downCosts))
+				continue;
+			for (int e = upOffsets[node]; e < upOffsets[node + 1]; e++)
+			{
+				int succ = upNodes[e];
+				float newCost = g[node] + upCosts[e];
+				byte state = ctx.state(succ);
+				if (state != UNVISITED && g[succ] <= newCost)
+					continue;
+				g[succ] = newCost;
+				parent[succ] = node;
+				if (state == OPEN)
+					open.decreaseKey(succ, newCost);
+				else
+				{
+					ctx.setState(succ, OPEN);
+					open.add(succ, newCost);
+				}
+				if (stats != null)
+				{
+					if (state == OPEN)
+						stats.improved(node, succ, newCost);
+					else if (state == CLOSED)
+						stats.reopened(node, succ, newCost);
+					else
+						stats.generated(node, succ, newCost);
+				}
+				if (other.state(succ) != UNVISITED
+					&& newCost + otherG[succ] < best)
+				{ //the searches meet at succ
+					best = newCost + otherG[succ];
+					meet = succ;
+				}
+			}
+		}
+		if (meet < 0)
+			return Float.POSITIVE_INFINITY;
+		int[] path = unpack(start, dest, meet, fwd.parent(), bwd.parent());
+		buildPath(fwd, path, path.length);
+		return best;
+	}
+
+	/**
+	 * Returns <code>true</code> if a node above <code>node</code>, already
+	 * reached by this side, reaches it for less than its cost.
+	 */
+	private static boolean stalled(int node, float[] g, SearchContext ctx,
+		int[] downOffsets, int[] downNodes, float[] downCosts)
+	{
+		for (int e = downOffsets[node]; e < downOffsets[node + 1]; e++)
+		{
+			int above = downNodes[e];
+			if (ctx.state(above) != UNVISITED
+				&& g[above] + downCosts[e] < g[node])
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Joins the upward paths from <code>start</code> and from
+	 * <code>dest</code> at <code>meet</code>, replacing each shortcut by the
+	 * two edges it stands for until only edges of the graph are left.
+	 *
+	 * @return the nodes of the path, from start to destination.
+	 */
+	private int[] unpack(int start, int dest, int meet, int[] fwdParent,
+		int[] bwdParent)
+	{
+		int up = 0, down = 0;
+		for (int node = meet; node != start; node = fwdParent[node])
+			up++;
+		for (int node = meet; node != dest; node = bwdParent[node])
+			down++;
+		int count = up + down + 1;
+		int[] chain = new int[count];
+		int i = up;
+		for (int node = meet; node != start; node = fwdParent[node])
+			chain[i--] = node;
+		chain[0] = start;
+		i = up;
+		for (int node = meet; node != dest; node = bwdParent[node])
+			chain[i++] = node;
+		chain[i] = dest;
+
+		/* edges are stacked as (from, to, where): where is UP if the edge
+		   is kept at from, DOWN if it is kept at to */
+		int[] path = new int[Math.max(16, 2 * count)];
+		int length = 0;
+		path[length++] = start;
+		int[] stack = new int[48];
+		for (i = 1; i < count; i++)
+		{
+			int top = 0;
+			stack[top++] = chain[i - 1];
+			stack[top++] = chain[i];
+			stack[top++] = i <= up ? UP : DOWN;
+			while (top > 0)
+			{
+				int where = stack[--top], to = stack[--top],
+					from = stack[--top];
+				int middle = where == UP ? middle(from, to, outOffsets,
+					outTargets, outMiddles) : middle(to, from, inOffsets,
+					inSources, inMiddles);
+				if (middle < 0)
+				{
+					if (length == path.length)
+						path = Arrays.copyOf(path, 2 * length);
+					path[length++] = to;
+					continue;
+				}
+				if (top + 6 > stack.length)
+					stack = Arrays.copyOf(stack, 2 * stack.length);
+				/* the middle node was contracted before both ends, so keeps
+				   both halves; the second half is pushed first, to come out
+				   last */
+				stack[top++] = middle;
+				stack[top++] = to;
+				stack[top++] = UP;
+				stack[top++] = from;
+				stack[top++] = middle;
+				stack[top++] = DOWN;
+			}
+		}
+		return Arrays.copyOf(path, length);
+	}
+
+	/**
+	 * Gets the node an edge kept at <code>node</code> bypasses, or -1 if it
+	 * is an edge of the graph.
+	 */
+	private static int middle(int node, int other, int[] offsets,
+		int[] others, int[] middles)
+	{
+		int lo = offsets[node], hi = offsets[node + 1] - 1;
+		while (lo <= hi)
+		{
+			int mid = (lo + hi) >>> 1;
+			if (others[mid] < other)
+				lo = mid + 1;
+			else if (others[mid] > other)
+				hi = mid - 1;
+			else
+				return middles[mid];
+		}
+		throw new IllegalStateException("no edge between " + node + " and "
+			+ other);
+	}
+
+	/** Gets the offset of each node's edges in the arrays built from lists. */
+	private static int[] offsets(EdgeLists lists, int n)
+	{
+		int[] offsets = new int[n + 1];
+		for (int node = 0; node < n; node++)
+			offsets[node + 1] = offsets[node] + lists.size(node);
+		return offsets;
+	}
+
+	/**
+	 * Copies the edges of a node, sorted by the other node so that
+	 * <code>middle()</code> can find them by binary search.
+	 *
+	 * @return <code>order</code>, or a larger array if it was too small.
+	 */
+	private static long[] copy(EdgeLists lists, int node, int offset,
+		int[] others, float[] costs, int[] middles, long[] order)
+	{
+		int k = lists.size(node);
+		if (order.length < k)
+			order = new long[Math.max(k, 2 * order.length)];
+		for (int i = 0; i < k; i++)
+			order[i] = (long) lists.other(node, i) << 32 | i;
+		Arrays.sort(order, 0, k);
+		for (int j = 0; j < k; j++)
+		{
+			int i = (int) order[j];
+			others[offset + j] = lists.other(node, i);
+			costs[offset + j] = lists.cost(node, i);
+			middles[offset + j] = lists.middle(node, i);
+		}
+		return order;
+	}
+}
@@ -0,0 +1,265 @@
+package org.foraci.math.graph.pathfinder.ch;
+
+import java.util.concurrent.Executor;
+import java.util.function.IntConsumer;
+
+import org.foraci.math.graph.pathfinder.IndexCostEstimator;
+import org.foraci.math.graph.pathfinder.graph.Graph;
+import org.foraci.math.graph.pathfinder.util.ParallelRange;
+
+/**
+ * Contracts the nodes of a graph one after another, from the least to the
+ * most important, adding a shortcut between two neighbors of a node
+ * wherever the path through it may be the only cheapest one. A node's
+ * importance is its edge difference (shortcuts added less edges removed)
+ * plus the number of its neighbors already contracted, which spreads the
+ * contraction evenly over the graph.
+ * <br/>Contraction goes in rounds. Each round takes the nodes less
+ * important than all their neighbors, which share no edge, and finds their
+ * shortcuts in parallel. Witness searches skip every node of the round, so
+ * the shortcuts of one do not count on another being there.
+ * <br/>Once a node is contracted, its edges all lead to nodes contracted
+ * later, and are kept as they are: they are the upward edges of the
+ * hierarchy.
+ */
+final class Contractor
+{
+	/* node states */
+	private static final byte LIVE = 0, CONTRACTING = 1, CONTRACTED = 2;
+
+	private final int n;
+	private final EdgeLists out, in;
+	private final byte[] state;
+	/* nodes a witness search settles before giving up, when estimating
+	   the shortcuts of a node and when adding them: a low estimate only
+	   ranks nodes, so it can afford to stop sooner */
+	private static final int ESTIMATE_SETTLED = 50, CONTRACT_SETTLED = 200;
+
+	private final int[] priority, deleted;
+	private final ThreadLocal<WitnessSearch> searches = new ThreadLocal<WitnessSearch>()
+		{
+			protected WitnessSearch initialValue()
+			{
+				return new WitnessSearch(n);
+			}
+		};
+
+	/** Copies the edges of a graph, with their costs. */
+	Contractor(Graph graph, IndexCostEstimator successorCost)
+	{
+		n = graph.size();
+		out = new EdgeLists(n);
+		in = new EdgeLists(n);
+		state = new byte[n];
+		priority = new int[n];
+		deleted = new int[n];
+		int[] neighbors = new int[graph.maxDegree()];
+		for (int node = 0; node < n; node++)
+		{
+			if (!graph.isPassable(node))
+			{
+				state[node] = CONTRACTED;
+				continue;
+			}
+			for (int i = 0, k = graph.neighbors(node, neighbors); i < k; i++)
+			{
+				int succ = neighbors[i];
+				if (succ == node || !graph.isPassable(succ))
+					continue;
+				float cost = successorCost.cost(node, succ);
+				out.add(node, succ, cost, -1);
+				in.add(succ, node, cost, -1);
+			}
+		}
+	}
+
+	/** Contracts every node, leaving the upward edges in the lists. */
+	void contract(Executor executor)
+	{
+		final int[] live = new int[n];
+		int numLive = 0;
+		for (int node = 0; node < n; node++)
+			if (state[node] == LIVE)
+				live[numLive++] = node;
+		updatePriorities(live, numLive, executor);
+		final int[] round = new int[n];
+		int[] touched = new int[n];
+		boolean[] isTouched = new boolean[n];
+		while (numLive > 0)
+		{
+			int size = 0;
+			for (int i = 0; i < numLive; i++)
+				if (isLocalMinimum(live[i]))
+					round[size++] = live[i];
+			for (int i = 0; i < size; i++)
+				state[round[i]] = CONTRACTING;
+			final float[][] shortcuts = new float[size][];
+			ParallelRange.run(size, executor, new IntConsumer()
+				{
+					public void accept(int i)
+					{
+						int node = round[i];
+						shortcuts[i] = new float[in.size(node)
+							* out.size(node)];
+						findShortcuts(node, shortcuts[i]);
+					}
+				});
+			int numTouched = 0;
+			for (int i = 0; i < size; i++)
+			{
+				int node = round[i];
+				addShortcuts(node, shortcuts[i]);
+				for (int j = 0, k = in.size(node); j < k; j++)
+					numTouched = touch(in.other(node, j), touched, numTouched,
+						isTouched);
+				for (int j = 0, k = out.size(node); j < k; j++)
+					numTouched = touch(out.other(node, j), touched,
+						numTouched, isTouched);
+				removeNode(node);
+			}
+			for (int i = 0; i < numTouched; i++)
+				isTouched[touched[i]] = false;
+			updatePriorities(touched, numTouched, executor);
+			int kept = 0;
+			for (int i = 0; i < numLive; i++)
+				if (state[live[i]] == LIVE)
+					live[kept++] = live[i];
+			numLive = kept;
+		}
+	}
+
+	EdgeLists out()
+	{
+		return out;
+	}
+
+	EdgeLists in()
+	{
+		return in;
+	}
+
+	/**
+	 * Returns <code>true</code> if a node is less important than all its
+	 * neighbors, ties going to the lower index.
+	 */
+	private boolean isLocalMinimum(int node)
+	{
+		int p = priority[node];
+		for (int i = 0, k = in.size(node); i < k; i++)
+		{
+			int other = in.other(node, i);
+			if (priority[other] < p || (priority[other] == p && other < node))
+				return false;
+		}
+		for (int i = 0, k = out.size(node); i < k; i++)
+		{
+			int other = out.other(node, i);
+			if (priority[other] < p || (priority[other] == p && other < node))
+				return false;
+		}
+		return true;
+	}
+
+	/** Recomputes the importance of the nodes listed, in parallel. */
+	private void updatePriorities(final int[] nodes, int count,
+		Executor executor)
+	{
+		ParallelRange.run(count, executor, new IntConsumer()
+			{
+				public void accept(int i)
+				{
+					int node = nodes[i];
+					priority[node] = findShortcuts(node, null)
+						- in.size(node) - out.size(node) + deleted[node];
+				}
+			});
+	}
+
+	/**
+	 * Finds the shortcuts needed if a node is contracted: for each pair of
+	 * an edge in and an edge out, the cost of the shortcut, or NaN if a
+	 * witness path as cheap avoids the node. Costs are laid out by edge in,
+	 * then edge out.
+	 *
+	 * @param costs
+	 *            receives the costs, or <code>null</code> to only count.
+	 * @return the number of shortcuts needed.
+	 */
+	private int findShortcuts(int node, float[] costs)
+	{
+		WitnessSearch search = searches.get();
+		int numIn = in.size(node), numOut = out.size(node);
+		float maxOut = 0;
+		for (int j = 0; j < numOut; j++)
+			maxOut = Math.max(maxOut, out.cost(node, j));
+		int count = 0;
+		for (int i = 0; i < numIn; i++)
+		{
+			int from = in.other(node, i);
+			float costIn = in.cost(node, i);
+			search.run(out, state, from, node, costIn + maxOut,
+				costs == null ? ESTIMATE_SETTLED : CONTRACT_SETTLED);
+			for (int j = 0; j < numOut; j++)
+			{
+				int to = out.other(node, j);
+				float cost = costIn + out.cost(node, j);
+				boolean needed = to != from && search.cost(to) > cost;
+				if (needed)
+					count++;
+				if (costs != null)
+					costs[i * numOut + j] = needed ? cost : Float.NaN;
+			}
+		}
+		return count;
+	}
+
+	private void addShortcuts(int node, float[] costs)
+	{
+		int numIn = in.size(node), numOut = out.size(node);
+		for (int i = 0; i < numIn; i++)
+		{
+			int from = in.other(node, i);
+			for (int j = 0; j < numOut; j++)
+			{
+				float cost = costs[i * numOut + j];
+				if (cost != cost) //NaN, no shortcut
+					continue;
+				int to = out.other(node, j);
+				out.add(from, to, cost, node);
+				in.add(to, from, cost, node);
+			}
+		}
+	}
+
+	/**
+	 * Removes a node from the lists of its neighbors. Its own lists are
+	 * left as they are, as its upward edges.
+	 */
+	private void removeNode(int node)
+	{
+		for (int i = 0, k = in.size(node); i < k; i++)
+		{
+			int other = in.other(node, i);
+			out.remove(other, node);
+			deleted[other]++;
+		}
+		for (int i = 0, k = out.size(node); i < k; i++)
+		{
+			int other = out.other(node, i);
+			in.remove(other, node);
+			deleted[other]++;
+		}
+		state[node] = CONTRACTED;
+	}
+
+	private static int touch(int node, int[] touched, int numTouched,
+		boolean[] isTouched)
+	{
+		if (!isTouched[node])
+		{
+			isTouched[node] = true;
+			touched[numTouched++] = node;
+		}
+		return numTouched;
+	}
+}
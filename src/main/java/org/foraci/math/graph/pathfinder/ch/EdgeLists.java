@@ -0,0 +1,92 @@
+package org.foraci.math.graph.pathfinder.ch;
+
+import java.util.Arrays;
+
+/**
+ * The edges at each node of a graph being contracted, in one direction.
+ * Each node's edges are packed in one <code>int</code> array as (other
+ * node, cost bits, middle node) triples, the middle node being the one a
+ * shortcut bypasses, or -1 for an edge of the graph. Parallel edges are
+ * merged, keeping the cheapest.
+ */
+final class EdgeLists
+{
+	private final int[][] edges;
+	private final int[] sizes;
+
+	EdgeLists(int n)
+	{
+		edges = new int[n][];
+		sizes = new int[n];
+	}
+
+	/** Gets the number of edges at a node. */
+	int size(int node)
+	{
+		return sizes[node];
+	}
+
+	int other(int node, int i)
+	{
+		return edges[node][3 * i];
+	}
+
+	float cost(int node, int i)
+	{
+		return Float.intBitsToFloat(edges[node][3 * i + 1]);
+	}
+
+	int middle(int node, int i)
+	{
+		return edges[node][3 * i + 2];
+	}
+
+	/**
+	 * Adds an edge at a node, or lowers the cost of the edge to the same
+	 * other node if it is cheaper.
+	 */
+	void add(int node, int other, float cost, int middle)
+	{
+		int[] e = edges[node];
+		int size = sizes[node];
+		for (int i = 0; i < size; i++)
+			if (e[3 * i] == other)
+			{
+				if (cost < Float.intBitsToFloat(e[3 * i + 1]))
+				{
+					e[3 * i + 1] = Float.floatToRawIntBits(cost);
+					e[3 * i + 2] = middle;
+				}
+				return;
+			}
+		if (e == null)
+			edges[node] = e = new int[3 * 4];
+		else if (e.length == 3 * size)
+			edges[node] = e = Arrays.copyOf(e, 6 * size);
+		e[3 * size] = other;
+		e[3 * size + 1] = Float.floatToRawIntBits(cost);
+		e[3 * size + 2] = middle;
+		sizes[node] = size + 1;
+	}
+
+	/** Removes the edge to <code>other</code> from a node, if any. */
+	void remove(int node, int other)
+	{
+		int[] e = edges[node];
+		int last = sizes[node] - 1;
+		for (int i = 0; i <= last; i++)
+			if (e[3 * i] == other)
+			{
+				System.arraycopy(e, 3 * last, e, 3 * i, 3);
+				sizes[node] = last;
+				return;
+			}
+	}
+
+	/** Drops the edges of a node, once they have been copied out. */
+	void clear(int node)
+	{
+		edges[node] = null;
+		sizes[node] = 0;
+	}
+}
@@ -0,0 +1,95 @@
+package org.foraci.math.graph.pathfinder.ch;
+
+import java.util.Arrays;
+
+import org.foraci.math.graph.pathfinder.util.IndexedMinHeap;
+
+/**
+ * Scratch state for the witness searches of a contraction: bounded
+ * Dijkstra searches over the nodes not yet contracted, looking for paths
+ * that make a shortcut unnecessary. One instance serves one thread.
+ */
+final class WitnessSearch
+{
+	private final float[] g;
+	private final int[] stamp, target;
+	private int generation;
+	private final IndexedMinHeap open;
+
+	WitnessSearch(int n)
+	{
+		g = new float[n];
+		stamp = new int[n];
+		target = new int[n];
+		open = new IndexedMinHeap(n);
+	}
+
+	/**
+	 * Searches from <code>source</code> along <code>out</code> edges,
+	 * skipping <code>skip</code> and every node whose state is not 0, until
+	 * the costs left exceed <code>maxCost</code>, every node
+	 * <code>skip</code> leads to is settled, or <code>maxSettled</code>
+	 * nodes are. A search that gives up early only adds shortcuts that may
+	 * not be needed.
+	 */
+	void run(EdgeLists out, byte[] state, int source, int skip,
+		float maxCost, int maxSettled)
+	{
+		open.clear();
+		if (++generation == 0)
+		{ //stamps wrapped around
+			Arrays.fill(stamp, 0);
+			Arrays.fill(target, 0);
+			generation = 1;
+		}
+		int targets = 0;
+		for (int i = 0, n = out.size(skip); i < n; i++)
+		{
+			int node = out.other(skip, i);
+			if (target[node] != generation)
+			{
+				target[node] = generation;
+				targets++;
+			}
+		}
+		g[source] = 0;
+		stamp[source] = generation;
+		open.add(source, 0);
+		for (int settled = 0; !open.isEmpty() && settled < maxSettled;
+			settled++)
+		{
+			if (open.peekKey() > maxCost)
+				break;
+			int node = open.poll();
+			if (target[node] == generation && --targets == 0)
+				break; //every neighbor of skip is settled
+			for (int i = 0, n = out.size(node); i < n; i++)
+			{
+				int next = out.other(node, i);
+				if (next == skip || state[next] != 0)
+					continue;
+				float cost = g[node] + out.cost(node, i);
+				if (stamp[next] != generation)
+				{
+					g[next] = cost;
+					stamp[next] = generation;
+					open.add(next, cost);
+				}
+				else if (cost < g[next] && open.contains(next))
+				{
+					g[next] = cost;
+					open.decreaseKey(next, cost);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Gets the cost of the cheapest path the last search found to a node,
+	 * or <code>Float.POSITIVE_INFINITY</code> if it found none.
+	 */
+	float cost(int node)
+	{
+		return stamp[node] == generation ? g[node] : Float.POSITIVE_INFINITY;
+	}
+}
@@ -1,6 +1,401 @@
 package org.foraci.math.graph.pathfinder.dijkstra;
 
-public final class DijkstraPathFinder
+import java.util.LinkedList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.IntConsumer;
+
+import org.foraci.math.graph.pathfinder.IndexCostEstimator;
+import org.foraci.math.graph.pathfinder.NoPathFoundException;
+import org.foraci.math.graph.pathfinder.PathCostAdapter;
+import org.foraci.math.graph.pathfinder.PathCostEstimator;
+import org.foraci.math.graph.pathfinder.PathFinder;
+import org.foraci.math.graph.pathfinder.PathNode;
+import org.foraci.math.graph.pathfinder.SearchContext;
+import org.foraci.math.graph.pathfinder.SearchResult;
+import org.foraci.math.graph.pathfinder.SearchStats;
+import org.foraci.math.graph.pathfinder.graph.Graph;
+import org.foraci.math.graph.pathfinder.graph.GraphNode;
+import org.foraci.math.graph.pathfinder.graph.GridGraph;
+import org.foraci.math.graph.pathfinder.util.ParallelRange;
+import org.foraci.math.graph.pathfinder.util.RadixHeap;
+
+import static org.foraci.math.graph.pathfinder.SearchContext.CLOSED;
+import static org.foraci.math.graph.pathfinder.SearchContext.OPEN;
+
+/**
+ * Path finder using Dijkstra's algorithm. It finds exact shortest paths
+ * without a heuristic, and can also compute the whole shortest path tree
+ * from a single source, or the costs from many sources to many targets.
+ * <br/>Nodes are settled in order of cost, so the OPEN set is a monotone
+ * <code>RadixHeap</code> rather than a comparison heap. Pushes are O(1) and
+ * pops O(1) amortized, which suits the small integer weights of the grids
+ * from <code>buildWeightedGridPathFinder</code>. Fractional costs work too.
+ * Edge costs must not be negative. Like the other path finders, one instance
+ * may serve concurrent queries.
+ */
+public final class DijkstraPathFinder extends PathFinder
 {
+	private PathCostEstimator successorCost;
+	private IndexCostEstimator indexSuccessorCost; //used instead when set
+
+	/**
+	 * Constructs an instance of this path finder.
+	 */
+	private DijkstraPathFinder(Graph graph, PathCostEstimator successorCost)
+	{
+		super(graph, null); //no heuristic
+		this.successorCost = successorCost;
+	}
+
+	/**
+	 * Factory method to build a <code>DijkstraPathFinder</code> over an
+	 * already built graph.
+	 *
+	 * @param successorCost A <code>PathCostEstimator</code> that can calculate
+	 *   the cost to a travel from a given PathNode to its given successor
+	 *   PathNode.
+	 */
+	public static DijkstraPathFinder buildPathFinder(Graph graph,
+		PathCostEstimator successorCost)
+	{
+		return new DijkstraPathFinder(graph, successorCost);
+	}
+
+	/**
+	 * Factory method to build a <code>DijkstraPathFinder</code> over an
+	 * already built graph, calculating step costs on node indices.
+	 *
+	 * @param successorCost An <code>IndexCostEstimator</code> that can
+	 *   calculate the cost to travel from a given node to its given successor.
+	 */
+	public static DijkstraPathFinder buildIndexPathFinder(Graph graph,
+		IndexCostEstimator successorCost)
+	{
+		DijkstraPathFinder finder = new DijkstraPathFinder(graph, null);
+		finder.setIndexSuccessorCostEstimator(successorCost);
+		return finder;
+	}
+
+	/**
+	 * Factory method to build a <code>DijkstraPathFinder</code> with a
+	 * internal graph representing a 2D grid of nodes.
+	 *
+	 * @see GridGraph#build(int[][],int[][])
+	 */
+	public static DijkstraPathFinder buildGridPathFinder(int[][] arrGraph,
+		int[][] arrIds, PathCostEstimator successorCost)
+	{
+		return new DijkstraPathFinder(GridGraph.build(arrGraph, arrIds),
+			successorCost);
+	}
+
+	public static DijkstraPathFinder buildGridPathFinder(int[] arrGraph,
+		int[] arrIds, int rows, int cols, PathCostEstimator successorCost)
+	{
+		return new DijkstraPathFinder(GridGraph.build(arrGraph, arrIds, rows,
+			cols), successorCost);
+	}
+
+	/**
+	 * Factory method to build a <code>DijkstraPathFinder</code> with a
+	 * internal graph representing a 2D grid of <i>weighted </i> nodes.
+	 *
+	 * @see GridGraph#buildWeighted(int[][],int[][])
+	 */
+	public static DijkstraPathFinder buildWeightedGridPathFinder(
+		int[][] arrGraph, int[][] arrIds, PathCostEstimator successorCost)
+	{
+		return new DijkstraPathFinder(GridGraph.buildWeighted(arrGraph,
+			arrIds), successorCost);
+	}
+
+	public static DijkstraPathFinder buildWeightedGridPathFinder(
+		int[] arrGraph, int[] arrIds, int rows, int cols,
+		PathCostEstimator successorCost)
+	{
+		return new DijkstraPathFinder(GridGraph.buildWeighted(arrGraph,
+			arrIds, rows, cols), successorCost);
+	}
+
+	/**
+	 * Sets the <code>PathCostEstimator</code> to determine the cost to travel
+	 * from a node to it's successor. The nodes passed are assumed to be direct
+	 * neighbors.
+	 */
+	public void setSuccessorCostEstimator(PathCostEstimator successorCost)
+	{
+		this.successorCost = successorCost;
+	}
+
+	protected float search(int start, int dest, SearchContext ctx)
+	{
+		if (start < 0 || dest < 0)
+			return Float.POSITIVE_INFINITY;
+		if (settle(start, dest, null, 0, ctx))
+		{
+			buildPath(ctx, dest);
+			return ctx.g()[dest];
+		}
+		if (ctx.getLimitStatus() != SearchResult.FOUND)
+		{ //no heuristic tells which node is closest, so stay at the start
+			buildPath(ctx, start);
+			return 0;
+		}
+		return Float.POSITIVE_INFINITY;
+	}
+
+	/**
+	 * Computes the shortest path tree rooted at the node with id
+	 * <code>sourceId</code>, using the calling thread's context. Costs and
+	 * paths to every node are then available from <code>getTreeCost()</code>
+	 * and <code>getTreePath()</code> until that thread's next query.
+	 *
+	 * @throws NoPathFoundException
+	 *             if there is no passable node with id <code>sourceId</code>.
+	 */
+	public void computeShortestPathTree(int sourceId)
+		throws NoPathFoundException
+	{
+		computeShortestPathTree(sourceId, context());
+	}
+
+	/**
+	 * Computes the shortest path tree rooted at the node with id
+	 * <code>sourceId</code> into the specified context.
+	 *
+	 * @throws NoPathFoundException
+	 *             if there is no passable node with id <code>sourceId</code>.
+	 */
+	public void computeShortestPathTree(int sourceId, SearchContext ctx)
+		throws NoPathFoundException
+	{
+		if (ctx.graph() != graph)
+			throw new IllegalArgumentException(
+				"context was created for another graph");
+		ctx.reset();
+		int source = graph.indexOf(sourceId);
+		if (source < 0)
+			throw new NoPathFoundException();
+		graph.beginQuery(source, -1);
+		settle(source, -1, null, 0, ctx);
+	}
+
+	/**
+	 * Gets the cost from the source of the calling thread's last shortest
+	 * path tree to the node with id <code>destId</code>.
+	 *
+	 * @return the cost, or <code>Float.POSITIVE_INFINITY</code> if the node
+	 *         is not reachable.
+	 */
+	public float getTreeCost(int destId)
+	{
+		return getTreeCost(destId, context());
+	}
+
+	/**
+	 * Gets the cost from the source of the shortest path tree in
+	 * <code>ctx</code> to the node with id <code>destId</code>.
+	 *
+	 * @return the cost, or <code>Float.POSITIVE_INFINITY</code> if the node
+	 *         is not reachable.
+	 */
+	public float getTreeCost(int destId, SearchContext ctx)
+	{
+		int dest = graph.indexOf(destId);
+		if (dest < 0 || ctx.state(dest) != CLOSED)
+			return Float.POSITIVE_INFINITY;
+		return ctx.g()[dest];
+	}
+
+	/**
+	 * Gets the path from the source of the calling thread's last shortest
+	 * path tree to the node with id <code>destId</code>.
+	 *
+	 * @return the path, or <code>null</code> if the node is not reachable.
+	 */
+	public LinkedList<PathNode> getTreePath(int destId)
+	{
+		return getTreePath(destId, context());
+	}
+
+	/**
+	 * Gets the path from the source of the shortest path tree in
+	 * <code>ctx</code> to the node with id <code>destId</code>.
+	 *
+	 * @return the path, or <code>null</code> if the node is not reachable.
+	 */
+	public LinkedList<PathNode> getTreePath(int destId, SearchContext ctx)
+	{
+		int dest = graph.indexOf(destId);
+		if (dest < 0 || ctx.state(dest) != CLOSED)
+			return null;
+		LinkedList<PathNode> path = new LinkedList<>();
+		int[] parent = ctx.parent();
+		for (int node = dest; node >= 0; node = parent[node])
+			path.addFirst(new GraphNode(graph, node));
+		return path;
+	}
+
+	/**
+	 * Computes the costs from every node in <code>sourceIds</code> to every
+	 * node in <code>targetIds</code>, without keeping paths, spreading the
+	 * sources over the common <code>ForkJoinPool</code>.
+	 *
+	 * @see #computeDistanceMatrix(int[],int[],boolean,Executor)
+	 */
+	public DistanceMatrix computeDistanceMatrix(int[] sourceIds,
+		int[] targetIds)
+	{
+		return computeDistanceMatrix(sourceIds, targetIds, false,
+			ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Computes the costs from every node in <code>sourceIds</code> to every
+	 * node in <code>targetIds</code>. Each source takes one sweep that stops
+	 * as soon as all targets are settled, so a matrix costs about as much as
+	 * one shortest path tree per source instead of one query per pair. The
+	 * sweeps run on <code>executor</code>, each thread using its own context.
+	 * <br/>Sources or targets with no passable node get infinite costs.
+	 *
+	 * @param keepPaths
+	 *            whether to keep each source's predecessors so that
+	 *            <code>DistanceMatrix.getPath()</code> can rebuild paths.
+	 *            This stores one <code>int</code> per graph node per source.
+	 * @param executor
+	 *            runs the sweeps, as in <code>computeBestPaths()</code>.
+	 */
+	public DistanceMatrix computeDistanceMatrix(final int[] sourceIds,
+		int[] targetIds, boolean keepPaths, Executor executor)
+	{
+		final int[] targets = lookupIds(targetIds);
+		final boolean[] isTarget = new boolean[graph.size()];
+		int distinct = 0;
+		for (int target : targets)
+			if (target >= 0 && !isTarget[target])
+			{
+				isTarget[target] = true;
+				distinct++;
+			}
+		final int numTargets = distinct;
+		final DistanceMatrix matrix = new DistanceMatrix(graph,
+			sourceIds.length, targets, keepPaths);
+		ParallelRange.run(sourceIds.length, executor, new IntConsumer()
+			{
+				public void accept(int s)
+				{
+					sweep(s, sourceIds[s], targets, isTarget, numTargets,
+						matrix);
+				}
+			});
+		return matrix;
+	}
+
+	/** Fills row <code>s</code> of a distance matrix. */
+	private void sweep(int s, int sourceId, int[] targets, boolean[] isTarget,
+		int numTargets, DistanceMatrix matrix)
+	{
+		SearchContext ctx = context();
+		ctx.reset();
+		int source = graph.indexOf(sourceId);
+		graph.beginQuery(source, -1);
+		if (source >= 0 && numTargets > 0)
+			settle(source, -1, isTarget, numTargets, ctx);
+		float[] g = ctx.g(), costs = matrix.costs();
+		for (int t = 0, row = s * targets.length; t < targets.length; t++)
+		{
+			int target = targets[t];
+			costs[row + t] = source >= 0 && target >= 0
+				&& ctx.state(target) == CLOSED ? g[target]
+				: Float.POSITIVE_INFINITY;
+		}
+		if (matrix.hasPaths())
+			matrix.setParents(s, source >= 0 ? ctx.parent().clone()
+				: new int[0]);
+	}
+
+	/**
+	 * Settles nodes in order of cost from <code>start</code>, stopping once
+	 * <code>dest</code> is settled, or once <code>remaining</code> of the
+	 * nodes flagged in <code>targets</code> are (or never, if
+	 * <code>dest</code> is -1 and <code>targets</code> is <code>null</code>),
+	 * or once a limit of the query is reached.
+	 *
+	 * @return <code>true</code> if the search stopped early, short of a
+	 *         limit.
+	 */
+	private boolean settle(int start, int dest, boolean[] targets,
+		int remaining, SearchContext ctx)
+	{
+		float[] g = ctx.g();
+		int[] parent = ctx.parent(), neighbors = ctx.neighbors();
+		RadixHeap open = ctx.radixQueue();
+		SearchStats stats = ctx.getStats(); //null unless instrumented
+		IndexCostEstimator successorCost = indexSuccessorCost != null
+			? indexSuccessorCost : new PathCostAdapter(this.successorCost,
+				new GraphNode(graph, 0), new GraphNode(graph, 0));
+
+		boolean limited = ctx.isLimited();
+
+		g[start] = 0;
+		parent[start] = -1;
+		ctx.setState(start, OPEN);
+		open.push(start, 0);
+		if (stats != null)
+			stats.started(start);
+		while (!open.isEmpty())
+		{
+			int bestNode = open.poll();
+			if (ctx.state(bestNode) == CLOSED || open.lastKey() > g[bestNode])
+			{ //stale entry for a node pushed again with lower g
+				if (stats != null)
+					stats.discarded();
+				continue;
+			}
+			if (limited && ctx.limitReached())
+				return false;
+			ctx.setState(bestNode, CLOSED);
+			if (stats != null)
+				stats.expanded(bestNode, g[bestNode], open.size());
+			if (bestNode == dest)
+				return true;
+			if (targets != null && targets[bestNode] && --remaining == 0)
+				return true;
+			int numNeigh = graph.neighbors(bestNode, neighbors);
+			for (int i = 0; i < numNeigh; i++)
+			{
+				int succ = neighbors[i];
+				byte state = ctx.state(succ);
+				if (state == CLOSED)
+					continue;
+				float newCost = g[bestNode]
+					+ successorCost.cost(bestNode, succ);
+				if (state == OPEN && g[succ] <= newCost)
+					continue;
+				g[succ] = newCost;
+				parent[succ] = bestNode;
+				ctx.setState(succ, OPEN);
+				open.push(succ, newCost);
+				if (stats != null)
+				{
+					if (state == OPEN)
+						stats.improved(bestNode, succ, newCost);
+					else
+						stats.generated(bestNode, succ, newCost);
+				}
+			}
+		}
+		return false;
+	}
 
+	/**
+	 * Sets an <code>IndexCostEstimator</code> to use instead of the
+	 * <code>PathCostEstimator</code>, or <code>null</code> to go back to it.
+	 */
+	public void setIndexSuccessorCostEstimator(
+		IndexCostEstimator successorCost)
+	{
+		this.indexSuccessorCost = successorCost;
+	}
 }
@@ -0,0 +1,123 @@
+package org.foraci.math.graph.pathfinder.dijkstra;
+
+import java.util.LinkedList;
+
+import org.foraci.math.graph.pathfinder.PathNode;
+import org.foraci.math.graph.pathfinder.graph.Graph;
+import org.foraci.math.graph.pathfinder.graph.GraphNode;
+
+/**
+ * The costs from a list of sources to a list of targets, as computed by
+ * <code>DijkstraPathFinder.computeDistanceMatrix()</code>. Costs are kept in
+ * one flat row-major array, one row per source. If paths were kept, each
+ * source's predecessor array is stored as well and paths are rebuilt from it
+ * only when asked for.
+ */
+public final class DistanceMatrix
+{
+	private final Graph graph;
+	private final int sources;
+	private final int[] targets; //node index of each target, or -1
+	private final float[] costs;
+	private final int[][] parents; //per source, or null
+
+	DistanceMatrix(Graph graph, int sources, int[] targets, boolean keepPaths)
+	{
+		this.graph = graph;
+		this.sources = sources;
+		this.targets = targets;
+		costs = new float[sources * targets.length];
+		parents = keepPaths ? new int[sources][] : null;
+	}
+
+	/** Gets the number of sources, the rows of the matrix. */
+	public int sources()
+	{
+		return sources;
+	}
+
+	/** Gets the number of targets, the columns of the matrix. */
+	public int targets()
+	{
+		return targets.length;
+	}
+
+	/**
+	 * Gets the cost from source <code>s</code> to target <code>t</code>, or
+	 * <code>Float.POSITIVE_INFINITY</code> if the target is not reachable.
+	 */
+	public float cost(int s, int t)
+	{
+		return costs[s * targets.length + t];
+	}
+
+	/**
+	 * Gets the whole matrix, where the cost from source <code>s</code> to
+	 * target <code>t</code> is at <code>s * targets() + t</code>.
+	 */
+	public float[] costs()
+	{
+		return costs;
+	}
+
+	/** Returns <code>true</code> if paths were kept. */
+	public boolean hasPaths()
+	{
+		return parents != null;
+	}
+
+	/**
+	 * Gets the path from source <code>s</code> to target <code>t</code>.
+	 *
+	 * @return the path, or <code>null</code> if the target is not reachable.
+	 * @throws IllegalStateException
+	 *             if paths were not kept.
+	 */
+	public LinkedList<PathNode> getPath(int s, int t)
+	{
+		int[] parent = parent(s);
+		if (Float.isInfinite(cost(s, t)))
+			return null;
+		LinkedList<PathNode> path = new LinkedList<>();
+		for (int node = targets[t]; node >= 0; node = parent[node])
+			path.addFirst(new GraphNode(graph, node));
+		return path;
+	}
+
+	/**
+	 * Writes the ids of the nodes on the path from source <code>s</code> to
+	 * target <code>t</code> into the front of <code>out</code>.
+	 *
+	 * @return the number of nodes on the path, or 0 if the target is not
+	 *         reachable. If this is more than <code>out.length</code>, nothing
+	 *         is written.
+	 * @throws IllegalStateException
+	 *             if paths were not kept.
+	 */
+	public int getPath(int s, int t, int[] out)
+	{
+		int[] parent = parent(s);
+		if (Float.isInfinite(cost(s, t)))
+			return 0;
+		int length = 0;
+		for (int node = targets[t]; node >= 0; node = parent[node])
+			length++;
+		if (length > out.length)
+			return length;
+		for (int node = targets[t], i = length; node >= 0; node = parent[node])
+			out[--i] = graph.id(node);
+		return length;
+	}
+
+	private int[] parent(int s)
+	{
+		if (parents == null)
+			throw new IllegalStateException("paths were not kept");
+		return parents[s];
+	}
+
+	void setParents(int s, int[] parent)
+	{
+		parents[s] = parent;
+	}
+}
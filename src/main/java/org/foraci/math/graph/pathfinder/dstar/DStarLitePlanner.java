@@ -0,0 +1,369 @@
+package org.foraci.math.graph.pathfinder.dstar;
+
+import java.util.Arrays;
+import java.util.LinkedList;
+
+import org.foraci.math.graph.pathfinder.NoPathFoundException;
+import org.foraci.math.graph.pathfinder.PathCostEstimator;
+import org.foraci.math.graph.pathfinder.PathNode;
+import org.foraci.math.graph.pathfinder.graph.GraphNode;
+import org.foraci.math.graph.pathfinder.graph.GridGraph;
+
+/**
+ * Incremental planner using D* Lite (Koenig and Likhachev, 2002) on
+ * 8-connected grids. It searches backwards from the destination and keeps
+ * its search state between calls. When cells change, only the part of the
+ * shortest path tree that depended on them is repaired, and when the start
+ * moves toward the destination nothing is searched again. Replanning after
+ * a small edit therefore costs time in proportion to the edit, not the map.
+ * <br/>Change cells with <code>GridGraph.setWeight()</code> or
+ * <code>setBlocked()</code> first, then report each changed cell with
+ * <code>cellChanged()</code>, then call <code>plan()</code> again. A new
+ * destination starts the search over.
+ * <br/>Unlike a <code>PathFinder</code>, a planner holds the state of one
+ * agent's query and must be used by one thread at a time.
+ */
+public final class DStarLitePlanner
+{
+	private final GridGraph grid;
+	private PathCostEstimator pathCost;
+	private PathCostEstimator successorCost;
+	/* cost to the destination, and its one-step lookahead */
+	private final float[] g, rhs;
+	private final int[] stamp; //generation in which g and rhs were set
+	private int generation;
+	private final KeyHeap open;
+	private final int[] neighbors, neighbors2;
+	private final GraphNode from, to, startView;
+	private int start = -1, goal = -1, lastStart;
+	private float km; //heuristic drift from moving the start
+
+	/**
+	 * Constructs an instance of this planner.
+	 */
+	private DStarLitePlanner(GridGraph grid, PathCostEstimator pathCost,
+		PathCostEstimator successorCost)
+	{
+		int n = grid.size();
+		this.grid = grid;
+		this.pathCost = pathCost;
+		this.successorCost = successorCost;
+		g = new float[n];
+		rhs = new float[n];
+		stamp = new int[n];
+		open = new KeyHeap(n);
+		neighbors = new int[grid.maxDegree()];
+		neighbors2 = new int[grid.maxDegree()];
+		from = new GraphNode(grid, 0);
+		to = new GraphNode(grid, 0);
+		startView = new GraphNode(grid, 0);
+	}
+
+	/**
+	 * Factory method to build a <code>DStarLitePlanner</code> over an already
+	 * built grid, whose cells the caller may change between plans.
+	 *
+	 * @param pathCost A <code>PathCostEstimator</code> that can guess the
+	 *   cost of a path between two arbitrary nodes; it must not overestimate.
+	 * @param successorCost A <code>PathCostEstimator</code> that can calculate
+	 *   the cost to a travel from a given PathNode to its given successor
+	 *   PathNode.
+	 */
+	public static DStarLitePlanner buildPlanner(GridGraph grid,
+		PathCostEstimator pathCost, PathCostEstimator successorCost)
+	{
+		return new DStarLitePlanner(grid, pathCost, successorCost);
+	}
+
+	/**
+	 * Factory method to build a <code>DStarLitePlanner</code> with a internal
+	 * graph representing a 2D grid of <i>weighted </i> nodes.
+	 *
+	 * @see GridGraph#buildWeighted(int[][],int[][])
+	 */
+	public static DStarLitePlanner buildWeightedGridPlanner(int[][] arrGraph,
+		int[][] arrIds, PathCostEstimator pathCost,
+		PathCostEstimator successorCost)
+	{
+		return new DStarLitePlanner(GridGraph.buildWeighted(arrGraph, arrIds),
+			pathCost, successorCost);
+	}
+
+	public static DStarLitePlanner buildWeightedGridPlanner(int[] arrGraph,
+		int[] arrIds, int rows, int cols, PathCostEstimator pathCost,
+		PathCostEstimator successorCost)
+	{
+		return new DStarLitePlanner(GridGraph.buildWeighted(arrGraph, arrIds,
+			rows, cols), pathCost, successorCost);
+	}
+
+	/** Gets the grid this planner searches. */
+	public GridGraph getGrid()
+	{
+		return grid;
+	}
+
+	/**
+	 * Sets the <code>PathCostEstimator</code> to guess the cost of the path
+	 * between two arbitrary <code>PathNode</code>s. The next plan starts the
+	 * search over.
+	 */
+	public void setPathCostEstimator(PathCostEstimator pathCost)
+	{
+		this.pathCost = pathCost;
+		goal = -1;
+	}
+
+	/**
+	 * Sets the <code>PathCostEstimator</code> to determine the cost to travel
+	 * from a node to it's successor. The next plan starts the search over.
+	 */
+	public void setSuccessorCostEstimator(PathCostEstimator successorCost)
+	{
+		this.successorCost = successorCost;
+		goal = -1;
+	}
+
+	/**
+	 * Plans the best path from the node with id <code>startId</code> to the
+	 * node with id <code>goalId</code>, reusing the previous plan's search if
+	 * the destination is the same.
+	 *
+	 * @return the path cost.
+	 * @throws NoPathFoundException
+	 *             if a path can not be found.
+	 */
+	public float plan(int startId, int goalId) throws NoPathFoundException
+	{
+		int s = grid.indexOf(startId), t = grid.indexOf(goalId);
+		if (s < 0 || t < 0)
+			throw new NoPathFoundException();
+		if (t != goal)
+			initialize(s, t);
+		else if (s != start)
+		{
+			km += pathCost.cost(from.at(lastStart), to.at(s));
+			lastStart = s;
+			start = s;
+		}
+		computeShortestPath();
+		if (g(start) == Float.POSITIVE_INFINITY)
+			throw new NoPathFoundException();
+		return g(start);
+	}
+
+	/**
+	 * Reports that the weight of the cell at <code>(x,y)</code> changed, or
+	 * that it became blocked or passable. The affected costs are repaired by
+	 * the next <code>plan()</code>.
+	 */
+	public void cellChanged(int x, int y)
+	{
+		if (goal < 0)
+			return; //nothing planned yet
+		int v = grid.node(x, y);
+		//the edges into and out of v changed: recompute the lookahead of v
+		//and of every neighbor from scratch
+		updateLookahead(v);
+		int numNeigh = grid.neighbors(v, neighbors2);
+		for (int i = 0; i < numNeigh; i++)
+			updateLookahead(neighbors2[i]);
+	}
+
+	/**
+	 * Reports that every cell from <code>(x0,y0)</code> to
+	 * <code>(x1,y1)</code> inclusive may have changed.
+	 */
+	public void cellsChanged(int x0, int y0, int x1, int y1)
+	{
+		for (int y = Math.max(0, Math.min(y0, y1)); y <= Math.min(
+			grid.rows() - 1, Math.max(y0, y1)); y++)
+			for (int x = Math.max(0, Math.min(x0, x1)); x <= Math.min(
+				grid.cols() - 1, Math.max(x0, x1)); x++)
+				cellChanged(x, y);
+	}
+
+	/**
+	 * Get the best path found by the last call to <code>plan()</code>,
+	 * following the cheapest step from the start to the destination, or
+	 * <code>null</code> if there is none.
+	 */
+	public LinkedList<PathNode> getBestPath()
+	{
+		if (goal < 0 || g(start) == Float.POSITIVE_INFINITY)
+			return null;
+		LinkedList<PathNode> path = new LinkedList<>();
+		int node = start;
+		path.add(new GraphNode(grid, node));
+		for (int steps = grid.size(); node != goal && steps > 0; steps--)
+		{
+			node = bestSuccessor(node);
+			if (node < 0)
+				return null;
+			path.add(new GraphNode(grid, node));
+		}
+		return node == goal ? path : null;
+	}
+
+	/**
+	 * Gets the id of the node to move to next from the start of the last
+	 * plan, or <code>-1</code> if the start is the destination or there is no
+	 * path.
+	 */
+	public int getNextId()
+	{
+		if (goal < 0 || start == goal || g(start) == Float.POSITIVE_INFINITY)
+			return -1;
+		int next = bestSuccessor(start);
+		return next < 0 ? -1 : grid.id(next);
+	}
+
+	private int bestSuccessor(int node)
+	{
+		int best = -1;
+		float bestCost = Float.POSITIVE_INFINITY;
+		from.at(node);
+		int numNeigh = grid.neighbors(node, neighbors);
+		for (int i = 0; i < numNeigh; i++)
+		{
+			int succ = neighbors[i];
+			float cost = successorCost.cost(from, to.at(succ)) + g(succ);
+			if (cost < bestCost)
+			{
+				bestCost = cost;
+				best = succ;
+			}
+		}
+		return best;
+	}
+
+	private float g(int node)
+	{
+		return stamp[node] == generation ? g[node] : Float.POSITIVE_INFINITY;
+	}
+
+	private float rhs(int node)
+	{
+		return stamp[node] == generation ? rhs[node] : Float.POSITIVE_INFINITY;
+	}
+
+	private void touch(int node)
+	{
+		if (stamp[node] != generation)
+		{
+			stamp[node] = generation;
+			g[node] = rhs[node] = Float.POSITIVE_INFINITY;
+		}
+	}
+
+	private void initialize(int s, int t)
+	{
+		open.clear();
+		if (++generation == 0)
+		{ //stamps wrapped around, so old ones could match again
+			Arrays.fill(stamp, 0);
+			generation = 1;
+		}
+		start = lastStart = s;
+		goal = t;
+		km = 0;
+		touch(goal);
+		rhs[goal] = 0;
+		open.update(goal, calculateKey(goal));
+	}
+
+	private long calculateKey(int node)
+	{
+		float m = Math.min(g(node), rhs(node));
+		return KeyHeap.key(m + pathCost.cost(startView.at(start), to.at(node))
+			+ km, m);
+	}
+
+	private void updateVertex(int node)
+	{
+		if (g(node) != rhs(node))
+			open.update(node, calculateKey(node));
+		else
+			open.remove(node);
+	}
+
+	/**
+	 * Recomputes the lookahead of <code>node</code> as its cheapest step plus
+	 * the cost from there.
+	 */
+	private void updateLookahead(int node)
+	{
+		if (node == goal)
+			return;
+		touch(node);
+		float best = Float.POSITIVE_INFINITY;
+		if (grid.isPassable(node))
+		{
+			from.at(node);
+			int numNeigh = grid.neighbors(node, neighbors);
+			for (int i = 0; i < numNeigh; i++)
+			{
+				int succ = neighbors[i];
+				float gs = g(succ);
+				if (gs != Float.POSITIVE_INFINITY)
+					best = Math.min(best, successorCost.cost(from, to.at(succ))
+						+ gs);
+			}
+		}
+		rhs[node] = best;
+		updateVertex(node);
+	}
+
+	private void computeShortestPath()
+	{
+		while (open.peekKey() < calculateKey(start) || rhs(start) != g(start))
+		{
+			int u = open.peek();
+			long oldKey = open.peekKey(), newKey = calculateKey(u);
+			if (oldKey < newKey)
+			{
+				open.update(u, newKey);
+				continue;
+			}
+			int numNeigh = grid.neighbors(u, neighbors2);
+			if (g[u] > rhs[u])
+			{ //overconsistent: settle u and offer it to its predecessors
+				g[u] = rhs[u];
+				open.remove(u);
+				to.at(u);
+				for (int i = 0; i < numNeigh; i++)
+				{
+					int pred = neighbors2[i];
+					if (pred == goal)
+						continue;
+					touch(pred);
+					float cost = successorCost.cost(from.at(pred), to.at(u))
+						+ g[u];
+					if (cost < rhs[pred])
+					{
+						rhs[pred] = cost;
+						updateVertex(pred);
+					}
+				}
+			}
+			else
+			{ //underconsistent: raise u and repair whoever relied on it
+				float oldG = g[u];
+				g[u] = Float.POSITIVE_INFINITY;
+				for (int i = 0; i < numNeigh; i++)
+				{
+					int pred = neighbors2[i];
+					if (pred == goal)
+						continue;
+					touch(pred);
+					if (grid.isPassable(u) && rhs[pred] == successorCost.cost(
+						from.at(pred), to.at(u)) + oldG)
+						updateLookahead(pred);
+				}
+				updateLookahead(u);
+				if (u == goal)
+					updateVertex(u);
+			}
+		}
+	}
+}
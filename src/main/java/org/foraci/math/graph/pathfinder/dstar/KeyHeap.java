@@ -0,0 +1,154 @@
+package org.foraci.math.graph.pathfinder.dstar;
+
+import java.util.Arrays;
+
+/**
+ * A binary min-heap of node indices keyed by <code>long</code>s, with
+ * decrease- and increase-key. D* Lite orders nodes by a pair of costs
+ * compared lexicographically; <code>key()</code> packs such a pair into one
+ * <code>long</code> with the same order.
+ */
+final class KeyHeap
+{
+	/** The key of an empty heap's top: greater than any pair's. */
+	static final long EMPTY = Long.MAX_VALUE;
+
+	private int[] heap; //node at each position
+	private long[] keys; //key at each position
+	private final int[] slot; //position of each node, or -1
+	private int size;
+
+	KeyHeap(int capacity)
+	{
+		heap = new int[16];
+		keys = new long[16];
+		slot = new int[capacity];
+		Arrays.fill(slot, -1);
+	}
+
+	/**
+	 * Packs the pair <code>(k1,k2)</code> of non-negative costs into a key.
+	 * Non-negative float bits order like the floats, so comparing the packed
+	 * keys compares <code>k1</code> first, then <code>k2</code>.
+	 */
+	static long key(float k1, float k2)
+	{
+		return ((long) Float.floatToRawIntBits(k1 + 0.0f) << 32)
+			| (Float.floatToRawIntBits(k2 + 0.0f) & 0xffffffffL);
+	}
+
+	boolean isEmpty()
+	{
+		return size == 0;
+	}
+
+	boolean contains(int node)
+	{
+		return slot[node] >= 0;
+	}
+
+	int peek()
+	{
+		return heap[0];
+	}
+
+	long peekKey()
+	{
+		return size == 0 ? EMPTY : keys[0];
+	}
+
+	/** Adds <code>node</code>, or changes its key if already present. */
+	void update(int node, long key)
+	{
+		int i = slot[node];
+		if (i < 0)
+		{
+			if (size == heap.length)
+			{
+				heap = Arrays.copyOf(heap, 2 * size);
+				keys = Arrays.copyOf(keys, 2 * size);
+			}
+			i = size++;
+			heap[i] = node;
+			slot[node] = i;
+			keys[i] = key;
+			up(i);
+			return;
+		}
+		long old = keys[i];
+		keys[i] = key;
+		if (key < old)
+			up(i);
+		else
+			down(i);
+	}
+
+	void remove(int node)
+	{
+		int i = slot[node];
+		if (i < 0)
+			return;
+		slot[node] = -1;
+		if (--size == i)
+			return;
+		long old = keys[i];
+		move(size, i);
+		if (keys[i] < old)
+			up(i);
+		else
+			down(i);
+	}
+
+	/** Removes every node, in time proportional to the heap's size. */
+	void clear()
+	{
+		for (int i = 0; i < size; i++)
+			slot[heap[i]] = -1;
+		size = 0;
+	}
+
+	private void move(int from, int to)
+	{
+		heap[to] = heap[from];
+		keys[to] = keys[from];
+		slot[heap[to]] = to;
+	}
+
+	private void up(int i)
+	{
+		int node = heap[i];
+		long key = keys[i];
+		while (i > 0)
+		{
+			int p = (i - 1) >>> 1;
+			if (keys[p] <= key)
+				break;
+			move(p, i);
+			i = p;
+		}
+		heap[i] = node;
+		keys[i] = key;
+		slot[node] = i;
+	}
+
+	private void down(int i)
+	{
+		int node = heap[i];
+		long key = keys[i];
+		while (true)
+		{
+			int c = 2 * i + 1;
+			if (c >= size)
+				break;
+			if (c + 1 < size && keys[c + 1] < keys[c])
+				c++;
+			if (keys[c] >= key)
+				break;
+			move(c, i);
+			i = c;
+		}
+		heap[i] = node;
+		keys[i] = key;
+		slot[node] = i;
+	}
+}
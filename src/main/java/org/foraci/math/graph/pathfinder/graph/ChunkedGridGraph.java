@@ -0,0 +1,361 @@
+package org.foraci.math.graph.pathfinder.graph;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.foraci.math.graph.pathfinder.IndexCostEstimator;
+
+/**
+ * An unbounded grid of 8-connected cells, loaded a tile at a time through a
+ * <code>TileProvider</code> as searches reach it, for worlds too large to
+ * hold at once. Up to <code>capacity</code> tiles are resident; loading
+ * another unloads the one least recently used. As in <code>GridGraph</code>
+ * only the cell weights are stored and neighbors are derived from them, so
+ * a resident tile costs 4 bytes per cell, and a <code>SearchContext</code>
+ * on this graph is sized by the tiles resident at once, whatever the size
+ * of the world.
+ * <br/>The index of a cell is made of the slot its tile occupies and its
+ * place in the tile, so it is only valid while the tile stays resident;
+ * <code>version()</code> changes whenever a tile is unloaded. Cells are
+ * looked up by world coordinates with <code>node()</code>. Their ids pack
+ * the low 16 bits of <code>x</code> and <code>y</code>, so that
+ * <code>computeBestPath(int,int)</code> reaches the cells within 32768 of
+ * the origin; pass <code>GraphNode</code>s of <code>node()</code> for the
+ * others.
+ * <br/>The tiles a query reaches are not unloaded until it ends. A query
+ * that reaches more tiles than can be resident at once finds the tiles
+ * beyond blocked, so <code>capacity</code> also bounds the area a search
+ * covers. A chunked grid, and the path finders over it, must be used by one
+ * thread at a time.
+ */
+public final class ChunkedGridGraph extends Graph implements GridCoordinates
+{
+	/* neighbor offsets, in the order of the other grids */
+	private static final int[] DX = { -1, 1, 0, 0, -1, 1, -1, 1 };
+	private static final int[] DY = { 0, 0, -1, 1, -1, -1, 1, 1 };
+
+	private final TileProvider provider;
+	private final int tileSize, shift, mask; //cells on a side of a tile
+	private final int areaShift, areaMask; //cells in a tile
+	private final int capacity;
+	private final float[][] tiles; //weights of the tile in each slot
+	private final int[] tileX, tileY;
+	private final boolean[] resident;
+	private final long[] lastUse;
+	/* the slot of the tile next to each slot's in each of 9 directions (the
+	   middle one unused), or -1 if it has not been looked up */
+	private final int[] links;
+	private final Map<Long, Integer> slots = new HashMap<>();
+	private long clock;
+	private long queryStart = Long.MAX_VALUE; //no query running
+	private long version;
+
+	/**
+	 * Constructs a grid whose tiles are loaded from <code>provider</code>.
+	 *
+	 * @param tileSize
+	 *            the number of cells on a side of a tile, a power of 2.
+	 * @param capacity
+	 *            the most tiles resident at once, at least the 4 around a
+	 *            corner.
+	 * @throws IllegalArgumentException
+	 *             if <code>tileSize</code> is not a power of 2, or if the
+	 *             resident cells would not all have an <code>int</code>
+	 *             index.
+	 */
+	public ChunkedGridGraph(TileProvider provider, int tileSize, int capacity)
+	{
+		if (tileSize < 2 || Integer.bitCount(tileSize) != 1)
+			throw new IllegalArgumentException("tileSize is not a power of 2");
+		if (capacity < 4)
+			throw new IllegalArgumentException("capacity < 4");
+		if ((long) capacity * tileSize * tileSize > Integer.MAX_VALUE)
+			throw new IllegalArgumentException("capacity * tileSize^2 too large");
+		this.provider = provider;
+		this.tileSize = tileSize;
+		this.shift = Integer.numberOfTrailingZeros(tileSize);
+		this.mask = tileSize - 1;
+		this.areaShift = 2 * shift;
+		this.areaMask = (1 << areaShift) - 1;
+		this.capacity = capacity;
+		tiles = new float[capacity][]; //allocated as slots are first used
+		tileX = new int[capacity];
+		tileY = new int[capacity];
+		resident = new boolean[capacity];
+		lastUse = new long[capacity];
+		links = new int[9 * capacity];
+		Arrays.fill(links, -1);
+	}
+
+	/** Gets the number of cells on a side of a tile. */
+	public int tileSize()
+	{
+		return tileSize;
+	}
+
+	/** Gets the most tiles resident at once. */
+	public int capacity()
+	{
+		return capacity;
+	}
+
+	/** Gets the number of tiles resident. */
+	public int residentTiles()
+	{
+		return slots.size();
+	}
+
+	/**
+	 * Gets the index of the cell at <code>(x,y)</code>, loading its tile if
+	 * it is not resident. Cells are looked up between queries.
+	 */
+	public int node(int x, int y)
+	{
+		queryStart = Long.MAX_VALUE; //the last query is over
+		int slot = slot(x >> shift, y >> shift);
+		return slot << areaShift | (y & mask) << shift | (x & mask);
+	}
+
+	/** Gets the x coordinate of a resident cell. */
+	public int x(int node)
+	{
+		return tileX[node >>> areaShift] << shift | (node & mask);
+	}
+
+	/** Gets the y coordinate of a resident cell. */
+	public int y(int node)
+	{
+		return tileY[node >>> areaShift] << shift | (node >>> shift & mask);
+	}
+
+	/**
+	 * Gets the octile distance between cells, a heuristic for A* on this
+	 * grid when <code>straight</code> and <code>diagonal</code> are the
+	 * cheapest costs of a straight and of a diagonal step.
+	 */
+	public IndexCostEstimator octile(float straight, float diagonal)
+	{
+		return new Octile(straight, diagonal);
+	}
+
+	/**
+	 * Gets the cost of a step between neighboring cells: the length of the
+	 * step, straight or diagonal, times the mean weight of the two cells, as
+	 * <code>GridStepCost</code> does on a <code>GridGraph</code>.
+	 */
+	public IndexCostEstimator stepCost(float straight, float diagonal)
+	{
+		return new StepCost(straight, diagonal);
+	}
+
+	public int size()
+	{
+		return capacity << areaShift;
+	}
+
+	public boolean isPassable(int node)
+	{
+		int slot = node >>> areaShift;
+		return resident[slot] && tiles[slot][node & areaMask] != GridGraph.BLOCKED;
+	}
+
+	public float weight(int node)
+	{
+		int slot = node >>> areaShift;
+		return resident[slot] ? tiles[slot][node & areaMask] : GridGraph.BLOCKED;
+	}
+
+	public int id(int node)
+	{
+		return y(node) << 16 | (x(node) & 0xFFFF);
+	}
+
+	/**
+	 * Finds the cell with the given id, loading its tile if it is not
+	 * resident.
+	 */
+	public int indexOf(int id)
+	{
+		int node = node((short) id, id >> 16);
+		return isPassable(node) ? node : -1;
+	}
+
+	public int maxDegree()
+	{
+		return 8;
+	}
+
+	public int neighbors(int node, int[] out)
+	{
+		int slot = node >>> areaShift;
+		int cell = node & areaMask;
+		int x = cell & mask, y = cell >>> shift;
+		float[] w = tiles[slot];
+		int n = 0;
+		if (x > 0 && y > 0 && x < mask && y < mask)
+		{ //all the neighbors are in this tile
+			for (int i = 0; i < 8; i++)
+			{
+				int next = cell + DY[i] * tileSize + DX[i];
+				if (w[next] != GridGraph.BLOCKED)
+					out[n++] = node - cell + next;
+			}
+			return n;
+		}
+		for (int i = 0; i < 8; i++)
+		{
+			int nx = x + DX[i], ny = y + DY[i];
+			int dx = nx < 0 ? -1 : nx > mask ? 1 : 0;
+			int dy = ny < 0 ? -1 : ny > mask ? 1 : 0;
+			int nextSlot = dx == 0 && dy == 0 ? slot : link(slot, dx, dy);
+			if (nextSlot < 0)
+				continue; //no room for the tile, so it is blocked
+			int next = (ny & mask) << shift | (nx & mask);
+			if (tiles[nextSlot][next] != GridGraph.BLOCKED)
+				out[n++] = nextSlot << areaShift | next;
+		}
+		return n;
+	}
+
+	public long version()
+	{
+		return version;
+	}
+
+	/** Keeps the tiles of the start and destination until the query ends. */
+	public void beginQuery(int start, int dest)
+	{
+		queryStart = ++clock;
+		if (start >= 0)
+			lastUse[start >>> areaShift] = clock;
+		if (dest >= 0)
+			lastUse[dest >>> areaShift] = clock;
+	}
+
+	/**
+	 * Gets the slot of the tile next to a slot's, loading it if needed.
+	 *
+	 * @return the slot, or <code>-1</code> if the tile could not be loaded.
+	 */
+	private int link(int slot, int dx, int dy)
+	{
+		int d = 9 * slot + 3 * (dy + 1) + dx + 1;
+		int next = links[d];
+		if (next >= 0)
+		{
+			lastUse[next] = clock;
+			return next;
+		}
+		lastUse[slot] = ++clock; //so that loading the next one keeps this one
+		next = slot(tileX[slot] + dx, tileY[slot] + dy);
+		if (next >= 0)
+		{
+			links[d] = next;
+			links[9 * next + 3 * (1 - dy) + 1 - dx] = slot;
+		}
+		return next;
+	}
+
+	/**
+	 * Gets the slot of a tile, loading it into a free slot or into that of
+	 * the tile least recently used.
+	 *
+	 * @return the slot, or <code>-1</code> if every resident tile is in use
+	 *         by the query running.
+	 */
+	private int slot(int tx, int ty)
+	{
+		Long key = Long.valueOf(key(tx, ty));
+		Integer found = slots.get(key);
+		if (found != null)
+		{
+			lastUse[found.intValue()] = ++clock;
+			return found.intValue();
+		}
+		//a linear scan is cheap next to loading a tile
+		int slot = 0;
+		for (int s = 0; s < capacity; s++)
+		{
+			if (!resident[s])
+			{
+				slot = s;
+				break;
+			}
+			if (lastUse[s] < lastUse[slot])
+				slot = s;
+		}
+		if (resident[slot])
+		{
+			if (lastUse[slot] >= queryStart)
+				return -1;
+			unload(slot);
+		}
+		if (tiles[slot] == null)
+			tiles[slot] = new float[1 << areaShift];
+		provider.loadTile(tx, ty, tileSize, tiles[slot]);
+		tileX[slot] = tx;
+		tileY[slot] = ty;
+		resident[slot] = true;
+		lastUse[slot] = ++clock;
+		slots.put(key, Integer.valueOf(slot));
+		return slot;
+	}
+
+	private void unload(int slot)
+	{
+		slots.remove(Long.valueOf(key(tileX[slot], tileY[slot])));
+		resident[slot] = false;
+		for (int d = 0; d < 9; d++)
+		{
+			int other = links[9 * slot + d];
+			if (other >= 0)
+			{
+				links[9 * other + 8 - d] = -1;
+				links[9 * slot + d] = -1;
+			}
+		}
+		version++;
+	}
+
+	private static long key(int tx, int ty)
+	{
+		return (long) ty << 32 | (tx & 0xFFFFFFFFL);
+	}
+
+	private final class Octile implements IndexCostEstimator
+	{
+		private final float straight, diagonalExtra;
+
+		Octile(float straight, float diagonal)
+		{
+			this.straight = straight;
+			this.diagonalExtra = diagonal - straight;
+		}
+
+		public float cost(int from, int to)
+		{
+			int dx = Math.abs(x(from) - x(to)), dy = Math.abs(y(from) - y(to));
+			return straight * Math.max(dx, dy) + diagonalExtra
+				* Math.min(dx, dy);
+		}
+	}
+
+	private final class StepCost implements IndexCostEstimator
+	{
+		private final float straight, diagonal;
+
+		StepCost(float straight, float diagonal)
+		{
+			this.straight = straight;
+			this.diagonal = diagonal;
+		}
+
+		public float cost(int from, int to)
+		{
+			float length = x(from) == x(to) || y(from) == y(to) ? straight
+				: diagonal;
+			return length * 0.5f * (weight(from) + weight(to));
+		}
+	}
+}
@@ -0,0 +1,128 @@
+package org.foraci.math.graph.pathfinder.graph;
+
+/**
+ * A general directed graph in compressed sparse row (CSR) form. The
+ * neighbors of node <code>n</code> are
+ * <code>targets[offsets[n] .. offsets[n + 1] - 1]</code>.
+ */
+public final class CsrGraph extends Graph
+{
+	private final float[] weights;
+	private final int[] ids; //null if every id equals its node index
+	private final IdIndex index; //null if ids is null
+	private final int[] offsets;
+	private final int[] targets;
+	private final int maxDegree;
+
+	/**
+	 * Constructs a graph from its node weights, ids and adjacency. A node
+	 * with a weight of <code>Float.POSITIVE_INFINITY</code> is not passable.
+	 *
+	 * @param ids
+	 *            the id of each node, or <code>null</code> if the id of every
+	 *            node is its index.
+	 * @param offsets
+	 *            <code>weights.length + 1</code> ascending offsets into
+	 *            <code>targets</code>.
+	 * @param targets
+	 *            the neighbor indices of every node, grouped by node.
+	 */
+	public CsrGraph(float[] weights, int[] ids, int[] offsets, int[] targets)
+	{
+		int n = weights.length;
+		if (ids != null && ids.length != n)
+			throw new IllegalArgumentException("ids.length != weights.length");
+		if (offsets.length != n + 1 || offsets[n] != targets.length)
+			throw new IllegalArgumentException("offsets do not match targets");
+		int max = 0;
+		for (int i = 0; i < n; i++)
+			max = Math.max(max, offsets[i + 1] - offsets[i]);
+		this.weights = weights;
+		this.ids = ids;
+		this.index = ids == null ? null : new IdIndex(ids);
+		this.offsets = offsets;
+		this.targets = targets;
+		this.maxDegree = max;
+	}
+
+	/** Constructs a graph whose id index is already built, from a snapshot. */
+	CsrGraph(float[] weights, int[] ids, IdIndex index, int[] offsets,
+		int[] targets, int maxDegree)
+	{
+		this.weights = weights;
+		this.ids = ids;
+		this.index = index;
+		this.offsets = offsets;
+		this.targets = targets;
+		this.maxDegree = maxDegree;
+	}
+
+	float[] weights()
+	{
+		return weights;
+	}
+
+	int[] ids()
+	{
+		return ids;
+	}
+
+	IdIndex index()
+	{
+		return index;
+	}
+
+	int[] offsets()
+	{
+		return offsets;
+	}
+
+	int[] targets()
+	{
+		return targets;
+	}
+
+	public int size()
+	{
+		return weights.length;
+	}
+
+	public boolean isPassable(int node)
+	{
+		return weights[node] != Float.POSITIVE_INFINITY;
+	}
+
+	public float weight(int node)
+	{
+		return weights[node];
+	}
+
+	public int id(int node)
+	{
+		return ids == null ? node : ids[node];
+	}
+
+	public int indexOf(int id)
+	{
+		if (index == null)
+			return (id >= 0 && id < weights.length && isPassable(id)) ? id : -1;
+		int node = index.indexOf(id);
+		while (node >= 0 && !isPassable(node))
+			node = index.next(node); //a later node may share the id
+		return node;
+	}
+
+	public int maxDegree()
+	{
+		return maxDegree;
+	}
+
+	public int neighbors(int node, int[] out)
+	{
+		int n = 0;
+		for (int e = offsets[node], end = offsets[node + 1]; e < end; e++)
+			if (weights[targets[e]] != Float.POSITIVE_INFINITY)
+				out[n++] = targets[e];
+		return n;
+	}
+}
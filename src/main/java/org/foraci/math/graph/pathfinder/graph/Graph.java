@@ -0,0 +1,73 @@
+package org.foraci.math.graph.pathfinder.graph;
+
+/**
+ * A compact, primitive graph. Nodes are addressed by their <i>index</i> in
+ * the range <code>[0, size())</code>; an index may refer to an empty slot
+ * (for example a blocked grid cell), in which case the node is not passable.
+ * Each passable node also carries the client-supplied <code>id</code> used by
+ * <code>PathFinder.computeBestPath(int,int)</code>.
+ * <br/>Implementations are read-only once built, unless they document
+ * methods to change them, and may be shared by any number of path finders.
+ */
+public abstract class Graph
+{
+	/** Gets the number of node slots in this graph. */
+	public abstract int size();
+
+	/** Returns <code>true</code> if a node is present at <code>node</code>. */
+	public abstract boolean isPassable(int node);
+
+	/** The weight (to travel onto or off of) a node. */
+	public abstract float weight(int node);
+
+	/** The client-supplied identifier of a node. */
+	public abstract int id(int node);
+
+	/** The most neighbors any node in this graph may have. */
+	public abstract int maxDegree();
+
+	/**
+	 * Writes the indices of the direct neighbors of <code>node</code> into
+	 * <code>out</code>, which must hold at least <code>maxDegree()</code>
+	 * elements.
+	 *
+	 * @return the number of neighbors written.
+	 */
+	public abstract int neighbors(int node, int[] out);
+
+	/**
+	 * Gets a number that changes whenever the weights or passability of the
+	 * nodes change, so that results computed on this graph can be told
+	 * apart from results computed before a change. Graphs that never change
+	 * return 0.
+	 */
+	public long version()
+	{
+		return 0;
+	}
+
+	/**
+	 * Called by the path finders before each query, once the nodes it runs
+	 * between are known (either may be <code>-1</code>). Graphs that load
+	 * their nodes on demand use it to keep the nodes a query reaches from
+	 * being unloaded while it runs; this default does nothing.
+	 */
+	public void beginQuery(int start, int dest)
+	{
+	}
+
+	/**
+	 * Finds the index of the passable node with the given identifier. The
+	 * built-in graphs index their ids when constructed, making this a
+	 * constant-time lookup; this default scans every node.
+	 *
+	 * @return the node index, or <code>-1</code> if there is no such node.
+	 */
+	public int indexOf(int id)
+	{
+		for (int node = 0, n = size(); node < n; node++)
+			if (isPassable(node) && id(node) == id)
+				return node;
+		return -1;
+	}
+}
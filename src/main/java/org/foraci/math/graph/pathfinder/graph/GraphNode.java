@@ -0,0 +1,81 @@
+package org.foraci.math.graph.pathfinder.graph;
+
+import org.foraci.math.graph.pathfinder.PathNode;
+
+/**
+ * A lightweight <code>PathNode</code> view of one node of a compact
+ * <code>Graph</code>. Views are what path finders return in their best paths
+ * and hand to <code>PathCostEstimator</code>s.
+ */
+public class GraphNode extends PathNode
+{
+	protected final Graph graph;
+	protected int index; //index of the node in the graph
+
+	/**
+	 * Constructs a view of the node at <code>index</code> in
+	 * <code>graph</code>.
+	 */
+	public GraphNode(Graph graph, int index)
+	{
+		this.graph = graph;
+		this.index = index;
+	}
+
+	/**
+	 * Re-points this view at another node. Path finders use this on private
+	 * views they pass to cost estimators; nodes returned in a best path are
+	 * never re-pointed.
+	 */
+	public GraphNode at(int index)
+	{
+		this.index = index;
+		return this;
+	}
+
+	/** Gets the graph this node belongs to. */
+	public Graph graph()
+	{
+		return graph;
+	}
+
+	/** Gets the index of this node in its graph. */
+	public int index()
+	{
+		return index;
+	}
+
+	public int id()
+	{
+		return graph.id(index);
+	}
+
+	/** The weight (to travel onto or off of) this node. */
+	public float getWeight()
+	{
+		return graph.weight(index);
+	}
+
+	/** Gets the array of direct neighbors for this node. */
+	public PathNode[] getNeighbors()
+	{
+		int[] buf = new int[graph.maxDegree()];
+		int n = graph.neighbors(index, buf);
+		PathNode[] neigh = new PathNode[n];
+		for (int i = 0; i < n; i++)
+			neigh[i] = newNode(buf[i]);
+		return neigh;
+	}
+
+	/** Creates a view of the same kind as this one for another node. */
+	protected GraphNode newNode(int index)
+	{
+		return new GraphNode(graph, index);
+	}
+
+	/** String representation for this node. (May change!) */
+	public String toString()
+	{
+		return "(id=" + id() + ",weight=" + getWeight() + ")";
+	}
+}
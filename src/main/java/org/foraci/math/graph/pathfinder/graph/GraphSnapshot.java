@@ -0,0 +1,175 @@
+package org.foraci.math.graph.pathfinder.graph;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.foraci.math.graph.pathfinder.util.SnapshotReader;
+import org.foraci.math.graph.pathfinder.util.SnapshotWriter;
+
+/**
+ * Saves built graphs to snapshot files and loads them back. A snapshot holds
+ * a graph's arrays as they are in memory, including its id index, so loading
+ * one is a few bulk reads with no per-node work, instead of building the
+ * graph again. A <code>GridGraph</code> loads as a grid, so the grid path
+ * finders can use it; a <code>MappedGridGraph</code> loads as a
+ * <code>GridGraph</code> on the heap, and any other graph as a
+ * <code>CsrGraph</code> of its passable nodes.
+ * <br/>The weights a grid's blocked cells had before they were blocked are
+ * not saved; unblocking such a cell after loading gives it a weight of 1.0.
+ * <br/>Path finders with precomputed data of their own save it along with
+ * their graph, with <code>writeGraph()</code> and <code>readGraph()</code>.
+ *
+ * @see SnapshotWriter
+ */
+public final class GraphSnapshot
+{
+	/** The kind of snapshot holding a graph alone, "GRPH". */
+	public static final int KIND = 0x47525048;
+	/* graph types */
+	private static final int GRID = 1, CSR = 2;
+
+	private GraphSnapshot()
+	{
+	}
+
+	/**
+	 * Saves a graph to a snapshot file.
+	 *
+	 * @throws IOException
+	 *             if the file can not be written.
+	 */
+	public static void write(Graph graph, File file) throws IOException
+	{
+		try (SnapshotWriter out = new SnapshotWriter(file, KIND))
+		{
+			writeGraph(out, graph);
+		}
+	}
+
+	/**
+	 * Loads a graph saved with <code>write()</code>.
+	 *
+	 * @throws IOException
+	 *             if the file can not be read or does not hold a graph.
+	 */
+	public static Graph read(File file) throws IOException
+	{
+		try (SnapshotReader in = new SnapshotReader(file))
+		{
+			in.expectKind(KIND);
+			return readGraph(in);
+		}
+	}
+
+	/** Writes a graph into a snapshot being written. */
+	public static void writeGraph(SnapshotWriter out, Graph graph)
+		throws IOException
+	{
+		if (graph instanceof GridGraph)
+		{
+			GridGraph grid = (GridGraph) graph;
+			writeGrid(out, grid.rows(), grid.cols(), grid.weights(), grid
+				.ids(), grid.index());
+		}
+		else if (graph instanceof MappedGridGraph)
+		{
+			MappedGridGraph grid = (MappedGridGraph) graph;
+			float[] weights = new float[grid.size()];
+			for (int i = 0; i < weights.length; i++)
+				weights[i] = grid.weight(i);
+			writeGrid(out, grid.rows(), grid.cols(), weights, null, null);
+		}
+		else if (graph instanceof CsrGraph)
+		{
+			writeCsr(out, (CsrGraph) graph);
+		}
+		else
+		{ //take the adjacency as the graph reports it
+			int n = graph.size();
+			float[] weights = new float[n];
+			int[] ids = new int[n];
+			int[] offsets = new int[n + 1];
+			int[] targets = new int[16];
+			int[] neighbors = new int[graph.maxDegree()];
+			boolean identity = true;
+			for (int node = 0; node < n; node++)
+			{
+				boolean passable = graph.isPassable(node);
+				weights[node] = passable ? graph.weight(node)
+					: Float.POSITIVE_INFINITY;
+				ids[node] = passable ? graph.id(node) : node;
+				identity &= ids[node] == node;
+				int numNeigh = passable ? graph.neighbors(node, neighbors) : 0;
+				if (targets.length < offsets[node] + numNeigh)
+					targets = Arrays.copyOf(targets, Math.max(
+						offsets[node] + numNeigh, 2 * targets.length));
+				System.arraycopy(neighbors, 0, targets, offsets[node], numNeigh);
+				offsets[node + 1] = offsets[node] + numNeigh;
+			}
+			writeCsr(out, new CsrGraph(weights, identity ? null : ids, offsets,
+				Arrays.copyOf(targets, offsets[n])));
+		}
+	}
+
+	/**
+	 * Reads a graph written by <code>writeGraph()</code> from a snapshot
+	 * being read.
+	 *
+	 * @throws IOException
+	 *             if the snapshot does not hold a graph here.
+	 */
+	public static Graph readGraph(SnapshotReader in) throws IOException
+	{
+		int type = in.readInt();
+		if (type == GRID)
+		{
+			int rows = in.readInt(), cols = in.readInt();
+			float[] weights = in.readFloats();
+			int[] ids = in.readInts();
+			IdIndex index = ids == null ? null : IdIndex.read(in);
+			if (weights == null || weights.length != rows * cols)
+				throw new IOException("bad grid in snapshot");
+			return new GridGraph(weights, ids, index, rows, cols);
+		}
+		if (type == CSR)
+		{
+			int maxDegree = in.readInt();
+			float[] weights = in.readFloats();
+			int[] ids = in.readInts();
+			IdIndex index = ids == null ? null : IdIndex.read(in);
+			int[] offsets = in.readInts(), targets = in.readInts();
+			if (weights == null || offsets == null || targets == null
+				|| offsets.length != weights.length + 1)
+				throw new IOException("bad graph in snapshot");
+			return new CsrGraph(weights, ids, index, offsets, targets,
+				maxDegree);
+		}
+		throw new IOException("unknown graph type in snapshot: " + type);
+	}
+
+	private static void writeGrid(SnapshotWriter out, int rows, int cols,
+		float[] weights, int[] ids, IdIndex index) throws IOException
+	{
+		out.writeInt(GRID);
+		out.writeInt(rows);
+		out.writeInt(cols);
+		out.writeFloats(weights);
+		out.writeInts(ids);
+		if (ids != null)
+			index.write(out);
+	}
+
+	private static void writeCsr(SnapshotWriter out, CsrGraph csr)
+		throws IOException
+	{
+		out.writeInt(CSR);
+		out.writeInt(csr.maxDegree());
+		out.writeFloats(csr.weights());
+		out.writeInts(csr.ids());
+		if (csr.ids() != null)
+			csr.index().write(out);
+		out.writeInts(csr.offsets());
+		out.writeInts(csr.targets());
+	}
+}
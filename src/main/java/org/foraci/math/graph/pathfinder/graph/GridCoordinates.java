@@ -0,0 +1,15 @@
+package org.foraci.math.graph.pathfinder.graph;
+
+/**
+ * A graph whose nodes are cells of a grid, so that paths can be written out
+ * as <code>(x,y)</code> coordinates, as by
+ * <code>SearchContext.writePathCoordinates()</code>.
+ */
+public interface GridCoordinates
+{
+	/** Gets the column of a cell. */
+	int x(int node);
+
+	/** Gets the row of a cell. */
+	int y(int node);
+}
@@ -0,0 +1,176 @@
+package org.foraci.math.graph.pathfinder.graph;
+
+import org.foraci.math.graph.pathfinder.IndexCostEstimator;
+
+/**
+ * Distance heuristics for grids, on cell indices or on coordinates. Each
+ * metric is a final class with its own final <code>cost(int,int)</code>, so
+ * an engine holding one makes a monomorphic call that can be inlined. A cell
+ * index is split into coordinates with a multiplication by the reciprocal of
+ * the column count rather than a division.
+ * <br/>For a heuristic that never overestimates, <code>straight</code> and
+ * <code>diagonal</code> should be the cheapest cost of a straight and of a
+ * diagonal step anywhere on the grid.
+ */
+public abstract class GridDistance implements IndexCostEstimator
+{
+	final int cols;
+	private final long rowMultiplier;
+	private final int rowShift;
+
+	GridDistance(int cols)
+	{
+		this.cols = cols;
+		//floor(n / cols) == (n * m) >>> (31 + l) for every n in [0, 2^31),
+		//with l = ceil(log2(cols)) and m = ceil(2^(31 + l) / cols)
+		int l = 32 - Integer.numberOfLeadingZeros(cols - 1);
+		this.rowShift = 31 + l;
+		this.rowMultiplier = ((1L << rowShift) + cols - 1) / cols;
+	}
+
+	/**
+	 * Octile distance, for 8-connected grids: diagonal steps as far as they
+	 * go, then straight ones.
+	 */
+	public static GridDistance octile(GridGraph grid, float straight,
+		float diagonal)
+	{
+		return new Octile(grid.cols(), straight, diagonal);
+	}
+
+	/** Manhattan distance, for grids moved on in straight steps only. */
+	public static GridDistance manhattan(GridGraph grid, float straight)
+	{
+		return new Manhattan(grid.cols(), straight);
+	}
+
+	/** Euclidean (straight line) distance. */
+	public static GridDistance euclidean(GridGraph grid, float straight)
+	{
+		return new Euclidean(grid.cols(), straight);
+	}
+
+	/**
+	 * Chebyshev distance, for 8-connected grids where a diagonal step costs
+	 * the same as a straight one.
+	 */
+	public static GridDistance chebyshev(GridGraph grid, float straight)
+	{
+		return new Chebyshev(grid.cols(), straight);
+	}
+
+	/** Gets the row of a cell index, without dividing. */
+	final int row(int cell)
+	{
+		return (int) ((cell * rowMultiplier) >>> rowShift);
+	}
+
+	/**
+	 * Gets the distance between the cells <code>(x0,y0)</code> and
+	 * <code>(x1,y1)</code>.
+	 */
+	public final float cost(int x0, int y0, int x1, int y1)
+	{
+		return distance(Math.abs(x1 - x0), Math.abs(y1 - y0));
+	}
+
+	/**
+	 * Gets the distance covered by moving <code>dx</code> columns and
+	 * <code>dy</code> rows, both non-negative.
+	 */
+	public abstract float distance(int dx, int dy);
+
+	private static final class Octile extends GridDistance
+	{
+		private final float straight, diagonalExtra;
+
+		Octile(int cols, float straight, float diagonal)
+		{
+			super(cols);
+			this.straight = straight;
+			this.diagonalExtra = diagonal - straight;
+		}
+
+		public final float cost(int from, int to)
+		{
+			int fy = row(from), ty = row(to);
+			int dx = (from - fy * cols) - (to - ty * cols);
+			return distance(Math.abs(dx), Math.abs(fy - ty));
+		}
+
+		public float distance(int dx, int dy)
+		{
+			return straight * Math.max(dx, dy) + diagonalExtra
+				* Math.min(dx, dy);
+		}
+	}
+
+	private static final class Manhattan extends GridDistance
+	{
+		private final float straight;
+
+		Manhattan(int cols, float straight)
+		{
+			super(cols);
+			this.straight = straight;
+		}
+
+		public final float cost(int from, int to)
+		{
+			int fy = row(from), ty = row(to);
+			int dx = (from - fy * cols) - (to - ty * cols);
+			return distance(Math.abs(dx), Math.abs(fy - ty));
+		}
+
+		public float distance(int dx, int dy)
+		{
+			return straight * (dx + dy);
+		}
+	}
+
+	private static final class Euclidean extends GridDistance
+	{
+		private final float straight;
+
+		Euclidean(int cols, float straight)
+		{
+			super(cols);
+			this.straight = straight;
+		}
+
+		public final float cost(int from, int to)
+		{
+			int fy = row(from), ty = row(to);
+			int dx = (from - fy * cols) - (to - ty * cols);
+			return distance(Math.abs(dx), Math.abs(fy - ty));
+		}
+
+		public float distance(int dx, int dy)
+		{
+			return straight * (float) Math.sqrt(dx * dx + dy * dy);
+		}
+	}
+
+	private static final class Chebyshev extends GridDistance
+	{
+		private final float straight;
+
+		Chebyshev(int cols, float straight)
+		{
+			super(cols);
+			this.straight = straight;
+		}
+
+		public final float cost(int from, int to)
+		{
+			int fy = row(from), ty = row(to);
+			int dx = (from - fy * cols) - (to - ty * cols);
+			return distance(Math.abs(dx), Math.abs(fy - ty));
+		}
+
+		public float distance(int dx, int dy)
+		{
+			return straight * Math.max(dx, dy);
+		}
+	}
+}
@@ -0,0 +1,328 @@
+package org.foraci.math.graph.pathfinder.graph;
+
+import org.foraci.math.graph.pathfinder.util.IntIntHashMap;
+
+/**
+ * A graph representing a 2D grid of 8-connected cells. Only the cell weights
+ * are stored (plus the cell ids when they differ from the cell index);
+ * neighbors are derived from implicit offsets, so a grid costs 4 to 8 bytes
+ * per cell. The index of the cell at <code>(x,y)</code> is
+ * <code>y * cols + x</code>.
+ * <br/>Cells may be reweighted, blocked and unblocked in place with
+ * <code>setWeight()</code> and <code>setBlocked()</code>. Since neighbors are
+ * implicit, a change costs O(1) whatever the grid's size, and bumps
+ * <code>version()</code> so that caches can tell their entries are stale.
+ * Changes must not run concurrently with queries on the grid.
+ */
+public final class GridGraph extends Graph implements GridCoordinates
+{
+	/** Weight of a non-passable cell. */
+	public static final float BLOCKED = Float.POSITIVE_INFINITY;
+
+	private final int rows, cols;
+	private final float[] weights;
+	private final int[] ids; //null if every id equals its cell index
+	private final IdIndex index; //null if ids is null
+	private IntIntHashMap blockedWeights; //weight bits of blocked cells
+	private volatile long version;
+
+	/**
+	 * Constructs a grid from its cell weights (<code>BLOCKED</code> for a
+	 * non-passable cell) and, optionally, ids.
+	 *
+	 * @param ids
+	 *            the id of each cell, or <code>null</code> if the id of every
+	 *            cell is its index.
+	 */
+	public GridGraph(float[] weights, int[] ids, int rows, int cols)
+	{
+		if (weights.length != rows * cols)
+			throw new IllegalArgumentException("weights.length != rows * cols");
+		if (ids != null && ids.length != weights.length)
+			throw new IllegalArgumentException("ids.length != rows * cols");
+		this.rows = rows;
+		this.cols = cols;
+		this.weights = weights;
+		this.ids = ids;
+		this.index = ids == null ? null : new IdIndex(ids);
+	}
+
+	/** Constructs a grid whose id index is already built, from a snapshot. */
+	GridGraph(float[] weights, int[] ids, IdIndex index, int rows, int cols)
+	{
+		this.rows = rows;
+		this.cols = cols;
+		this.weights = weights;
+		this.ids = ids;
+		this.index = index;
+	}
+
+	/**
+	 * Builds a grid from a 2D array of <code>int</code>s representing graph
+	 * nodes, indexed <code>[row][column]</code>.
+	 *
+	 * @see #build(int[],int[],int,int)
+	 */
+	public static GridGraph build(int[][] arrGraph, int[][] arrIds)
+	{
+		return build(arrGraph, arrIds, false);
+	}
+
+	/**
+	 * Builds a grid from a 2D array of <code>int</code> weights, indexed
+	 * <code>[row][column]</code>.
+	 *
+	 * @see #buildWeighted(int[],int[],int,int)
+	 */
+	public static GridGraph buildWeighted(int[][] arrGraph, int[][] arrIds)
+	{
+		return build(arrGraph, arrIds, true);
+	}
+
+	/**
+	 * Builds a grid from an array of <code>int</code>s representing graph
+	 * nodes. A value of <code>PathFinder.WEIGHT_INF</code> indicates a
+	 * non-passable area, all other values are considered to have a weight of
+	 * 1.0.
+	 */
+	public static GridGraph build(int[] arrGraph, int[] arrIds, int rows,
+		int cols)
+	{
+		return build(arrGraph, arrIds, rows, cols, false);
+	}
+
+	/**
+	 * Builds a grid from an array of <code>int</code> weights. A value of
+	 * <code>PathFinder.WEIGHT_INF</code> indicates a non-passable area.
+	 */
+	public static GridGraph buildWeighted(int[] arrGraph, int[] arrIds,
+		int rows, int cols)
+	{
+		return build(arrGraph, arrIds, rows, cols, true);
+	}
+
+	private static GridGraph build(int[][] arrGraph, int[][] arrIds,
+		boolean weighted)
+	{
+		//fill the weights straight from the rows, without a flat copy
+		int rows = arrGraph.length;
+		int cols = arrGraph[0].length;
+		float[] weights = new float[rows * cols];
+		int[] ids = null;
+		for (int j = 0; j < rows; j++)
+			for (int i = 0; i < cols; i++)
+			{
+				int node = i + j * cols;
+				weights[node] = weight(arrGraph[j][i], weighted);
+				if (ids == null && arrIds[j][i] != node)
+				{ //ids only need copying once one differs from its index
+					ids = new int[rows * cols];
+					for (int k = 0; k < node; k++)
+						ids[k] = k;
+				}
+				if (ids != null)
+					ids[node] = arrIds[j][i];
+			}
+		return new GridGraph(weights, ids, rows, cols);
+	}
+
+	private static GridGraph build(int[] arrGraph, int[] arrIds, int rows,
+		int cols, boolean weighted)
+	{
+		int n = rows * cols;
+		float[] weights = new float[n];
+		boolean identity = true;
+		for (int i = 0; i < n; i++)
+		{
+			weights[i] = weight(arrGraph[i], weighted);
+			identity &= arrIds[i] == i;
+		}
+		return new GridGraph(weights, identity ? null : arrIds.clone(), rows,
+			cols);
+	}
+
+	private static float weight(int value, boolean weighted)
+	{
+		if (value == Integer.MAX_VALUE)
+			return BLOCKED;
+		return weighted ? (float) value : 1.0f;
+	}
+
+	public int rows()
+	{
+		return rows;
+	}
+
+	public int cols()
+	{
+		return cols;
+	}
+
+	/** Gets the column of a cell. */
+	public int x(int node)
+	{
+		return node % cols;
+	}
+
+	/** Gets the row of a cell. */
+	public int y(int node)
+	{
+		return node / cols;
+	}
+
+	/** Gets the index of the cell at <code>(x,y)</code>. */
+	public int node(int x, int y)
+	{
+		return y * cols + x;
+	}
+
+	/** Returns <code>true</code> if <code>(x,y)</code> is on the grid. */
+	public boolean contains(int x, int y)
+	{
+		return x >= 0 && y >= 0 && x < cols && y < rows;
+	}
+
+	/** Returns <code>true</code> if <code>(x,y)</code> is a passable cell. */
+	public boolean isPassable(int x, int y)
+	{
+		return contains(x, y) && weights[y * cols + x] != BLOCKED;
+	}
+
+	/**
+	 * Sets the weight of the cell at <code>(x,y)</code>. A weight of
+	 * <code>BLOCKED</code> blocks the cell, as <code>setBlocked()</code>
+	 * does.
+	 *
+	 * @throws IllegalArgumentException
+	 *             if the weight is negative or NaN.
+	 */
+	public void setWeight(int x, int y, float weight)
+	{
+		if (!(weight >= 0))
+			throw new IllegalArgumentException("bad weight: " + weight);
+		if (weight == BLOCKED)
+		{
+			setBlocked(x, y, true);
+			return;
+		}
+		checkCell(x, y);
+		weights[y * cols + x] = weight;
+		version++;
+	}
+
+	/**
+	 * Blocks or unblocks the cell at <code>(x,y)</code>. A blocked cell keeps
+	 * its weight for when it is unblocked; a cell that was never passable is
+	 * unblocked with a weight of 1.0.
+	 */
+	public void setBlocked(int x, int y, boolean blocked)
+	{
+		checkCell(x, y);
+		int node = y * cols + x;
+		if (blocked == !isPassable(node))
+			return;
+		if (blocked)
+		{
+			if (blockedWeights == null)
+				blockedWeights = new IntIntHashMap();
+			blockedWeights.put(node, Float.floatToRawIntBits(weights[node]));
+			weights[node] = BLOCKED;
+		}
+		else
+		{
+			int bits = blockedWeights == null ? -1 : blockedWeights.get(node);
+			weights[node] = bits < 0 ? 1.0f : Float.intBitsToFloat(bits);
+		}
+		version++;
+	}
+
+	/**
+	 * Gets the number of changes made to the grid since it was built. Two
+	 * equal readings mean the weights between them did not change.
+	 */
+	public long version()
+	{
+		return version;
+	}
+
+	private void checkCell(int x, int y)
+	{
+		if (!contains(x, y))
+			throw new IndexOutOfBoundsException("(" + x + "," + y
+				+ ") is not on the grid");
+	}
+
+	float[] weights()
+	{
+		return weights;
+	}
+
+	int[] ids()
+	{
+		return ids;
+	}
+
+	IdIndex index()
+	{
+		return index;
+	}
+
+	public int size()
+	{
+		return weights.length;
+	}
+
+	public boolean isPassable(int node)
+	{
+		return weights[node] != BLOCKED;
+	}
+
+	public float weight(int node)
+	{
+		return weights[node];
+	}
+
+	public int id(int node)
+	{
+		return ids == null ? node : ids[node];
+	}
+
+	public int indexOf(int id)
+	{
+		if (index == null)
+			return (id >= 0 && id < weights.length && isPassable(id)) ? id : -1;
+		int node = index.indexOf(id);
+		while (node >= 0 && !isPassable(node))
+			node = index.next(node); //a later node may share the id
+		return node;
+	}
+
+	public int maxDegree()
+	{
+		return 8;
+	}
+
+	public int neighbors(int node, int[] out)
+	{
+		int x = node % cols, y = node / cols;
+		boolean l = x > 0, r = x < cols - 1, t = y > 0, b = y < rows - 1;
+		int n = 0;
+		if (l && weights[node - 1] != BLOCKED) //left
+			out[n++] = node - 1;
+		if (r && weights[node + 1] != BLOCKED) //right
+			out[n++] = node + 1;
+		if (t && weights[node - cols] != BLOCKED) //top
+			out[n++] = node - cols;
+		if (b && weights[node + cols] != BLOCKED) //bottom
+			out[n++] = node + cols;
+		if (t && l && weights[node - cols - 1] != BLOCKED) //top left
+			out[n++] = node - cols - 1;
+		if (t && r && weights[node - cols + 1] != BLOCKED) //top right
+			out[n++] = node - cols + 1;
+		if (b && l && weights[node + cols - 1] != BLOCKED) //bottom left
+			out[n++] = node + cols - 1;
+		if (b && r && weights[node + cols + 1] != BLOCKED) //bottom right
+			out[n++] = node + cols + 1;
+		return n;
+	}
+}
@@ -0,0 +1,49 @@
+package org.foraci.math.graph.pathfinder.graph;
+
+import org.foraci.math.graph.pathfinder.IndexCostEstimator;
+
+/**
+ * The cost of a step between neighboring cells of a weighted grid: the
+ * length of the step, straight or diagonal, times the mean weight of the two
+ * cells. Whether a step is straight is told from the difference of the cell
+ * indices, so no division is needed except on grids two columns wide.
+ */
+public final class GridStepCost implements IndexCostEstimator
+{
+	private final GridGraph grid;
+	private final int cols;
+	private final float straight, diagonal;
+
+	/**
+	 * Constructs the step cost of a grid.
+	 *
+	 * @param straight
+	 *            the length of a step to a side.
+	 * @param diagonal
+	 *            the length of a step to a corner.
+	 */
+	public GridStepCost(GridGraph grid, float straight, float diagonal)
+	{
+		this.grid = grid;
+		this.cols = grid.cols();
+		this.straight = straight;
+		this.diagonal = diagonal;
+	}
+
+	public float cost(int from, int to)
+	{
+		return length(from, to) * 0.5f * (grid.weight(from) + grid.weight(to));
+	}
+
+	/** Gets the length of the step between neighbors. */
+	private float length(int from, int to)
+	{
+		int d = from - to;
+		if (d == cols || d == -cols)
+			return straight;
+		if (d != 1 && d != -1)
+			return diagonal;
+		//on a grid 2 columns wide a diagonal step differs by 1 too
+		return cols != 2 || from / cols == to / cols ? straight : diagonal;
+	}
+}
@@ -0,0 +1,162 @@
+package org.foraci.math.graph.pathfinder.graph;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.foraci.math.graph.pathfinder.util.SnapshotReader;
+import org.foraci.math.graph.pathfinder.util.SnapshotWriter;
+
+/**
+ * Maps client-supplied node ids to node indices in constant time. Dense ids
+ * are looked up in a flat table offset by the smallest id; arbitrary ids use
+ * an open-addressing hash table with linear probing. When an id appears more
+ * than once the lowest index is found, and the others are chained after it
+ * in index order, so that a graph can skip those that are blocked.
+ */
+final class IdIndex
+{
+	private final boolean dense;
+	private final int minId;
+	private final int mask;
+	private final int[] keys; //ids, by hash slot (unused if dense)
+	private final int[] values; //indices, by table slot; -1 if empty
+	private final int[] next; //next index with the same id; null if none
+
+	/**
+	 * Builds an index of <code>ids</code>, where <code>ids[i]</code> is the id
+	 * of node <code>i</code>.
+	 */
+	IdIndex(int[] ids)
+	{
+		int n = ids.length;
+		int min = Integer.MAX_VALUE, max = Integer.MIN_VALUE;
+		for (int id : ids)
+		{
+			min = Math.min(min, id);
+			max = Math.max(max, id);
+		}
+		long range = n == 0 ? 0 : (long) max - min + 1;
+		int[] chained = null;
+		if (range <= 2L * n)
+		{ //dense enough for a flat table
+			dense = true;
+			minId = min;
+			mask = 0;
+			keys = null;
+			values = new int[(int) range];
+			Arrays.fill(values, -1);
+			//backwards, so that each id's chain ends up in index order
+			for (int i = n - 1; i >= 0; i--)
+			{
+				int prev = values[ids[i] - min];
+				values[ids[i] - min] = i;
+				if (prev >= 0)
+					chained = chain(chained, n, i, prev);
+			}
+		}
+		else
+		{
+			dense = false;
+			minId = 0;
+			int cap = Integer.highestOneBit(Math.max(n, 1) * 2 - 1) << 1;
+			mask = cap - 1;
+			keys = new int[cap];
+			values = new int[cap];
+			Arrays.fill(values, -1);
+			for (int i = n - 1; i >= 0; i--)
+			{
+				int slot = hash(ids[i]) & mask;
+				while (values[slot] >= 0 && keys[slot] != ids[i])
+					slot = (slot + 1) & mask;
+				int prev = values[slot];
+				keys[slot] = ids[i];
+				values[slot] = i;
+				if (prev >= 0)
+					chained = chain(chained, n, i, prev);
+			}
+		}
+		next = chained;
+	}
+
+	private IdIndex(boolean dense, int minId, int[] keys, int[] values,
+		int[] next)
+	{
+		this.dense = dense;
+		this.minId = minId;
+		this.mask = dense ? 0 : values.length - 1;
+		this.keys = keys;
+		this.values = values;
+		this.next = next;
+	}
+
+	/** Links index <code>i</code> to the next one with the same id. */
+	private static int[] chain(int[] next, int n, int i, int following)
+	{
+		if (next == null)
+		{
+			next = new int[n];
+			Arrays.fill(next, -1);
+		}
+		next[i] = following;
+		return next;
+	}
+
+	/** Reads an index saved by <code>write()</code>. */
+	static IdIndex read(SnapshotReader in) throws IOException
+	{
+		boolean dense = in.readInt() != 0;
+		int minId = in.readInt();
+		int[] keys = in.readInts();
+		int[] values = in.readInts();
+		return new IdIndex(dense, minId, keys, values, in.readInts());
+	}
+
+	/** Saves this index as its tables, so it need not be rebuilt. */
+	void write(SnapshotWriter out) throws IOException
+	{
+		out.writeInt(dense ? 1 : 0);
+		out.writeInt(minId);
+		out.writeInts(keys);
+		out.writeInts(values);
+		out.writeInts(next);
+	}
+
+	/**
+	 * Gets the lowest index of a node with the given id.
+	 *
+	 * @return the node index, or <code>-1</code> if there is no such id.
+	 */
+	int indexOf(int id)
+	{
+		if (dense)
+		{
+			long i = (long) id - minId;
+			return (i >= 0 && i < values.length) ? values[(int) i] : -1;
+		}
+		int slot = hash(id) & mask;
+		int value;
+		while ((value = values[slot]) >= 0)
+		{
+			if (keys[slot] == id)
+				return value;
+			slot = (slot + 1) & mask;
+		}
+		return -1;
+	}
+
+	/**
+	 * Gets the next index after <code>node</code> of a node with the same id.
+	 *
+	 * @return the node index, or <code>-1</code> if there is none.
+	 */
+	int next(int node)
+	{
+		return next == null ? -1 : next[node];
+	}
+
+	private static int hash(int id)
+	{
+		int h = id * 0x9E3779B9; //Fibonacci hashing spreads sequential ids
+		return h ^ (h >>> 16);
+	}
+}
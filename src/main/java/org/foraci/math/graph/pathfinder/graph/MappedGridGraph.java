@@ -0,0 +1,241 @@
+package org.foraci.math.graph.pathfinder.graph;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import org.foraci.math.graph.pathfinder.PathFinder;
+
+/**
+ * A read-only grid of 8-connected cells whose weights are read straight from
+ * a memory-mapped file, for maps too large to copy onto the heap. Opening a
+ * grid maps the file and reads its header, and nothing else, so the time to
+ * open it and the heap it takes do not grow with the map; the operating
+ * system pages the cells in as the searches touch them.
+ * <br/>A grid file holds a 16 byte header followed by the cell weights,
+ * row by row, all big-endian:
+ * <pre>
+ *   int   magic, 0x4A504647 ("JPFG")
+ *   short format version, 1
+ *   short bytes per cell, 1 or 2
+ *   int   rows
+ *   int   cols
+ *   cells unsigned weights; all bits set (0xFF or 0xFFFF) marks a blocked cell
+ * </pre>
+ * The id of every cell is its index, <code>y * cols + x</code>. Grids are
+ * searched with the path finders built from any <code>Graph</code>, such as
+ * <code>AStarPathFinder.buildPathFinder()</code>.
+ */
+public final class MappedGridGraph extends Graph implements GridCoordinates
+{
+	/** The magic number that starts a grid file. */
+	public static final int MAGIC = 0x4A504647;
+	private static final int FORMAT_VERSION = 1;
+	private static final int HEADER_SIZE = 16;
+	/* cells are mapped in chunks of 1GB, since one mapping is limited to 2GB */
+	private static final int CHUNK_SHIFT = 30;
+	private static final long CHUNK_MASK = (1L << CHUNK_SHIFT) - 1;
+
+	private final int rows, cols;
+	private final int cellBytes;
+	private final int blocked; //raw value of a blocked cell
+	private final ByteBuffer[] chunks;
+
+	private MappedGridGraph(int rows, int cols, int cellBytes,
+		ByteBuffer[] chunks)
+	{
+		this.rows = rows;
+		this.cols = cols;
+		this.cellBytes = cellBytes;
+		this.blocked = cellBytes == 1 ? 0xFF : 0xFFFF;
+		this.chunks = chunks;
+	}
+
+	/**
+	 * Maps a grid file into memory.
+	 *
+	 * @throws IOException
+	 *             if the file can not be read or is not a grid file.
+	 */
+	public static MappedGridGraph open(File file) throws IOException
+	{
+		try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+			FileChannel channel = raf.getChannel())
+		{
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+			while (header.hasRemaining())
+				if (channel.read(header, header.position()) < 0)
+					throw new IOException(file + " is not a grid file");
+			header.flip();
+			int magic = header.getInt(), version = header.getShort();
+			int cellBytes = header.getShort();
+			int rows = header.getInt(), cols = header.getInt();
+			if (magic != MAGIC || version != FORMAT_VERSION)
+				throw new IOException(file + " is not a grid file");
+			if ((cellBytes != 1 && cellBytes != 2) || rows <= 0 || cols <= 0
+				|| (long) rows * cols > Integer.MAX_VALUE)
+				throw new IOException("bad grid header in " + file);
+			long length = (long) rows * cols * cellBytes;
+			if (channel.size() < HEADER_SIZE + length)
+				throw new IOException(file + " is truncated");
+			ByteBuffer[] chunks = new ByteBuffer[(int) ((length + CHUNK_MASK)
+				>>> CHUNK_SHIFT)];
+			for (int i = 0; i < chunks.length; i++)
+			{
+				long offset = (long) i << CHUNK_SHIFT;
+				chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY,
+					HEADER_SIZE + offset, Math.min(length - offset,
+						1L << CHUNK_SHIFT));
+			}
+			//the mappings stay valid once the channel is closed
+			return new MappedGridGraph(rows, cols, cellBytes, chunks);
+		}
+	}
+
+	/**
+	 * Writes a grid file from an array of <code>int</code> weights, using one
+	 * byte per cell if every weight fits and two otherwise. A value of
+	 * <code>PathFinder.WEIGHT_INF</code> indicates a non-passable area.
+	 *
+	 * @throws IllegalArgumentException
+	 *             if a weight is negative or does not fit in two bytes.
+	 * @throws IOException
+	 *             if the file can not be written.
+	 */
+	public static void write(File file, int[] arrGraph, int rows, int cols)
+		throws IOException
+	{
+		if (arrGraph.length != rows * cols)
+			throw new IllegalArgumentException("arrGraph.length != rows * cols");
+		int max = 0;
+		for (int weight : arrGraph)
+			if (weight != PathFinder.WEIGHT_INF)
+			{
+				if (weight < 0 || weight >= 0xFFFF)
+					throw new IllegalArgumentException("bad weight: " + weight);
+				max = Math.max(max, weight);
+			}
+		int cellBytes = max < 0xFF ? 1 : 2;
+		try (DataOutputStream out = new DataOutputStream(
+			new BufferedOutputStream(new FileOutputStream(file), 1 << 16)))
+		{
+			out.writeInt(MAGIC);
+			out.writeShort(FORMAT_VERSION);
+			out.writeShort(cellBytes);
+			out.writeInt(rows);
+			out.writeInt(cols);
+			for (int weight : arrGraph)
+			{
+				int raw = weight == PathFinder.WEIGHT_INF ? -1 : weight;
+				if (cellBytes == 1)
+					out.writeByte(raw);
+				else
+					out.writeShort(raw);
+			}
+		}
+	}
+
+	public int rows()
+	{
+		return rows;
+	}
+
+	public int cols()
+	{
+		return cols;
+	}
+
+	/** Gets the number of bytes each cell takes in the file. */
+	public int cellBytes()
+	{
+		return cellBytes;
+	}
+
+	/** Gets the column of a cell. */
+	public int x(int node)
+	{
+		return node % cols;
+	}
+
+	/** Gets the row of a cell. */
+	public int y(int node)
+	{
+		return node / cols;
+	}
+
+	/** Gets the index of the cell at <code>(x,y)</code>. */
+	public int node(int x, int y)
+	{
+		return y * cols + x;
+	}
+
+	/** Reads the raw weight of a cell from the file. */
+	private int raw(int node)
+	{
+		long offset = (long) node * cellBytes;
+		ByteBuffer chunk = chunks[(int) (offset >>> CHUNK_SHIFT)];
+		int position = (int) (offset & CHUNK_MASK);
+		return cellBytes == 1 ? chunk.get(position) & 0xFF : chunk
+			.getShort(position) & 0xFFFF;
+	}
+
+	public int size()
+	{
+		return rows * cols;
+	}
+
+	public boolean isPassable(int node)
+	{
+		return raw(node) != blocked;
+	}
+
+	public float weight(int node)
+	{
+		int raw = raw(node);
+		return raw == blocked ? GridGraph.BLOCKED : raw;
+	}
+
+	public int id(int node)
+	{
+		return node;
+	}
+
+	public int indexOf(int id)
+	{
+		return (id >= 0 && id < size() && isPassable(id)) ? id : -1;
+	}
+
+	public int maxDegree()
+	{
+		return 8;
+	}
+
+	public int neighbors(int node, int[] out)
+	{
+		int x = node % cols, y = node / cols;
+		boolean l = x > 0, r = x < cols - 1, t = y > 0, b = y < rows - 1;
+		int n = 0;
+		if (l && raw(node - 1) != blocked) //left
+			out[n++] = node - 1;
+		if (r && raw(node + 1) != blocked) //right
+			out[n++] = node + 1;
+		if (t && raw(node - cols) != blocked) //top
+			out[n++] = node - cols;
+		if (b && raw(node + cols) != blocked) //bottom
+			out[n++] = node + cols;
+		if (t && l && raw(node - cols - 1) != blocked) //top left
+			out[n++] = node - cols - 1;
+		if (t && r && raw(node - cols + 1) != blocked) //top right
+			out[n++] = node - cols + 1;
+		if (b && l && raw(node + cols - 1) != blocked) //bottom left
+			out[n++] = node + cols - 1;
+		if (b && r && raw(node + cols + 1) != blocked) //bottom right
+			out[n++] = node + cols + 1;
+		return n;
+	}
+}
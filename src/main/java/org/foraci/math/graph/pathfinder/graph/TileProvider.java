@@ -0,0 +1,22 @@
+package org.foraci.math.graph.pathfinder.graph;
+
+/**
+ * Supplies the cells of a <code>ChunkedGridGraph</code> one tile at a time,
+ * as searches reach them. Tiles are square, <code>size</code> cells on a
+ * side, and the tile at <code>(tileX,tileY)</code> covers the cells from
+ * <code>(tileX * size, tileY * size)</code> on.
+ */
+public interface TileProvider
+{
+	/**
+	 * Fills in the cell weights of a tile, row by row, with
+	 * <code>GridGraph.BLOCKED</code> for cells that can not be passed. Cells
+	 * outside the world should be blocked.
+	 *
+	 * @param weights
+	 *            receives the <code>size * size</code> weights; it holds
+	 *            those of a tile unloaded before, which must all be
+	 *            overwritten.
+	 */
+	void loadTile(int tileX, int tileY, int size, float[] weights);
+}
@@ -0,0 +1,204 @@
+package org.foraci.math.graph.pathfinder.hpa;
+
+import java.util.Arrays;
+
+import org.foraci.math.graph.pathfinder.PathCostEstimator;
+import org.foraci.math.graph.pathfinder.SearchContext;
+import org.foraci.math.graph.pathfinder.graph.GraphNode;
+import org.foraci.math.graph.pathfinder.graph.GridGraph;
+import org.foraci.math.graph.pathfinder.util.IndexedMinHeap;
+
+/**
+ * Scratch state for searches confined to one cluster of a grid, indexed by
+ * the cell's position within the cluster. One instance serves one thread.
+ */
+final class ClusterSearch
+{
+	private final GridGraph grid;
+	private final int size; //cluster side
+	private final float[] g;
+	private final int[] parent; //local index of the parent, or -1
+	private final int[] stamp;
+	private final boolean[] closed;
+	private int generation;
+	private final IndexedMinHeap open;
+	private final int[] neighbors;
+	private final GraphNode from, to, goal;
+	/* bounds of the current cluster */
+	private int x0, y0, x1, y1;
+
+	ClusterSearch(GridGraph grid, int size)
+	{
+		this.grid = grid;
+		this.size = size;
+		g = new float[size * size];
+		parent = new int[size * size];
+		stamp = new int[size * size];
+		closed = new boolean[size * size];
+		open = new IndexedMinHeap(size * size);
+		neighbors = new int[grid.maxDegree()];
+		from = new GraphNode(grid, 0);
+		to = new GraphNode(grid, 0);
+		goal = new GraphNode(grid, 0);
+	}
+
+	/** Confines the following searches to the cluster at <code>(x0,y0)</code>. */
+	void bind(int x0, int y0)
+	{
+		this.x0 = x0;
+		this.y0 = y0;
+		this.x1 = Math.min(x0 + size, grid.cols());
+		this.y1 = Math.min(y0 + size, grid.rows());
+	}
+
+	private int local(int cell)
+	{
+		return (grid.y(cell) - y0) * size + grid.x(cell) - x0;
+	}
+
+	private int cell(int local)
+	{
+		return grid.node(x0 + local % size, y0 + local / size);
+	}
+
+	private boolean inside(int cell)
+	{
+		int x = grid.x(cell), y = grid.y(cell);
+		return x >= x0 && y >= y0 && x < x1 && y < y1;
+	}
+
+	/**
+	 * Computes the costs from <code>source</code> to every cell of the
+	 * cluster, or to <code>source</code> from every cell if
+	 * <code>reverse</code> is set. Read them with <code>cost()</code>.
+	 */
+	void sweep(int source, boolean reverse, PathCostEstimator successorCost)
+	{
+		search(source, -1, reverse, successorCost, null, null);
+	}
+
+	/**
+	 * Sweeps as <code>sweep(int,boolean,PathCostEstimator)</code>, counting
+	 * each expansion against the limits of <code>limits</code>, if not
+	 * <code>null</code>, and stopping once one is reached.
+	 */
+	void sweep(int source, boolean reverse, PathCostEstimator successorCost,
+		SearchContext limits)
+	{
+		search(source, -1, reverse, successorCost, null, limits);
+	}
+
+	/**
+	 * Finds the cheapest path from <code>start</code> to <code>dest</code>
+	 * within the cluster, counting each expansion against the limits of
+	 * <code>limits</code>, if not <code>null</code>.
+	 *
+	 * @return the cost, or <code>Float.POSITIVE_INFINITY</code> if there is
+	 *         no path or a limit was reached. The path can be read with
+	 *         <code>path()</code>.
+	 */
+	float search(int start, int dest, PathCostEstimator successorCost,
+		PathCostEstimator pathCost, SearchContext limits)
+	{
+		return search(start, dest, false, successorCost, pathCost, limits);
+	}
+
+	/**
+	 * Gets the cost to <code>cell</code> found by the last search, or
+	 * <code>Float.POSITIVE_INFINITY</code> if it was not reached.
+	 */
+	float cost(int cell)
+	{
+		if (!inside(cell))
+			return Float.POSITIVE_INFINITY;
+		int i = local(cell);
+		return stamp[i] == generation && closed[i] ? g[i]
+			: Float.POSITIVE_INFINITY;
+	}
+
+	/**
+	 * Writes the cells of the path to <code>dest</code> found by the last
+	 * search into <code>out</code> from <code>offset</code>, leaving out the
+	 * start cell.
+	 *
+	 * @return the number of cells written.
+	 */
+	int path(int dest, int[] out, int offset)
+	{
+		int length = 0;
+		for (int i = parent[local(dest)]; i >= 0; i = parent[i])
+			length++;
+		for (int i = local(dest), j = offset + length; j > offset; i = parent[i])
+			out[--j] = cell(i);
+		return length;
+	}
+
+	private float search(int start, int dest, boolean reverse,
+		PathCostEstimator successorCost, PathCostEstimator pathCost,
+		SearchContext limits)
+	{
+		if (++generation == 0)
+		{
+			Arrays.fill(stamp, 0);
+			generation = 1;
+		}
+		open.clear();
+		if (dest >= 0)
+			goal.at(dest);
+		int s = local(start);
+		g[s] = 0;
+		parent[s] = -1;
+		closed[s] = false;
+		stamp[s] = generation;
+		open.add(s, dest >= 0 ? pathCost.cost(from.at(start), goal) : 0);
+		while (!open.isEmpty())
+		{
+			if (limits != null && limits.limitReached())
+				return Float.POSITIVE_INFINITY;
+			int best = open.poll();
+			closed[best] = true;
+			int bestCell = cell(best);
+			if (bestCell == dest)
+				return g[best];
+			int numNeigh = grid.neighbors(bestCell, neighbors);
+			for (int k = 0; k < numNeigh; k++)
+			{
+				int succCell = neighbors[k];
+				if (!inside(succCell))
+					continue;
+				int succ = local(succCell);
+				float newCost = g[best] + (reverse ? successorCost.cost(
+					to.at(succCell), from.at(bestCell)) : successorCost.cost(
+					from.at(bestCell), to.at(succCell)));
+				if (stamp[succ] == generation)
+				{
+					if (g[succ] <= newCost)
+						continue;
+					g[succ] = newCost;
+					parent[succ] = best;
+					if (closed[succ])
+					{ //only with an inconsistent heuristic
+						closed[succ] = false;
+						open.add(succ, newCost + heuristic(succCell, dest,
+							pathCost));
+					}
+					else
+						open.decreaseKey(succ, newCost + heuristic(succCell,
+							dest, pathCost));
+					continue;
+				}
+				stamp[succ] = generation;
+				closed[succ] = false;
+				g[succ] = newCost;
+				parent[succ] = best;
+				open.add(succ, newCost + heuristic(succCell, dest, pathCost));
+			}
+		}
+		return Float.POSITIVE_INFINITY;
+	}
+
+	private float heuristic(int cell, int dest, PathCostEstimator pathCost)
+	{
+		return dest >= 0 ? pathCost.cost(to.at(cell), goal) : 0;
+	}
+}
@@ -0,0 +1,79 @@
+package org.foraci.math.graph.pathfinder.hpa;
+
+import java.util.LinkedList;
+
+import org.foraci.math.graph.pathfinder.PathNode;
+
+/**
+ * An abstract path found by <code>HierarchicalPathFinder</code>: the
+ * entrances it passes through, refined into cells one segment at a time on
+ * request. The segments, in order, make up the whole path, so a caller may
+ * start along the first one before the rest are refined. Refining uses the
+ * calling thread's scratch state of the path finder, and must not overlap a
+ * rebuild of its clusters.
+ */
+public final class HierarchicalPath
+{
+	private final HierarchicalPathFinder finder;
+	private final int[] waypoints; //cells
+	private final float cost;
+	private int next; //index of the waypoint that ends the next segment
+
+	HierarchicalPath(HierarchicalPathFinder finder, int[] waypoints,
+		float cost)
+	{
+		this.finder = finder;
+		this.waypoints = waypoints;
+		this.cost = cost;
+		this.next = 1;
+	}
+
+	/** Gets the cost of the whole path. */
+	public float getCost()
+	{
+		return cost;
+	}
+
+	/**
+	 * Gets the number of waypoints: the start, the entrances passed and the
+	 * destination.
+	 */
+	public int getWaypointCount()
+	{
+		return waypoints.length;
+	}
+
+	/** Gets the id of the node at waypoint <code>i</code>. */
+	public int getWaypointId(int i)
+	{
+		return finder.grid().id(waypoints[i]);
+	}
+
+	/** Returns <code>true</code> if there are segments left to refine. */
+	public boolean hasNextSegment()
+	{
+		return next < waypoints.length || (next == 1 && waypoints.length == 1);
+	}
+
+	/**
+	 * Refines the next segment into the nodes it passes. The first segment
+	 * starts with the start node; each later one starts just after the end
+	 * of the previous one.
+	 *
+	 * @return the nodes, or <code>null</code> if the whole path has been
+	 *         refined.
+	 */
+	public LinkedList<PathNode> nextSegment()
+	{
+		if (!hasNextSegment())
+			return null;
+		LinkedList<PathNode> segment = new LinkedList<>();
+		if (next == 1)
+			segment.add(finder.node(waypoints[0]));
+		if (waypoints.length > 1)
+			for (int cell : finder.refine(waypoints[next - 1], waypoints[next]))
+				segment.add(finder.node(cell));
+		next++;
+		return segment;
+	}
+}
@@ -0,0 +1,841 @@
+package org.foraci.math.graph.pathfinder.hpa;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.IntConsumer;
+
+import org.foraci.math.graph.pathfinder.NoPathFoundException;
+import org.foraci.math.graph.pathfinder.PathCostEstimator;
+import org.foraci.math.graph.pathfinder.PathFinder;
+import org.foraci.math.graph.pathfinder.SearchContext;
+import org.foraci.math.graph.pathfinder.SearchResult;
+import org.foraci.math.graph.pathfinder.graph.Graph;
+import org.foraci.math.graph.pathfinder.graph.GraphNode;
+import org.foraci.math.graph.pathfinder.graph.GraphSnapshot;
+import org.foraci.math.graph.pathfinder.graph.GridGraph;
+import org.foraci.math.graph.pathfinder.util.IndexedMinHeap;
+import org.foraci.math.graph.pathfinder.util.IntIntHashMap;
+import org.foraci.math.graph.pathfinder.util.ParallelRange;
+import org.foraci.math.graph.pathfinder.util.SnapshotReader;
+import org.foraci.math.graph.pathfinder.util.SnapshotWriter;
+
+/**
+ * Path finder using hierarchical path-finding A* (HPA*, Botea, M&uuml;ller
+ * and Schaeffer, 2004) on large grids. The grid is cut into square clusters.
+ * Where two clusters meet, <i>entrances</i> are placed on each stretch of
+ * passable cells, and the cheapest paths between the entrances of each
+ * cluster are precomputed. A query searches this small abstract graph first
+ * and then refines each abstract edge into cells with a search confined to
+ * one cluster, so neither step touches more than a small part of the grid.
+ * <br/>Paths are near-optimal: they cross cluster borders only at entrances.
+ * Every path that exists in the grid is found.
+ * <br/><code>computeAbstractPath()</code> returns the abstract path only,
+ * to be refined a segment at a time while the caller starts moving. After
+ * cells of the grid change (see <code>GridGraph.setWeight()</code>),
+ * <code>cellsChanged()</code> rebuilds only the clusters around them.
+ * Rebuilds must not run concurrently with queries.
+ * <br/>Building the clusters searches the whole grid once.
+ * <code>writeSnapshot()</code> saves the grid and the clusters so that
+ * <code>readSnapshot()</code> can load them in later runs without doing so.
+ * <br/>Unlike the other path finders, queries keep their scratch state per
+ * thread, sized by the clusters and the abstract graph rather than the grid.
+ */
+public final class HierarchicalPathFinder extends PathFinder
+{
+	/** The cluster side used when none is given. */
+	public static final int DEFAULT_CLUSTER_SIZE = 16;
+	/** The kind of snapshot holding a path finder, "HPA*". */
+	public static final int SNAPSHOT_KIND = 0x4850412A;
+	/* stretches of border at least this long get two entrances, one at each end */
+	private static final int WIDE_ENTRANCE = 6;
+	/* the borders each cluster owns */
+	private static final int RIGHT = 0, DOWN = 1, DOWN_RIGHT = 2,
+		DOWN_LEFT = 3;
+
+	private final GridGraph grid;
+	private final int size, clustersX, clustersY;
+	private PathCostEstimator successorCost;
+	/* per cluster and owned border: (cell in cluster, cell beyond) pairs */
+	private final int[][][] borders;
+	/* per cluster: entrance cells (sorted), costs between them (row-major) */
+	private final int[][] entrances;
+	private final float[][] intra;
+	/* per cluster: the edges leaving each entrance to other clusters */
+	private final int[][] interStart, interTarget;
+	private final float[][] interCost;
+	private final ThreadLocal<Scratch> scratch = new ThreadLocal<Scratch>()
+		{
+			protected Scratch initialValue()
+			{
+				return new Scratch();
+			}
+		};
+
+	/**
+	 * Constructs an instance of this path finder.
+	 */
+	private HierarchicalPathFinder(GridGraph grid, int size,
+		PathCostEstimator pathCost, PathCostEstimator successorCost)
+	{
+		super(grid, pathCost);
+		if (size < 2)
+			throw new IllegalArgumentException("cluster size < 2");
+		this.grid = grid;
+		this.size = size;
+		this.successorCost = successorCost;
+		clustersX = (grid.cols() + size - 1) / size;
+		clustersY = (grid.rows() + size - 1) / size;
+		int n = clustersX * clustersY;
+		borders = new int[n][4][];
+		entrances = new int[n][];
+		intra = new float[n][];
+		interStart = new int[n][];
+		interTarget = new int[n][];
+		interCost = new float[n][];
+		ParallelRange.run(n, ForkJoinPool.commonPool(), new IntConsumer()
+			{
+				public void accept(int k)
+				{
+					for (int dir = 0; dir < 4; dir++)
+						borders[k][dir] = findBorder(k, dir);
+				}
+			});
+		ParallelRange.run(n, ForkJoinPool.commonPool(), new IntConsumer()
+			{
+				public void accept(int k)
+				{
+					entrances[k] = gatherEntrances(k);
+					intra[k] = connectEntrances(k);
+					connectClusters(k);
+				}
+			});
+	}
+
+	/**
+	 * Constructs an instance of this path finder from clusters already
+	 * built.
+	 */
+	private HierarchicalPathFinder(GridGraph grid, int size,
+		PathCostEstimator pathCost, PathCostEstimator successorCost,
+		int[][][] borders, int[][] entrances, float[][] intra,
+		int[][] interStart, int[][] interTarget, float[][] interCost)
+	{
+		super(grid, pathCost);
+		this.grid = grid;
+		this.size = size;
+		this.successorCost = successorCost;
+		clustersX = (grid.cols() + size - 1) / size;
+		clustersY = (grid.rows() + size - 1) / size;
+		this.borders = borders;
+		this.entrances = entrances;
+		this.intra = intra;
+		this.interStart = interStart;
+		this.interTarget = interTarget;
+		this.interCost = interCost;
+	}
+
+	/**
+	 * Factory method to build a <code>HierarchicalPathFinder</code> over an
+	 * already built grid.
+	 *
+	 * @param clusterSize
+	 *            the side of a cluster, in cells.
+	 */
+	public static HierarchicalPathFinder buildPathFinder(GridGraph grid,
+		int clusterSize, PathCostEstimator pathCost,
+		PathCostEstimator successorCost)
+	{
+		return new HierarchicalPathFinder(grid, clusterSize, pathCost,
+			successorCost);
+	}
+
+	/**
+	 * Factory method to build a <code>HierarchicalPathFinder</code> with a
+	 * internal graph representing a 2D grid of nodes.
+	 *
+	 * @see GridGraph#build(int[][],int[][])
+	 */
+	public static HierarchicalPathFinder buildGridPathFinder(int[][] arrGraph,
+		int[][] arrIds, PathCostEstimator pathCost,
+		PathCostEstimator successorCost)
+	{
+		return new HierarchicalPathFinder(GridGraph.build(arrGraph, arrIds),
+			DEFAULT_CLUSTER_SIZE, pathCost, successorCost);
+	}
+
+	public static HierarchicalPathFinder buildGridPathFinder(int[] arrGraph,
+		int[] arrIds, int rows, int cols, PathCostEstimator pathCost,
+		PathCostEstimator successorCost)
+	{
+		return new HierarchicalPathFinder(GridGraph.build(arrGraph, arrIds,
+			rows, cols), DEFAULT_CLUSTER_SIZE, pathCost, successorCost);
+	}
+
+	/**
+	 * Factory method to build a <code>HierarchicalPathFinder</code> with a
+	 * internal graph representing a 2D grid of <i>weighted </i> nodes.
+	 *
+	 * @see GridGraph#buildWeighted(int[][],int[][])
+	 */
+	public static HierarchicalPathFinder buildWeightedGridPathFinder(
+		int[][] arrGraph, int[][] arrIds, PathCostEstimator pathCost,
+		PathCostEstimator successorCost)
+	{
+		return new HierarchicalPathFinder(GridGraph.buildWeighted(arrGraph,
+			arrIds), DEFAULT_CLUSTER_SIZE, pathCost, successorCost);
+	}
+
+	public static HierarchicalPathFinder buildWeightedGridPathFinder(
+		int[] arrGraph, int[] arrIds, int rows, int cols,
+		PathCostEstimator pathCost, PathCostEstimator successorCost)
+	{
+		return new HierarchicalPathFinder(GridGraph.buildWeighted(arrGraph,
+			arrIds, rows, cols), DEFAULT_CLUSTER_SIZE, pathCost,
+			successorCost);
+	}
+
+	/**
+	 * Loads a path finder saved with <code>writeSnapshot()</code>. The
+	 * precomputed costs are loaded as saved, so <code>successorCost</code>
+	 * should be the estimator they were computed with.
+	 *
+	 * @throws IOException
+	 *             if the file can not be read or does not hold a
+	 *             <code>HierarchicalPathFinder</code>.
+	 */
+	public static HierarchicalPathFinder readSnapshot(File file,
+		PathCostEstimator pathCost, PathCostEstimator successorCost)
+		throws IOException
+	{
+		try (SnapshotReader in = new SnapshotReader(file))
+		{
+			in.expectKind(SNAPSHOT_KIND);
+			Graph graph = GraphSnapshot.readGraph(in);
+			int size = in.readInt();
+			int[][] flatBorders = in.readIntArrays();
+			int[][] entrances = in.readIntArrays();
+			float[][] intra = in.readFloatArrays();
+			int[][] interStart = in.readIntArrays();
+			int[][] interTarget = in.readIntArrays();
+			float[][] interCost = in.readFloatArrays();
+			if (!(graph instanceof GridGraph) || size < 2)
+				throw new IOException("bad snapshot in " + file);
+			GridGraph grid = (GridGraph) graph;
+			int n = ((grid.cols() + size - 1) / size)
+				* ((grid.rows() + size - 1) / size);
+			if (flatBorders.length != 4 * n || entrances.length != n
+				|| intra.length != n || interStart.length != n
+				|| interTarget.length != n || interCost.length != n)
+				throw new IOException("bad snapshot in " + file);
+			int[][][] borders = new int[n][4][];
+			for (int k = 0; k < n; k++)
+				for (int dir = 0; dir < 4; dir++)
+					borders[k][dir] = flatBorders[4 * k + dir];
+			return new HierarchicalPathFinder(grid, size, pathCost,
+				successorCost, borders, entrances, intra, interStart,
+				interTarget, interCost);
+		}
+	}
+
+	/**
+	 * Saves the grid and the clusters built over it to a snapshot file, to
+	 * be loaded with <code>readSnapshot()</code>. This must not run
+	 * concurrently with rebuilds.
+	 *
+	 * @throws IOException
+	 *             if the file can not be written.
+	 */
+	public void writeSnapshot(File file) throws IOException
+	{
+		int[][] flatBorders = new int[4 * borders.length][];
+		for (int k = 0; k < borders.length; k++)
+			for (int dir = 0; dir < 4; dir++)
+				flatBorders[4 * k + dir] = borders[k][dir];
+		try (SnapshotWriter out = new SnapshotWriter(file, SNAPSHOT_KIND))
+		{
+			GraphSnapshot.writeGraph(out, grid);
+			out.writeInt(size);
+			out.writeIntArrays(flatBorders);
+			out.writeIntArrays(entrances);
+			out.writeFloatArrays(intra);
+			out.writeIntArrays(interStart);
+			out.writeIntArrays(interTarget);
+			out.writeFloatArrays(interCost);
+		}
+	}
+
+	/**
+	 * Sets the <code>PathCostEstimator</code> to determine the cost to travel
+	 * from a node to it's successor. The nodes passed are assumed to be direct
+	 * neighbors. The precomputed costs are not updated; call
+	 * <code>cellsChanged()</code> over the whole grid to do so.
+	 */
+	public void setSuccessorCostEstimator(PathCostEstimator successorCost)
+	{
+		this.successorCost = successorCost;
+	}
+
+	/** Gets the side of a cluster, in cells. */
+	public int getClusterSize()
+	{
+		return size;
+	}
+
+	/** Gets the number of entrances, the nodes of the abstract graph. */
+	public int getEntranceCount()
+	{
+		int count = 0;
+		for (int[] e : entrances)
+			count += e.length;
+		return count;
+	}
+
+	/**
+	 * Rebuilds the clusters around the cell at <code>(x,y)</code> after its
+	 * weight changed.
+	 */
+	public void cellChanged(int x, int y)
+	{
+		cellsChanged(x, y, x, y);
+	}
+
+	/**
+	 * Rebuilds the clusters around the cells from <code>(x0,y0)</code> to
+	 * <code>(x1,y1)</code> inclusive after their weights changed. Only the
+	 * clusters holding these cells are searched again, plus any neighboring
+	 * cluster whose entrances moved.
+	 */
+	public void cellsChanged(int x0, int y0, int x1, int y1)
+	{
+		int cx0 = Math.max(0, Math.min(x0, x1) / size);
+		int cy0 = Math.max(0, Math.min(y0, y1) / size);
+		int cx1 = Math.min(clustersX - 1, Math.max(x0, x1) / size);
+		int cy1 = Math.min(clustersY - 1, Math.max(y0, y1) / size);
+		//the changed clusters' own borders and those their neighbors own
+		for (int cy = cy0 - 1; cy <= cy1; cy++)
+			for (int cx = cx0 - 1; cx <= cx1 + 1; cx++)
+			{
+				if (cx < 0 || cy < 0 || cx >= clustersX)
+					continue;
+				int k = cy * clustersX + cx;
+				for (int dir = 0; dir < 4; dir++)
+					borders[k][dir] = findBorder(k, dir);
+			}
+		for (int cy = Math.max(0, cy0 - 1); cy <= Math.min(clustersY - 1,
+			cy1 + 1); cy++)
+			for (int cx = Math.max(0, cx0 - 1); cx <= Math.min(clustersX - 1,
+				cx1 + 1); cx++)
+			{
+				int k = cy * clustersX + cx;
+				int[] e = gatherEntrances(k);
+				boolean changed = cx >= cx0 && cx <= cx1 && cy >= cy0
+					&& cy <= cy1;
+				if (changed || !Arrays.equals(e, entrances[k]))
+				{
+					entrances[k] = e;
+					intra[k] = connectEntrances(k);
+				}
+				connectClusters(k);
+			}
+	}
+
+	/**
+	 * Finds the abstract path between two nodes: the entrances it passes, with
+	 * its exact cost. The path is refined into cells a segment at a time by
+	 * the returned object.
+	 *
+	 * @throws NoPathFoundException
+	 *             if a path can not be found.
+	 */
+	public HierarchicalPath computeAbstractPath(int startId, int endId)
+		throws NoPathFoundException
+	{
+		int start = grid.indexOf(startId), dest = grid.indexOf(endId);
+		if (start < 0 || dest < 0)
+			throw new NoPathFoundException();
+		Scratch s = scratch.get();
+		float cost = searchAbstract(start, dest, s, null);
+		if (cost == Float.POSITIVE_INFINITY)
+			throw new NoPathFoundException();
+		return new HierarchicalPath(this, Arrays.copyOf(s.waypoints,
+			s.numWaypoints), cost);
+	}
+
+	protected float search(int start, int dest, SearchContext ctx)
+	{
+		if (start < 0 || dest < 0)
+			return Float.POSITIVE_INFINITY;
+		Scratch s = scratch.get();
+		SearchContext limits = ctx.isLimited() ? ctx : null;
+		float cost = searchAbstract(start, dest, s, limits);
+		s.path[0] = start;
+		if (cost == Float.POSITIVE_INFINITY)
+			return stopped(ctx, s.path);
+		int length = 1;
+		for (int i = 1; i < s.numWaypoints; i++)
+		{
+			s.path = ensure(s.path, length + size * size);
+			int cells = refine(s.waypoints[i - 1], s.waypoints[i], s.path,
+				length, s.cluster, limits);
+			if (cells < 0)
+				return stopped(ctx, s.path);
+			length += cells;
+		}
+		buildPath(ctx, s.path, length);
+		return cost;
+	}
+
+	/**
+	 * Ends a query that found no path, leaving the start alone as the path
+	 * if a limit stopped it: no heuristic tells which cell is closest.
+	 *
+	 * @param path
+	 *            holds the start first.
+	 */
+	private float stopped(SearchContext ctx, int[] path)
+	{
+		if (ctx.getLimitStatus() == SearchResult.FOUND)
+			return Float.POSITIVE_INFINITY;
+		buildPath(ctx, path, 1);
+		return 0;
+	}
+
+	/** Creates the <code>PathNode</code> of a cell, for refined paths. */
+	GraphNode node(int cell)
+	{
+		return (GraphNode) pathNode(cell);
+	}
+
+	GridGraph grid()
+	{
+		return grid;
+	}
+
+	/**
+	 * Refines the abstract edge from <code>from</code> to <code>to</code>
+	 * into cells using the calling thread's scratch state.
+	 *
+	 * @return the cells, after <code>from</code>.
+	 */
+	int[] refine(int from, int to)
+	{
+		Scratch s = scratch.get();
+		s.path = ensure(s.path, size * size);
+		return Arrays.copyOf(s.path, refine(from, to, s.path, 0, s.cluster,
+			null));
+	}
+
+	/**
+	 * Writes the cells of the abstract edge from <code>from</code> to
+	 * <code>to</code>, after <code>from</code>, into <code>out</code>.
+	 *
+	 * @param limits
+	 *            the context whose limits the search counts against, or
+	 *            <code>null</code>.
+	 * @return the number of cells written, or <code>-1</code> if a limit
+	 *         was reached.
+	 */
+	private int refine(int from, int to, int[] out, int offset,
+		ClusterSearch search, SearchContext limits)
+	{
+		int k = clusterOf(from);
+		if (k != clusterOf(to))
+		{ //an edge between clusters is a single step
+			out[offset] = to;
+			return 1;
+		}
+		bind(search, k);
+		if (search.search(from, to, successorCost, pathCost,
+			limits) == Float.POSITIVE_INFINITY)
+		{
+			if (limits != null && limits.getLimitStatus() != SearchResult.FOUND)
+				return -1;
+			throw new NoPathFoundException("grid changed without cellsChanged()");
+		}
+		return search.path(to, out, offset);
+	}
+
+	/**
+	 * Runs A* over the entrances, with the start and destination linked to
+	 * the entrances of their clusters, leaving the waypoints in the scratch
+	 * state. Both the cluster sweeps and the search over the entrances count
+	 * their expansions against the limits of <code>limits</code>, if not
+	 * <code>null</code>.
+	 *
+	 * @return the path cost, or <code>Float.POSITIVE_INFINITY</code> if a
+	 *         path can not be found or a limit was reached.
+	 */
+	private float searchAbstract(int start, int dest, Scratch s,
+		SearchContext limits)
+	{
+		s.reset();
+		if (start == dest)
+		{
+			s.waypoints[0] = start;
+			s.numWaypoints = 1;
+			return 0;
+		}
+		int startCluster = clusterOf(start), destCluster = clusterOf(dest);
+		//costs from the start to its cluster's entrances, and into the destination
+		int[] startEntrances = entrances[startCluster];
+		bind(s.cluster, startCluster);
+		s.cluster.sweep(start, false, successorCost, limits);
+		s.startCosts = ensure(s.startCosts, startEntrances.length);
+		for (int j = 0; j < startEntrances.length; j++)
+			s.startCosts[j] = s.cluster.cost(startEntrances[j]);
+		float direct = s.cluster.cost(dest);
+		int[] destEntrances = entrances[destCluster];
+		bind(s.cluster, destCluster);
+		s.cluster.sweep(dest, true, successorCost, limits);
+		s.destCosts = ensure(s.destCosts, destEntrances.length);
+		for (int j = 0; j < destEntrances.length; j++)
+			s.destCosts[j] = s.cluster.cost(destEntrances[j]);
+
+		if (limits != null && limits.getLimitStatus() != SearchResult.FOUND)
+			return Float.POSITIVE_INFINITY;
+
+		s.goal.at(dest);
+		s.visit(start, -1, 0, pathCost.cost(s.view.at(start), s.goal));
+		while (!s.open.isEmpty())
+		{
+			if (limits != null && limits.limitReached())
+				return Float.POSITIVE_INFINITY;
+			int u = s.open.poll();
+			s.closed[u] = true;
+			int cell = s.cells[u];
+			if (cell == dest)
+			{
+				s.setWaypoints(u);
+				return s.g[u];
+			}
+			float g = s.g[u];
+			int k = clusterOf(cell);
+			int slot = Arrays.binarySearch(entrances[k], cell);
+			if (cell == start)
+			{
+				for (int j = 0; j < startEntrances.length; j++)
+					relax(s, u, startEntrances[j], g + s.startCosts[j]);
+				relax(s, u, dest, g + direct);
+			}
+			else
+			{
+				int e = entrances[k].length;
+				for (int j = 0; j < e; j++)
+					if (j != slot)
+						relax(s, u, entrances[k][j], g + intra[k][slot * e + j]);
+			}
+			if (slot >= 0)
+			{
+				for (int i = interStart[k][slot]; i < interStart[k][slot + 1]; i++)
+					relax(s, u, interTarget[k][i], g + interCost[k][i]);
+				if (k == destCluster)
+					relax(s, u, dest, g + s.destCosts[slot]);
+			}
+		}
+		return Float.POSITIVE_INFINITY;
+	}
+
+	private void relax(Scratch s, int u, int cell, float cost)
+	{
+		if (cost == Float.POSITIVE_INFINITY)
+			return;
+		int v = s.local.get(cell);
+		if (v < 0)
+		{
+			s.visit(cell, u, cost, pathCost.cost(s.view.at(cell), s.goal));
+			return;
+		}
+		if (s.g[v] <= cost)
+			return;
+		s.g[v] = cost;
+		s.parent[v] = u;
+		if (s.closed[v])
+		{ //only with an inconsistent heuristic
+			s.closed[v] = false;
+			s.open.add(v, cost + s.h[v]);
+		}
+		else
+			s.open.decreaseKey(v, cost + s.h[v]);
+	}
+
+	private int clusterOf(int cell)
+	{
+		return grid.y(cell) / size * clustersX + grid.x(cell) / size;
+	}
+
+	private void bind(ClusterSearch search, int k)
+	{
+		search.bind(k % clustersX * size, k / clustersX * size);
+	}
+
+	/**
+	 * Finds the transitions across one border owned by cluster
+	 * <code>k</code>, as (cell inside, cell outside) pairs. Along a side, each
+	 * stretch of cells passable on both sides gets an entrance in its middle,
+	 * or one at each end if it is wide. Diagonal steps across the side whose
+	 * cells are on no such stretch, and across corners, get their own.
+	 */
+	private int[] findBorder(int k, int dir)
+	{
+		int cx = k % clustersX, cy = k / clustersX;
+		int x0 = cx * size, y0 = cy * size;
+		int x1 = Math.min(x0 + size, grid.cols()) - 1;
+		int y1 = Math.min(y0 + size, grid.rows()) - 1;
+		switch (dir)
+		{
+		case RIGHT:
+			if (cx + 1 >= clustersX)
+				return new int[0];
+			return findSide(x1, y0, x1 + 1, y0, 0, 1, y1 - y0 + 1);
+		case DOWN:
+			if (cy + 1 >= clustersY)
+				return new int[0];
+			return findSide(x0, y1, x0, y1 + 1, 1, 0, x1 - x0 + 1);
+		case DOWN_RIGHT:
+			if (cx + 1 >= clustersX || cy + 1 >= clustersY
+				|| !grid.isPassable(x1, y1) || !grid.isPassable(x1 + 1, y1 + 1))
+				return new int[0];
+			return new int[] { grid.node(x1, y1), grid.node(x1 + 1, y1 + 1) };
+		default: //DOWN_LEFT
+			if (cx == 0 || cy + 1 >= clustersY || !grid.isPassable(x0, y1)
+				|| !grid.isPassable(x0 - 1, y1 + 1))
+				return new int[0];
+			return new int[] { grid.node(x0, y1), grid.node(x0 - 1, y1 + 1) };
+		}
+	}
+
+	/**
+	 * Finds the transitions across a side of <code>length</code> cells,
+	 * starting at <code>(ax,ay)</code> inside and <code>(bx,by)</code>
+	 * outside and running along <code>(dx,dy)</code>.
+	 */
+	private int[] findSide(int ax, int ay, int bx, int by, int dx, int dy,
+		int length)
+	{
+		boolean[] open = new boolean[length];
+		for (int i = 0; i < length; i++)
+			open[i] = grid.isPassable(ax + i * dx, ay + i * dy)
+				&& grid.isPassable(bx + i * dx, by + i * dy);
+		int[] pairs = new int[8];
+		int n = 0;
+		for (int i = 0; i < length;)
+		{
+			if (!open[i])
+			{
+				i++;
+				continue;
+			}
+			int end = i;
+			while (end < length && open[end])
+				end++;
+			int[] at = end - i < WIDE_ENTRANCE ? new int[] { (i + end - 1) / 2 }
+				: new int[] { i, end - 1 };
+			for (int p : at)
+			{
+				pairs = ensure(pairs, n + 2);
+				pairs[n++] = grid.node(ax + p * dx, ay + p * dy);
+				pairs[n++] = grid.node(bx + p * dx, by + p * dy);
+			}
+			i = end;
+		}
+		for (int i = 0; i + 1 < length; i++)
+		{
+			if (open[i] || open[i + 1])
+				continue; //reachable through a stretch
+			int a = grid.node(ax + i * dx, ay + i * dy);
+			int b = grid.node(bx + (i + 1) * dx, by + (i + 1) * dy);
+			int a2 = grid.node(ax + (i + 1) * dx, ay + (i + 1) * dy);
+			int b2 = grid.node(bx + i * dx, by + i * dy);
+			pairs = ensure(pairs, n + 4);
+			if (grid.isPassable(a) && grid.isPassable(b))
+			{
+				pairs[n++] = a;
+				pairs[n++] = b;
+			}
+			if (grid.isPassable(a2) && grid.isPassable(b2))
+			{
+				pairs[n++] = a2;
+				pairs[n++] = b2;
+			}
+		}
+		return Arrays.copyOf(pairs, n);
+	}
+
+	/**
+	 * Writes the transitions across every border of cluster <code>k</code>
+	 * into <code>out</code> (if not <code>null</code>): those it owns, then
+	 * those owned by its neighbors above and to the left, swapped so the cell
+	 * inside comes first.
+	 *
+	 * @return the number of <code>int</code>s written.
+	 */
+	private int collectTransitions(int k, int[] out)
+	{
+		int cx = k % clustersX, cy = k / clustersX;
+		int n = 0;
+		for (int dir = 0; dir < 4; dir++)
+			n = append(borders[k][dir], false, out, n);
+		if (cx > 0)
+			n = append(borders[k - 1][RIGHT], true, out, n);
+		if (cy > 0)
+			n = append(borders[k - clustersX][DOWN], true, out, n);
+		if (cx > 0 && cy > 0)
+			n = append(borders[k - clustersX - 1][DOWN_RIGHT], true, out, n);
+		if (cx + 1 < clustersX && cy > 0)
+			n = append(borders[k - clustersX + 1][DOWN_LEFT], true, out, n);
+		return n;
+	}
+
+	private static int append(int[] pairs, boolean swap, int[] out, int n)
+	{
+		for (int i = 0; i < pairs.length; i += 2)
+		{
+			if (out != null)
+			{
+				out[n] = pairs[swap ? i + 1 : i];
+				out[n + 1] = pairs[swap ? i : i + 1];
+			}
+			n += 2;
+		}
+		return n;
+	}
+
+	private int[] transitions(int k)
+	{
+		int[] pairs = new int[collectTransitions(k, null)];
+		collectTransitions(k, pairs);
+		return pairs;
+	}
+
+	/** Lists the distinct cells of cluster <code>k</code> that are entrances. */
+	private int[] gatherEntrances(int k)
+	{
+		int[] pairs = transitions(k);
+		int[] cells = new int[pairs.length / 2];
+		for (int i = 0; i < cells.length; i++)
+			cells[i] = pairs[2 * i];
+		Arrays.sort(cells);
+		int n = 0;
+		for (int i = 0; i < cells.length; i++)
+			if (n == 0 || cells[n - 1] != cells[i])
+				cells[n++] = cells[i];
+		return Arrays.copyOf(cells, n);
+	}
+
+	/** Computes the costs between the entrances of cluster <code>k</code>. */
+	private float[] connectEntrances(int k)
+	{
+		int[] e = entrances[k];
+		float[] costs = new float[e.length * e.length];
+		ClusterSearch search = scratch.get().cluster;
+		bind(search, k);
+		for (int i = 0; i < e.length; i++)
+		{
+			search.sweep(e[i], false, successorCost);
+			for (int j = 0; j < e.length; j++)
+				costs[i * e.length + j] = search.cost(e[j]);
+		}
+		return costs;
+	}
+
+	/** Rebuilds the edges from the entrances of cluster <code>k</code> out of it. */
+	private void connectClusters(int k)
+	{
+		int[] e = entrances[k];
+		int[] pairs = transitions(k);
+		int[] start = new int[e.length + 1];
+		for (int i = 0; i < pairs.length; i += 2)
+			start[Arrays.binarySearch(e, pairs[i]) + 1]++;
+		for (int i = 0; i < e.length; i++)
+			start[i + 1] += start[i];
+		int[] fill = Arrays.copyOf(start, e.length);
+		int[] target = new int[pairs.length / 2];
+		float[] cost = new float[pairs.length / 2];
+		GraphNode from = new GraphNode(grid, 0), to = new GraphNode(grid, 0);
+		for (int i = 0; i < pairs.length; i += 2)
+		{
+			int at = fill[Arrays.binarySearch(e, pairs[i])]++;
+			target[at] = pairs[i + 1];
+			cost[at] = successorCost.cost(from.at(pairs[i]), to.at(pairs[i + 1]));
+		}
+		interStart[k] = start;
+		interTarget[k] = target;
+		interCost[k] = cost;
+	}
+
+	private static int[] ensure(int[] a, int length)
+	{
+		return a.length >= length ? a : Arrays.copyOf(a, Math.max(length,
+			2 * a.length));
+	}
+
+	private static float[] ensure(float[] a, int length)
+	{
+		return a.length >= length ? a : Arrays.copyOf(a, Math.max(length,
+			2 * a.length));
+	}
+
+	/**
+	 * The per-thread state of abstract searches: the entrances a query
+	 * touches get dense local indices, so its arrays grow with the search
+	 * rather than with the grid.
+	 */
+	private final class Scratch
+	{
+		final ClusterSearch cluster = new ClusterSearch(grid, size);
+		final IntIntHashMap local = new IntIntHashMap();
+		final IndexedMinHeap open = new IndexedMinHeap(64);
+		int[] cells = new int[64], parent = new int[64];
+		float[] g = new float[64], h = new float[64];
+		boolean[] closed = new boolean[64];
+		int count;
+		float[] startCosts = new float[16], destCosts = new float[16];
+		int[] waypoints = new int[16], path = new int[64];
+		int numWaypoints;
+		final GraphNode view = new GraphNode(grid, 0),
+			goal = new GraphNode(grid, 0);
+
+		void reset()
+		{
+			local.clear();
+			open.clear();
+			count = 0;
+			numWaypoints = 0;
+		}
+
+		void visit(int cell, int parentIndex, float cost, float estimate)
+		{
+			if (count == cells.length)
+			{
+				int n = 2 * count;
+				cells = Arrays.copyOf(cells, n);
+				parent = Arrays.copyOf(parent, n);
+				g = Arrays.copyOf(g, n);
+				h = Arrays.copyOf(h, n);
+				closed = Arrays.copyOf(closed, n);
+				open.ensureCapacity(n);
+			}
+			int v = count++;
+			local.put(cell, v);
+			cells[v] = cell;
+			parent[v] = parentIndex;
+			g[v] = cost;
+			h[v] = estimate;
+			closed[v] = false;
+			open.add(v, cost + estimate);
+		}
+
+		void setWaypoints(int last)
+		{
+			int n = 0;
+			for (int v = last; v >= 0; v = parent[v])
+				n++;
+			waypoints = ensure(waypoints, n);
+			numWaypoints = n;
+			for (int v = last; v >= 0; v = parent[v])
+				waypoints[--n] = cells[v];
+		}
+	}
+}
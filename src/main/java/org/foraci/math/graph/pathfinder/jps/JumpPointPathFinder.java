@@ -0,0 +1,352 @@
+package org.foraci.math.graph.pathfinder.jps;
+
+import org.foraci.math.graph.pathfinder.IndexCostEstimator;
+import org.foraci.math.graph.pathfinder.PathCostAdapter;
+import org.foraci.math.graph.pathfinder.PathCostEstimator;
+import org.foraci.math.graph.pathfinder.PathFinder;
+import org.foraci.math.graph.pathfinder.SearchContext;
+import org.foraci.math.graph.pathfinder.SearchStats;
+import org.foraci.math.graph.pathfinder.graph.GraphNode;
+import org.foraci.math.graph.pathfinder.graph.GridGraph;
+import org.foraci.math.graph.pathfinder.util.IndexedMinHeap;
+
+import static org.foraci.math.graph.pathfinder.SearchContext.CLOSED;
+import static org.foraci.math.graph.pathfinder.SearchContext.OPEN;
+
+/**
+ * Path finder using Jump Point Search (Harabor and Grastien, 2011) on
+ * uniform-cost 8-connected grids, such as those built by
+ * <code>buildGridPathFinder</code>. Instead of adding every neighbor to the
+ * OPEN set, it scans along straight and diagonal lines and only adds the
+ * <i>jump points</i> where a path may have to turn. On open maps this
+ * expands far fewer nodes than A* while returning paths of the same cost.
+ * Diagonal moves may cut corners, as in <code>GridGraph</code>.
+ * <br/>Every passable cell must have the same weight, also after any
+ * <code>GridGraph.setWeight()</code>, and the diagonal move cost must be
+ * between one and two straight moves. The cost of a move only
+ * depends on its direction, so the successor cost estimator is called once
+ * per jump rather than once per cell. <code>getBestPath()</code> returns
+ * every cell on the path, as <code>AStarPathFinder</code> does.
+ */
+public final class JumpPointPathFinder extends PathFinder
+{
+	/* the 8 directions: straight ones first, then diagonals */
+	private static final int[] DX = { -1, 1, 0, 0, -1, 1, -1, 1 };
+	private static final int[] DY = { 0, 0, -1, 1, -1, -1, 1, 1 };
+
+	private final GridGraph grid;
+	private final int cols;
+	private PathCostEstimator successorCost;
+	/* used instead of the estimators above when set */
+	private IndexCostEstimator indexPathCost, indexSuccessorCost;
+
+	/**
+	 * Constructs an instance of this path finder.
+	 */
+	private JumpPointPathFinder(GridGraph grid, PathCostEstimator pathCost,
+		PathCostEstimator successorCost)
+	{
+		super(grid, pathCost);
+		this.grid = grid;
+		this.cols = grid.cols();
+		this.successorCost = successorCost;
+	}
+
+	/**
+	 * Factory method to build a <code>JumpPointPathFinder</code> over an
+	 * already built grid.
+	 *
+	 * @throws IllegalArgumentException
+	 *             if the passable cells of <code>grid</code> do not all have
+	 *             the same weight.
+	 */
+	public static JumpPointPathFinder buildPathFinder(GridGraph grid,
+		PathCostEstimator pathCost, PathCostEstimator successorCost)
+	{
+		float weight = Float.NaN;
+		for (int node = 0, n = grid.size(); node < n; node++)
+		{
+			if (!grid.isPassable(node))
+				continue;
+			if (weight != weight) //first passable cell
+				weight = grid.weight(node);
+			else if (grid.weight(node) != weight)
+				throw new IllegalArgumentException(
+					"jump point search needs a uniform-cost grid");
+		}
+		return new JumpPointPathFinder(grid, pathCost, successorCost);
+	}
+
+	/**
+	 * Factory method to build a <code>JumpPointPathFinder</code> with a
+	 * internal graph representing a 2D grid of nodes.
+	 *
+	 * @see GridGraph#build(int[][],int[][])
+	 */
+	public static JumpPointPathFinder buildGridPathFinder(int[][] arrGraph,
+		int[][] arrIds, PathCostEstimator pathCost,
+		PathCostEstimator successorCost)
+	{
+		return new JumpPointPathFinder(GridGraph.build(arrGraph, arrIds),
+			pathCost, successorCost);
+	}
+
+	public static JumpPointPathFinder buildGridPathFinder(int[] arrGraph,
+		int[] arrIds, int rows, int cols, PathCostEstimator pathCost,
+		PathCostEstimator successorCost)
+	{
+		return new JumpPointPathFinder(GridGraph.build(arrGraph, arrIds, rows,
+			cols), pathCost, successorCost);
+	}
+
+	/**
+	 * Sets the <code>PathCostEstimator</code> to determine the cost to travel
+	 * from a node to it's successor. The nodes passed are assumed to be direct
+	 * neighbors.
+	 */
+	public void setSuccessorCostEstimator(PathCostEstimator successorCost)
+	{
+		this.successorCost = successorCost;
+	}
+
+	protected float search(int start, int dest, SearchContext ctx)
+	{
+		if (start < 0 || dest < 0)
+			return Float.POSITIVE_INFINITY;
+		float[] g = ctx.g(), h = ctx.h();
+		int[] parent = ctx.parent();
+		IndexedMinHeap open = ctx.open();
+		SearchStats stats = ctx.getStats(); //null unless instrumented
+		IndexCostEstimator pathCost = indexPathCost != null ? indexPathCost
+			: new PathCostAdapter(this.pathCost, new GraphNode(grid, 0),
+				new GraphNode(grid, 0));
+		IndexCostEstimator successorCost = indexSuccessorCost != null
+			? indexSuccessorCost : new PathCostAdapter(this.successorCost,
+				new GraphNode(grid, 0), new GraphNode(grid, 0));
+		int destX = grid.x(dest), destY = grid.y(dest);
+		boolean limited = ctx.isLimited();
+		int closest = start; //expanded jump point with the lowest h, if limited
+
+		g[start] = 0;
+		h[start] = pathCost.cost(start, dest);
+		parent[start] = -1;
+		ctx.setState(start, OPEN);
+		open.add(start, h[start]);
+		if (stats != null)
+			stats.started(start);
+		do
+		{
+			if (limited && ctx.limitReached())
+			{ //stop with a partial path
+				fillPath(ctx, closest);
+				buildPath(ctx, closest);
+				return g[closest];
+			}
+			int bestNode = open.poll();
+			ctx.setState(bestNode, CLOSED);
+			if (stats != null)
+				stats.expanded(bestNode, g[bestNode], open.size());
+			if (limited && h[bestNode] < h[closest])
+				closest = bestNode;
+			if (bestNode == dest)
+			{
+				fillPath(ctx, dest);
+				buildPath(ctx, dest);
+				return g[dest];
+			}
+			int x = grid.x(bestNode), y = grid.y(bestNode);
+			int dirs = successorDirections(bestNode, parent[bestNode]);
+			for (int d = 0; d < 8; d++)
+			{
+				if ((dirs & (1 << d)) == 0)
+					continue;
+				int dx = DX[d], dy = DY[d];
+				int jp = jump(x, y, dx, dy, destX, destY);
+				if (jp < 0)
+					continue;
+				//all steps of a jump cost the same on a uniform grid
+				int steps = Math.max(Math.abs(grid.x(jp) - x),
+					Math.abs(grid.y(jp) - y));
+				float newCost = g[bestNode] + steps
+					* successorCost.cost(bestNode, bestNode + dy * cols + dx);
+				switch (ctx.state(jp))
+				{
+				case OPEN:
+					if (g[jp] > newCost)
+					{
+						g[jp] = newCost;
+						parent[jp] = bestNode;
+						open.decreaseKey(jp, newCost + h[jp]);
+						if (stats != null)
+							stats.improved(bestNode, jp, newCost);
+					}
+					break;
+				case CLOSED:
+					if (g[jp] > newCost)
+					{ //only with an inconsistent heuristic
+						g[jp] = newCost;
+						parent[jp] = bestNode;
+						ctx.setState(jp, OPEN);
+						open.add(jp, newCost + h[jp]);
+						if (stats != null)
+							stats.reopened(bestNode, jp, newCost);
+					}
+					break;
+				default:
+					g[jp] = newCost;
+					h[jp] = pathCost.cost(jp, dest);
+					parent[jp] = bestNode;
+					ctx.setState(jp, OPEN);
+					open.add(jp, newCost + h[jp]);
+					if (stats != null)
+						stats.generated(bestNode, jp, newCost);
+				}
+			}
+		} while (!open.isEmpty());
+		return Float.POSITIVE_INFINITY;
+	}
+
+	/** Gets the direction index of the unit move <code>(dx,dy)</code>. */
+	private static int direction(int dx, int dy)
+	{
+		for (int d = 0; d < 8; d++)
+			if (DX[d] == dx && DY[d] == dy)
+				return d;
+		throw new IllegalArgumentException();
+	}
+
+	/**
+	 * Gets the directions (as a bit set) left after pruning the neighbors of
+	 * a node reached from <code>from</code>: the natural neighbors along the
+	 * direction of travel plus any forced neighbors.
+	 */
+	private int successorDirections(int node, int from)
+	{
+		if (from < 0)
+			return 0xff; //start node: search all directions
+		int x = grid.x(node), y = grid.y(node);
+		int dx = Integer.signum(x - grid.x(from));
+		int dy = Integer.signum(y - grid.y(from));
+		int dirs = 0;
+		if (dx != 0 && dy != 0)
+		{
+			dirs |= 1 << direction(dx, 0);
+			dirs |= 1 << direction(0, dy);
+			dirs |= 1 << direction(dx, dy);
+			if (!grid.isPassable(x - dx, y))
+				dirs |= 1 << direction(-dx, dy);
+			if (!grid.isPassable(x, y - dy))
+				dirs |= 1 << direction(dx, -dy);
+		}
+		else if (dx != 0)
+		{
+			dirs |= 1 << direction(dx, 0);
+			if (!grid.isPassable(x, y + 1))
+				dirs |= 1 << direction(dx, 1);
+			if (!grid.isPassable(x, y - 1))
+				dirs |= 1 << direction(dx, -1);
+		}
+		else
+		{
+			dirs |= 1 << direction(0, dy);
+			if (!grid.isPassable(x + 1, y))
+				dirs |= 1 << direction(1, dy);
+			if (!grid.isPassable(x - 1, y))
+				dirs |= 1 << direction(-1, dy);
+		}
+		return dirs;
+	}
+
+	/**
+	 * Scans from <code>(x,y)</code> in direction <code>(dx,dy)</code> for the
+	 * next jump point: the destination, a cell with a forced neighbor, or
+	 * (diagonally) a cell from which a straight scan finds one.
+	 *
+	 * @return the index of the jump point, or -1 if the scan hits an obstacle
+	 *         or the edge of the grid first.
+	 */
+	private int jump(int x, int y, int dx, int dy, int destX, int destY)
+	{
+		if (dx == 0 || dy == 0)
+			return jumpStraight(x, y, dx, dy, destX, destY);
+		while (true)
+		{
+			x += dx;
+			y += dy;
+			if (!grid.isPassable(x, y))
+				return -1;
+			if ((x == destX && y == destY) || forcedDiagonal(x, y, dx, dy)
+				|| jumpStraight(x, y, dx, 0, destX, destY) >= 0
+				|| jumpStraight(x, y, 0, dy, destX, destY) >= 0)
+				return grid.node(x, y);
+		}
+	}
+
+	private int jumpStraight(int x, int y, int dx, int dy, int destX,
+		int destY)
+	{
+		while (true)
+		{
+			x += dx;
+			y += dy;
+			if (!grid.isPassable(x, y))
+				return -1;
+			if ((x == destX && y == destY) || forcedStraight(x, y, dx, dy))
+				return grid.node(x, y);
+		}
+	}
+
+	/**
+	 * Returns <code>true</code> if moving straight through <code>(x,y)</code>
+	 * passes an obstacle beside it that makes a diagonal neighbor reachable
+	 * only through this cell.
+	 */
+	private boolean forcedStraight(int x, int y, int dx, int dy)
+	{
+		if (dx != 0)
+			return (!grid.isPassable(x, y + 1) && grid.isPassable(x + dx, y + 1))
+				|| (!grid.isPassable(x, y - 1) && grid.isPassable(x + dx, y - 1));
+		return (!grid.isPassable(x + 1, y) && grid.isPassable(x + 1, y + dy))
+			|| (!grid.isPassable(x - 1, y) && grid.isPassable(x - 1, y + dy));
+	}
+
+	/** The diagonal counterpart of <code>forcedStraight()</code>. */
+	private boolean forcedDiagonal(int x, int y, int dx, int dy)
+	{
+		return (!grid.isPassable(x - dx, y) && grid.isPassable(x - dx, y + dy))
+			|| (!grid.isPassable(x, y - dy) && grid.isPassable(x + dx, y - dy));
+	}
+
+	/**
+	 * Rewrites the parents along the path to <code>dest</code> so that every
+	 * cell between two consecutive jump points points to the one before it,
+	 * letting <code>buildPath()</code> list each cell of the path.
+	 */
+	private void fillPath(SearchContext ctx, int dest)
+	{
+		int[] parent = ctx.parent();
+		int node = dest;
+		while (parent[node] >= 0)
+		{
+			int jp = parent[node];
+			int dx = Integer.signum(grid.x(jp) - grid.x(node));
+			int dy = Integer.signum(grid.y(jp) - grid.y(node));
+			int step = dy * cols + dx;
+			for (int cell = node; cell != jp; cell += step)
+				parent[cell] = cell + step;
+			node = jp;
+		}
+	}
+
+	/**
+	 * Sets <code>IndexCostEstimator</code>s to use instead of the
+	 * <code>PathCostEstimator</code>s. Either may be <code>null</code> to go
+	 * back to the <code>PathCostEstimator</code> it replaces.
+	 */
+	public void setIndexCostEstimators(IndexCostEstimator pathCost,
+		IndexCostEstimator successorCost)
+	{
+		this.indexPathCost = pathCost;
+		this.indexSuccessorCost = successorCost;
+	}
+}
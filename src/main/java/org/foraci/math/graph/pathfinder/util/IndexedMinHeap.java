@@ -0,0 +1,252 @@
+package org.foraci.math.graph.pathfinder.util;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/**
+ * An indexed d-ary min-heap of <code>int</code> elements ordered by a
+ * <code>float</code> key. Elements are node indices in the range
+ * <code>[0, capacity)</code> and the heap slot of every element is tracked,
+ * so a membership test is O(1) and <code>decreaseKey</code> is O(log n)
+ * instead of the linear scan needed by <code>java.util.PriorityQueue</code>.
+ * <br/>Note: This class is not thread-safe.
+ */
+public final class IndexedMinHeap
+{
+	/** The arity used when none is specified. */
+	public static final int DEFAULT_ARITY = 4;
+
+	private final int arity;
+	private int[] heap; //element at each heap position
+	private float[] keys; //key at each heap position
+	private int[] slot; //heap position of each element, or -1
+	private int size;
+
+	/**
+	 * Constructs a heap with the default arity able to hold elements in the
+	 * range <code>[0, capacity)</code>.
+	 */
+	public IndexedMinHeap(int capacity)
+	{
+		this(capacity, DEFAULT_ARITY);
+	}
+
+	/**
+	 * Constructs a heap with the specified arity (2 for a binary heap) able
+	 * to hold elements in the range <code>[0, capacity)</code>.
+	 */
+	public IndexedMinHeap(int capacity, int arity)
+	{
+		if (arity < 2)
+			throw new IllegalArgumentException("arity < 2");
+		this.arity = arity;
+		heap = new int[Math.max(capacity, 1)];
+		keys = new float[heap.length];
+		slot = new int[capacity];
+		Arrays.fill(slot, -1);
+		size = 0;
+	}
+
+	/** Grows the heap so it can hold elements in <code>[0, capacity)</code>. */
+	public void ensureCapacity(int capacity)
+	{
+		int old = slot.length;
+		if (capacity <= old)
+			return;
+		capacity = Math.max(capacity, old + (old >> 1));
+		slot = Arrays.copyOf(slot, capacity);
+		Arrays.fill(slot, old, capacity, -1);
+		heap = Arrays.copyOf(heap, capacity);
+		keys = Arrays.copyOf(keys, capacity);
+	}
+
+	public int size()
+	{
+		return size;
+	}
+
+	public boolean isEmpty()
+	{
+		return size == 0;
+	}
+
+	/** Returns <code>true</code> if <code>element</code> is in this heap. */
+	public boolean contains(int element)
+	{
+		return slot[element] >= 0;
+	}
+
+	/** Returns the key of an element in this heap. */
+	public float key(int element)
+	{
+		return keys[slot[element]];
+	}
+
+	/** Inserts an element that is not already in this heap. */
+	public void add(int element, float key)
+	{
+		int pos = size++;
+		heap[pos] = element;
+		keys[pos] = key;
+		slot[element] = pos;
+		siftUp(pos);
+	}
+
+	/** Lowers the key of an element already in this heap. */
+	public void decreaseKey(int element, float key)
+	{
+		int pos = slot[element];
+		keys[pos] = key;
+		siftUp(pos);
+	}
+
+	/**
+	 * Changes the key of an element already in this heap, moving it in either
+	 * direction.
+	 */
+	public void update(int element, float key)
+	{
+		int pos = slot[element];
+		float old = keys[pos];
+		keys[pos] = key;
+		if (key < old)
+			siftUp(pos);
+		else if (key > old)
+			siftDown(pos);
+	}
+
+	/** Returns the element with the lowest key without removing it. */
+	public int peek()
+	{
+		if (size == 0)
+			throw new NoSuchElementException();
+		return heap[0];
+	}
+
+	/** Returns the lowest key in this heap. */
+	public float peekKey()
+	{
+		if (size == 0)
+			throw new NoSuchElementException();
+		return keys[0];
+	}
+
+	/** Removes and returns the element with the lowest key. */
+	public int poll()
+	{
+		if (size == 0)
+			throw new NoSuchElementException();
+		int min = heap[0];
+		slot[min] = -1;
+		if (--size > 0)
+		{
+			heap[0] = heap[size];
+			keys[0] = keys[size];
+			slot[heap[0]] = 0;
+			siftDown(0);
+		}
+		return min;
+	}
+
+	/** Removes an element if it is in this heap. */
+	public boolean remove(int element)
+	{
+		int pos = slot[element];
+		if (pos < 0)
+			return false;
+		slot[element] = -1;
+		if (pos != --size)
+		{
+			float old = keys[pos];
+			heap[pos] = heap[size];
+			keys[pos] = keys[size];
+			slot[heap[pos]] = pos;
+			if (keys[pos] < old)
+				siftUp(pos);
+			else
+				siftDown(pos);
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the element at a position of this heap, for visiting every
+	 * element in no particular order: <code>0 &lt;= pos &lt; size()</code>.
+	 */
+	public int elementAt(int pos)
+	{
+		return heap[pos];
+	}
+
+	/**
+	 * Changes the key of the element at a position of this heap without
+	 * restoring the heap order. Once all keys are changed, call
+	 * <code>heapify()</code>.
+	 */
+	public void setKeyAt(int pos, float key)
+	{
+		keys[pos] = key;
+	}
+
+	/**
+	 * Restores the heap order after keys were changed with
+	 * <code>setKeyAt()</code>, in time proportional to the heap size.
+	 */
+	public void heapify()
+	{
+		for (int pos = (size - 2) / arity; pos >= 0; pos--)
+			siftDown(pos);
+	}
+
+	/** Removes all elements. Runs in time proportional to the heap size. */
+	public void clear()
+	{
+		for (int i = 0; i < size; i++)
+			slot[heap[i]] = -1;
+		size = 0;
+	}
+
+	private void siftUp(int pos)
+	{
+		int element = heap[pos];
+		float key = keys[pos];
+		while (pos > 0)
+		{
+			int parent = (pos - 1) / arity;
+			if (keys[parent] <= key)
+				break;
+			heap[pos] = heap[parent];
+			keys[pos] = keys[parent];
+			slot[heap[pos]] = pos;
+			pos = parent;
+		}
+		heap[pos] = element;
+		keys[pos] = key;
+		slot[element] = pos;
+	}
+
+	private void siftDown(int pos)
+	{
+		int element = heap[pos];
+		float key = keys[pos];
+		int child;
+		while ((child = pos * arity + 1) < size)
+		{
+			//find the smallest child
+			int last = Math.min(child + arity, size);
+			int best = child;
+			for (int c = child + 1; c < last; c++)
+				if (keys[c] < keys[best])
+					best = c;
+			if (key <= keys[best])
+				break;
+			heap[pos] = heap[best];
+			keys[pos] = keys[best];
+			slot[heap[pos]] = pos;
+			pos = best;
+		}
+		heap[pos] = element;
+		keys[pos] = key;
+		slot[element] = pos;
+	}
+}
@@ -0,0 +1,111 @@
+package org.foraci.math.graph.pathfinder.util;
+
+import java.util.Arrays;
+
+/**
+ * A map from non-negative <code>int</code> keys to <code>int</code> values,
+ * using open addressing with linear probing. Used to give the nodes a search
+ * touches dense local indices when the graph is too large for per-node
+ * arrays. <code>clear()</code> costs time proportional to the entries, not
+ * the capacity.
+ */
+public final class IntIntHashMap
+{
+	private static final int FREE = -1;
+
+	private int[] keys;
+	private int[] values;
+	private int[] used; //slots in insertion order, for clear()
+	private int size;
+	private int mask;
+
+	public IntIntHashMap()
+	{
+		this(16);
+	}
+
+	/** Constructs a map that holds <code>expected</code> entries unresized. */
+	public IntIntHashMap(int expected)
+	{
+		int capacity = Integer.highestOneBit(Math.max(4, expected) * 2 - 1) << 1;
+		keys = new int[capacity];
+		Arrays.fill(keys, FREE);
+		values = new int[capacity];
+		used = new int[capacity / 2];
+		mask = capacity - 1;
+	}
+
+	public int size()
+	{
+		return size;
+	}
+
+	/**
+	 * Gets the value of <code>key</code>, or <code>-1</code> if it has none.
+	 */
+	public int get(int key)
+	{
+		for (int i = hash(key) & mask;; i = (i + 1) & mask)
+		{
+			int k = keys[i];
+			if (k == key)
+				return values[i];
+			if (k == FREE)
+				return -1;
+		}
+	}
+
+	/** Sets the value of a non-negative <code>key</code>. */
+	public void put(int key, int value)
+	{
+		if (key < 0)
+			throw new IllegalArgumentException("negative key: " + key);
+		int i = hash(key) & mask;
+		for (;; i = (i + 1) & mask)
+		{
+			int k = keys[i];
+			if (k == key)
+			{
+				values[i] = value;
+				return;
+			}
+			if (k == FREE)
+				break;
+		}
+		keys[i] = key;
+		values[i] = value;
+		used[size++] = i;
+		if (size == used.length)
+			grow();
+	}
+
+	/** Removes all entries. */
+	public void clear()
+	{
+		for (int i = 0; i < size; i++)
+			keys[used[i]] = FREE;
+		size = 0;
+	}
+
+	private void grow()
+	{
+		int[] oldKeys = keys, oldValues = values, oldUsed = used;
+		int oldSize = size;
+		keys = new int[oldKeys.length * 2];
+		Arrays.fill(keys, FREE);
+		values = new int[keys.length];
+		used = new int[keys.length / 2];
+		mask = keys.length - 1;
+		size = 0;
+		for (int j = 0; j < oldSize; j++)
+		{
+			int slot = oldUsed[j];
+			put(oldKeys[slot], oldValues[slot]);
+		}
+	}
+
+	private static int hash(int key)
+	{
+		return key * 0x9E3779B9 >>> 7;
+	}
+}
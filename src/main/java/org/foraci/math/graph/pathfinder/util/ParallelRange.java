@@ -0,0 +1,143 @@
+package org.foraci.math.graph.pathfinder.util;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.IntConsumer;
+
+/**
+ * Runs a body once for each index of a range, spread over the threads of an
+ * executor, and returns when all are done. Used by the batch APIs of the
+ * path finders, where each index is an independent query.
+ */
+public final class ParallelRange
+{
+	/* indices a worker takes at a time from a plain executor */
+	private static final int CHUNK = 16;
+
+	private ParallelRange()
+	{
+	}
+
+	/**
+	 * Calls <code>body</code> for every index from 0 up to <code>n</code>.
+	 * A <code>ForkJoinPool</code> splits the range into tasks; any other
+	 * executor is handed one worker per available processor, each taking
+	 * chunks of indices from a shared counter, with the calling thread
+	 * working too, so that it may itself be a thread of the executor. The
+	 * first exception thrown by <code>body</code> stops the remaining work
+	 * and is rethrown.
+	 */
+	public static void run(int n, Executor executor, IntConsumer body)
+	{
+		if (n <= 0)
+			return;
+		if (executor instanceof ForkJoinPool)
+		{
+			ForkJoinPool pool = (ForkJoinPool) executor;
+			int threshold = Math.max(1, n / (8 * pool.getParallelism()));
+			pool.invoke(new Split(body, 0, n, threshold));
+		}
+		else
+			runShared(n, executor, body);
+	}
+
+	/** Recursively halves a range of indices down to a threshold. */
+	private static final class Split extends RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+
+		private final IntConsumer body;
+		private final int from, to, threshold;
+
+		Split(IntConsumer body, int from, int to, int threshold)
+		{
+			this.body = body;
+			this.from = from;
+			this.to = to;
+			this.threshold = threshold;
+		}
+
+		protected void compute()
+		{
+			if (to - from <= threshold)
+			{
+				for (int i = from; i < to; i++)
+					body.accept(i);
+				return;
+			}
+			int mid = (from + to) >>> 1;
+			invokeAll(new Split(body, from, mid, threshold), new Split(body,
+				mid, to, threshold));
+		}
+	}
+
+	private static void runShared(final int n, Executor executor,
+		final IntConsumer body)
+	{
+		final AtomicInteger next = new AtomicInteger();
+		final AtomicReference<Throwable> failure = new AtomicReference<>();
+		int workers = Math.min(Runtime.getRuntime().availableProcessors(),
+			(n + CHUNK - 1) / CHUNK) - 1;
+		//counted down per chunk rather than per worker, so that the calling
+		//thread can finish alone when the workers cannot start, as when it is
+		//itself a thread of the executor
+		final CountDownLatch done = new CountDownLatch((n + CHUNK - 1) / CHUNK);
+		Runnable worker = new Runnable()
+			{
+				public void run()
+				{
+					drain(n, body, next, failure, done);
+				}
+			};
+		for (int w = 0; w < workers; w++)
+			executor.execute(worker);
+		drain(n, body, next, failure, done);
+		try
+		{
+			done.await();
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("interrupted waiting for workers",
+				e);
+		}
+		Throwable t = failure.get();
+		if (t instanceof RuntimeException)
+			throw (RuntimeException) t;
+		if (t instanceof Error)
+			throw (Error) t;
+	}
+
+	/**
+	 * Takes chunks of indices until none are left, counting each down once
+	 * done. After a failure the chunks left are taken but skipped.
+	 */
+	private static void drain(int n, IntConsumer body, AtomicInteger next,
+		AtomicReference<Throwable> failure, CountDownLatch done)
+	{
+		int from;
+		while ((from = next.getAndAdd(CHUNK)) < n)
+		{
+			try
+			{
+				int to = Math.min(from + CHUNK, n);
+				if (failure.get() == null)
+					for (int i = from; i < to; i++)
+						body.accept(i);
+			}
+			catch (RuntimeException | Error e)
+			{
+				failure.compareAndSet(null, e);
+			}
+			finally
+			{
+				done.countDown();
+			}
+		}
+	}
+}
@@ -0,0 +1,140 @@
+package org.foraci.math.graph.pathfinder.util;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/**
+ * A monotone radix heap of <code>int</code> elements keyed by non-negative
+ * <code>float</code>s. It relies on keys never being lower than the last key
+ * removed, as is the case for the distances settled by Dijkstra's algorithm.
+ * <br/>The IEEE 754 bits of a non-negative <code>float</code> order the same
+ * way as the value itself, so they are used as the integer radix key. This
+ * keeps the heap exact for any non-negative (integer or fractional) cost.
+ * An element is placed in the bucket of the highest bit in which its key
+ * differs from the last key removed. Pushes are O(1), and each element is
+ * redistributed at most 32 times, so a pop is O(1) amortized for a bounded
+ * key width. There is no decrease-key; callers push an element again with
+ * its lower key and skip stale entries when they are popped.
+ * <br/>Note: This class is not thread-safe.
+ */
+public final class RadixHeap
+{
+	private static final int BUCKETS = 33;
+
+	private final int[][] elements = new int[BUCKETS][];
+	private final int[][] keys = new int[BUCKETS][];
+	private final int[] sizes = new int[BUCKETS];
+	private int last; //bits of the last key removed
+	private int size;
+
+	public RadixHeap()
+	{
+		for (int b = 0; b < BUCKETS; b++)
+		{
+			elements[b] = new int[16];
+			keys[b] = new int[16];
+		}
+		last = 0;
+		size = 0;
+	}
+
+	public int size()
+	{
+		return size;
+	}
+
+	public boolean isEmpty()
+	{
+		return size == 0;
+	}
+
+	/** Removes all elements and forgets the last key removed. */
+	public void clear()
+	{
+		Arrays.fill(sizes, 0);
+		last = 0;
+		size = 0;
+	}
+
+	/**
+	 * Inserts an element. The key must be non-negative and not lower than
+	 * the last key removed.
+	 */
+	public void push(int element, float key)
+	{
+		int bits = Float.floatToRawIntBits(key + 0.0f); //-0.0f becomes 0.0f
+		if (bits < last)
+			throw new IllegalArgumentException("key " + key
+				+ " is lower than the last key removed");
+		append(bucket(bits), element, bits);
+		size++;
+	}
+
+	/** Returns the lowest key in this heap, moving it to the front bucket. */
+	public float peekKey()
+	{
+		pull();
+		return Float.intBitsToFloat(last);
+	}
+
+	/**
+	 * Removes and returns an element with the lowest key. Its key is then
+	 * available from <code>lastKey()</code>.
+	 */
+	public int poll()
+	{
+		pull();
+		size--;
+		return elements[0][--sizes[0]];
+	}
+
+	/** The key of the last element removed. */
+	public float lastKey()
+	{
+		return Float.intBitsToFloat(last);
+	}
+
+	/**
+	 * Ensures the front bucket holds the elements with the lowest key,
+	 * redistributing the first non-empty bucket if it does not.
+	 */
+	private void pull()
+	{
+		if (size == 0)
+			throw new NoSuchElementException();
+		if (sizes[0] > 0)
+			return;
+		int b = 1;
+		while (sizes[b] == 0)
+			b++;
+		int[] bElements = elements[b], bKeys = keys[b];
+		int n = sizes[b];
+		int min = bKeys[0];
+		for (int i = 1; i < n; i++)
+			if (bKeys[i] < min)
+				min = bKeys[i];
+		last = min;
+		sizes[b] = 0;
+		//every key now differs from last in a lower bit than before
+		for (int i = 0; i < n; i++)
+			append(bucket(bKeys[i]), bElements[i], bKeys[i]);
+	}
+
+	private int bucket(int bits)
+	{
+		return 32 - Integer.numberOfLeadingZeros(bits ^ last);
+	}
+
+	private void append(int b, int element, int bits)
+	{
+		int n = sizes[b];
+		if (n == elements[b].length)
+		{
+			elements[b] = Arrays.copyOf(elements[b], n * 2);
+			keys[b] = Arrays.copyOf(keys[b], n * 2);
+		}
+		elements[b][n] = element;
+		keys[b][n] = bits;
+		sizes[b] = n + 1;
+	}
+}
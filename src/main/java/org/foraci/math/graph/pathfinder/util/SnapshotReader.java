@@ -0,0 +1,179 @@
+package org.foraci.math.graph.pathfinder.util;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * Reads a snapshot file written by <code>SnapshotWriter</code>, in the same
+ * order it was written. Arrays are read with a <code>FileChannel</code> into
+ * a direct buffer and copied out in bulk, so loading a snapshot costs about
+ * as much as reading its size from disk, with no per-element work.
+ *
+ * @see SnapshotWriter
+ */
+public final class SnapshotReader implements Closeable
+{
+	private final File file;
+	private final FileChannel channel;
+	private final ByteBuffer buffer;
+	private final int kind;
+
+	/**
+	 * Opens a snapshot file and reads its header.
+	 *
+	 * @throws IOException
+	 *             if the file can not be read, is not a snapshot or was
+	 *             written in another version of the format.
+	 */
+	public SnapshotReader(File file) throws IOException
+	{
+		this.file = file;
+		channel = new RandomAccessFile(file, "r").getChannel();
+		buffer = ByteBuffer.allocateDirect(1 << 20).order(
+			ByteOrder.LITTLE_ENDIAN);
+		buffer.limit(0);
+		try
+		{
+			if (channel.size() < 12 || readInt() != SnapshotWriter.MAGIC)
+				throw new IOException(file + " is not a snapshot");
+			int version = readInt();
+			if (version != SnapshotWriter.FORMAT_VERSION)
+				throw new IOException(file + " has unsupported snapshot version "
+					+ version);
+			kind = readInt();
+		}
+		catch (IOException e)
+		{
+			channel.close();
+			throw e;
+		}
+	}
+
+	/** Gets the tag of the structure saved, given to the writer. */
+	public int kind()
+	{
+		return kind;
+	}
+
+	/**
+	 * Checks that the snapshot holds the structure expected.
+	 *
+	 * @throws IOException
+	 *             if it holds another.
+	 */
+	public void expectKind(int expected) throws IOException
+	{
+		if (kind != expected)
+			throw new IOException(file + " holds another kind of snapshot");
+	}
+
+	public int readInt() throws IOException
+	{
+		fill(4);
+		return buffer.getInt();
+	}
+
+	public long readLong() throws IOException
+	{
+		fill(8);
+		return buffer.getLong();
+	}
+
+	public float readFloat() throws IOException
+	{
+		fill(4);
+		return buffer.getFloat();
+	}
+
+	/** Reads an array, which may be <code>null</code>. */
+	public int[] readInts() throws IOException
+	{
+		int length = readInt();
+		if (length < 0)
+			return null;
+		int[] a = new int[length];
+		for (int off = 0; off < length;)
+		{
+			fill(4);
+			int k = Math.min(length - off, buffer.remaining() / 4);
+			buffer.asIntBuffer().get(a, off, k);
+			buffer.position(buffer.position() + 4 * k);
+			off += k;
+		}
+		return a;
+	}
+
+	/** Reads an array, which may be <code>null</code>. */
+	public float[] readFloats() throws IOException
+	{
+		int length = readInt();
+		if (length < 0)
+			return null;
+		float[] a = new float[length];
+		for (int off = 0; off < length;)
+		{
+			fill(4);
+			int k = Math.min(length - off, buffer.remaining() / 4);
+			buffer.asFloatBuffer().get(a, off, k);
+			buffer.position(buffer.position() + 4 * k);
+			off += k;
+		}
+		return a;
+	}
+
+	/** Reads an array, which may be <code>null</code>. */
+	public char[] readChars() throws IOException
+	{
+		int length = readInt();
+		if (length < 0)
+			return null;
+		char[] a = new char[length];
+		for (int off = 0; off < length;)
+		{
+			fill(2);
+			int k = Math.min(length - off, buffer.remaining() / 2);
+			buffer.asCharBuffer().get(a, off, k);
+			buffer.position(buffer.position() + 2 * k);
+			off += k;
+		}
+		return a;
+	}
+
+	public int[][] readIntArrays() throws IOException
+	{
+		int[][] a = new int[readInt()][];
+		for (int i = 0; i < a.length; i++)
+			a[i] = readInts();
+		return a;
+	}
+
+	public float[][] readFloatArrays() throws IOException
+	{
+		float[][] a = new float[readInt()][];
+		for (int i = 0; i < a.length; i++)
+			a[i] = readFloats();
+		return a;
+	}
+
+	public void close() throws IOException
+	{
+		channel.close();
+	}
+
+	/** Reads ahead until at least <code>bytes</code> are buffered. */
+	private void fill(int bytes) throws IOException
+	{
+		if (buffer.remaining() >= bytes)
+			return;
+		buffer.compact();
+		while (buffer.position() < bytes)
+			if (channel.read(buffer) < 0)
+				throw new IOException(file + " is truncated");
+		buffer.flip();
+	}
+}
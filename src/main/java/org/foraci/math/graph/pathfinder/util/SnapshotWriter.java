@@ -0,0 +1,164 @@
+package org.foraci.math.graph.pathfinder.util;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * Writes a snapshot file: a header naming the kind of structure saved,
+ * followed by its fields and primitive arrays. Arrays are copied into a
+ * direct buffer in bulk and written with a <code>FileChannel</code>, so a
+ * snapshot costs about as much to write as its size on disk.
+ * <br/>A snapshot starts with a 12 byte header, then the fields in the
+ * order they were written, all little-endian:
+ * <pre>
+ *   int   magic, 0x4A504653 ("JPFS")
+ *   int   format version, 2
+ *   int   kind, a tag chosen by the writer
+ *   ...   ints, longs and floats as is; arrays of ints, floats or chars
+ *         as their length (-1 for null) then their elements
+ * </pre>
+ *
+ * @see SnapshotReader
+ */
+public final class SnapshotWriter implements Closeable
+{
+	/** The magic number that starts a snapshot. */
+	public static final int MAGIC = 0x4A504653;
+	/** The version of the format written. */
+	public static final int FORMAT_VERSION = 2;
+
+	private final FileChannel channel;
+	private final ByteBuffer buffer;
+
+	/**
+	 * Creates (or replaces) a snapshot file and writes its header.
+	 *
+	 * @param kind
+	 *            the tag of the structure saved, checked when it is read.
+	 */
+	public SnapshotWriter(File file, int kind) throws IOException
+	{
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		raf.setLength(0);
+		channel = raf.getChannel();
+		buffer = ByteBuffer.allocateDirect(1 << 20).order(
+			ByteOrder.LITTLE_ENDIAN);
+		writeInt(MAGIC);
+		writeInt(FORMAT_VERSION);
+		writeInt(kind);
+	}
+
+	public void writeInt(int value) throws IOException
+	{
+		ensure(4);
+		buffer.putInt(value);
+	}
+
+	public void writeLong(long value) throws IOException
+	{
+		ensure(8);
+		buffer.putLong(value);
+	}
+
+	public void writeFloat(float value) throws IOException
+	{
+		ensure(4);
+		buffer.putFloat(value);
+	}
+
+	/** Writes an array, which may be <code>null</code>. */
+	public void writeInts(int[] a) throws IOException
+	{
+		writeInt(a == null ? -1 : a.length);
+		if (a == null)
+			return;
+		for (int off = 0; off < a.length;)
+		{
+			ensure(4);
+			int k = Math.min(a.length - off, buffer.remaining() / 4);
+			buffer.asIntBuffer().put(a, off, k);
+			buffer.position(buffer.position() + 4 * k);
+			off += k;
+		}
+	}
+
+	/** Writes an array, which may be <code>null</code>. */
+	public void writeFloats(float[] a) throws IOException
+	{
+		writeInt(a == null ? -1 : a.length);
+		if (a == null)
+			return;
+		for (int off = 0; off < a.length;)
+		{
+			ensure(4);
+			int k = Math.min(a.length - off, buffer.remaining() / 4);
+			buffer.asFloatBuffer().put(a, off, k);
+			buffer.position(buffer.position() + 4 * k);
+			off += k;
+		}
+	}
+
+	/** Writes an array, which may be <code>null</code>. */
+	public void writeChars(char[] a) throws IOException
+	{
+		writeInt(a == null ? -1 : a.length);
+		if (a == null)
+			return;
+		for (int off = 0; off < a.length;)
+		{
+			ensure(2);
+			int k = Math.min(a.length - off, buffer.remaining() / 2);
+			buffer.asCharBuffer().put(a, off, k);
+			buffer.position(buffer.position() + 2 * k);
+			off += k;
+		}
+	}
+
+	/** Writes an array of arrays, any of which may be <code>null</code>. */
+	public void writeIntArrays(int[][] a) throws IOException
+	{
+		writeInt(a.length);
+		for (int[] e : a)
+			writeInts(e);
+	}
+
+	/** Writes an array of arrays, any of which may be <code>null</code>. */
+	public void writeFloatArrays(float[][] a) throws IOException
+	{
+		writeInt(a.length);
+		for (float[] e : a)
+			writeFloats(e);
+	}
+
+	/** Writes out what is buffered and closes the file. */
+	public void close() throws IOException
+	{
+		try
+		{
+			flush();
+		}
+		finally
+		{
+			channel.close();
+		}
+	}
+
+	private void ensure(int bytes) throws IOException
+	{
+		if (buffer.remaining() < bytes)
+			flush();
+	}
+
+	private void flush() throws IOException
+	{
+		buffer.flip();
+		while (buffer.hasRemaining())
+			channel.write(buffer);
+		buffer.clear();
+	}
+}
@@ -0,0 +1,544 @@
+package org.foraci.math.graph.pathfinder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.foraci.math.graph.pathfinder.alt.Landmarks;
+import org.foraci.math.graph.pathfinder.astar.AStarPathFinder;
+import org.foraci.math.graph.pathfinder.ch.ContractionHierarchyPathFinder;
+import org.foraci.math.graph.pathfinder.dijkstra.DijkstraPathFinder;
+import org.foraci.math.graph.pathfinder.dstar.DStarLitePlanner;
+import org.foraci.math.graph.pathfinder.graph.ChunkedGridGraph;
+import org.foraci.math.graph.pathfinder.graph.Graph;
+import org.foraci.math.graph.pathfinder.graph.GraphSnapshot;
+import org.foraci.math.graph.pathfinder.graph.GridDistance;
+import org.foraci.math.graph.pathfinder.graph.GridGraph;
+import org.foraci.math.graph.pathfinder.graph.GridStepCost;
+import org.foraci.math.graph.pathfinder.graph.TileProvider;
+import org.foraci.math.graph.pathfinder.hpa.HierarchicalPathFinder;
+import org.foraci.math.graph.pathfinder.jps.JumpPointPathFinder;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Checks every engine against a plain Dijkstra search on small random grids.
+ * The reference is written out here, scanning for the cheapest open node
+ * rather than using a heap, so that it shares no code with the engines but
+ * the grid's neighbors and the step cost.
+ */
+public class PathFinderDifferentialTest
+{
+	private static final int SIZE = 24; //cells on a side of a grid
+	private static final int GRIDS = 6; //random grids per test
+	private static final int QUERIES = 30; //random pairs per grid
+	private static final float DIAGONAL = (float) Math.sqrt(2);
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testEnginesMatchDijkstra()
+	{
+		Random random = new Random(1);
+		for (int k = 0; k < GRIDS; k++)
+		{
+			GridGraph grid = randomGrid(random, true);
+			IndexCostEstimator octile = GridDistance.octile(grid, 1, DIAGONAL);
+			GridStepCost step = new GridStepCost(grid, 1, DIAGONAL);
+			List<PathFinder> finders = new ArrayList<>();
+			finders.add(AStarPathFinder.buildIndexPathFinder(grid, octile,
+				step));
+			AStarPathFinder bidirectional = AStarPathFinder
+				.buildIndexPathFinder(grid, octile, step);
+			bidirectional.setBidirectional(true);
+			finders.add(bidirectional);
+			finders.add(DijkstraPathFinder.buildIndexPathFinder(grid, step));
+			finders.add(ContractionHierarchyPathFinder.buildIndexPathFinder(
+				grid, step));
+			finders.add(AStarPathFinder.buildIndexPathFinder(grid,
+				Landmarks.selectFarthest(grid, step, 4), step));
+			finders.add(AStarPathFinder.buildIndexPathFinder(grid,
+				Landmarks.selectAvoid(grid, step, 4, k), step));
+			for (int[] pair : randomPairs(random, grid))
+			{
+				float expected = reference(grid, step, pair[0])[pair[1]];
+				for (PathFinder finder : finders)
+					checkQuery(finder, grid, step, pair[0], pair[1], expected);
+			}
+		}
+	}
+
+	@Test
+	public void testAnytimeStaysWithinItsWeight()
+	{
+		Random random = new Random(2);
+		for (int k = 0; k < GRIDS; k++)
+		{
+			GridGraph grid = randomGrid(random, true);
+			IndexCostEstimator octile = GridDistance.octile(grid, 1, DIAGONAL);
+			GridStepCost step = new GridStepCost(grid, 1, DIAGONAL);
+			AStarPathFinder first = AStarPathFinder.buildIndexPathFinder(grid,
+				octile, step);
+			first.setAnytime(2.5f, 0.5f, 0, TimeUnit.NANOSECONDS);
+			AStarPathFinder refined = AStarPathFinder.buildIndexPathFinder(
+				grid, octile, step);
+			refined.setAnytime(2.5f, 0.5f, 1, TimeUnit.MINUTES);
+			for (int[] pair : randomPairs(random, grid))
+			{
+				float expected = reference(grid, step, pair[0])[pair[1]];
+				//the first path is bounded by the weight, the last is best
+				SearchResult result = first.computeBestPath(pair[0], pair[1],
+					new SearchLimits());
+				checkPath(grid, step, pair[0], pair[1], result);
+				if (expected == Float.POSITIVE_INFINITY)
+					assertEquals(SearchResult.NO_PATH, result.getStatus());
+				else
+					assertTrue("anytime first path " + result.getCost()
+						+ " above 2.5 * " + expected,
+						result.getCost() <= 2.5f * expected + tolerance(expected));
+				checkQuery(refined, grid, step, pair[0], pair[1], expected);
+			}
+		}
+	}
+
+	@Test
+	public void testJumpPointMatchesDijkstraOnUniformGrids()
+	{
+		Random random = new Random(3);
+		for (int k = 0; k < GRIDS; k++)
+		{
+			GridGraph grid = randomGrid(random, false);
+			IndexCostEstimator octile = GridDistance.octile(grid, 1, DIAGONAL);
+			GridStepCost step = new GridStepCost(grid, 1, DIAGONAL);
+			JumpPointPathFinder finder = JumpPointPathFinder.buildPathFinder(
+				grid, new ByIndex(octile), new ByIndex(step));
+			finder.setIndexCostEstimators(octile, step);
+			for (int[] pair : randomPairs(random, grid))
+				checkQuery(finder, grid, step, pair[0], pair[1], reference(
+					grid, step, pair[0])[pair[1]]);
+		}
+	}
+
+	@Test
+	public void testHierarchicalNeverBelowOptimum()
+	{
+		Random random = new Random(4);
+		for (int k = 0; k < GRIDS; k++)
+		{
+			GridGraph grid = randomGrid(random, true);
+			GridStepCost step = new GridStepCost(grid, 1, DIAGONAL);
+			HierarchicalPathFinder finder = HierarchicalPathFinder
+				.buildPathFinder(grid, 6, new ByIndex(GridDistance.octile(grid,
+					1, DIAGONAL)), new ByIndex(step));
+			for (int[] pair : randomPairs(random, grid))
+			{
+				float expected = reference(grid, step, pair[0])[pair[1]];
+				SearchResult result = finder.computeBestPath(pair[0], pair[1],
+					new SearchLimits());
+				checkPath(grid, step, pair[0], pair[1], result);
+				if (expected == Float.POSITIVE_INFINITY)
+					assertEquals(SearchResult.NO_PATH, result.getStatus());
+				else
+				{
+					assertEquals(SearchResult.FOUND, result.getStatus());
+					assertTrue("HPA* cost " + result.getCost() + " below "
+						+ expected, result.getCost() >= expected
+						- tolerance(expected));
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testDStarLiteAcrossEdits()
+	{
+		Random random = new Random(5);
+		for (int k = 0; k < GRIDS; k++)
+		{
+			GridGraph grid = randomGrid(random, true);
+			GridStepCost step = new GridStepCost(grid, 1, DIAGONAL);
+			DStarLitePlanner planner = DStarLitePlanner.buildPlanner(grid,
+				new ByIndex(GridDistance.octile(grid, 1, DIAGONAL)),
+				new ByIndex(step));
+			int[] pair = randomPairs(random, grid).get(0);
+			int start = pair[0], goal = pair[1];
+			for (int round = 0; round < 20; round++)
+			{
+				checkPlan(planner, step, start, goal);
+				//move along the plan now and then, then change a few cells
+				int next = planner.getNextId();
+				if (next >= 0 && random.nextBoolean())
+					start = next;
+				for (int i = 0; i < 3; i++)
+				{
+					int x = random.nextInt(SIZE), y = random.nextInt(SIZE);
+					int cell = grid.node(x, y);
+					if (cell == start || cell == goal)
+						continue;
+					if (random.nextInt(3) == 0)
+						grid.setBlocked(x, y, grid.isPassable(cell));
+					else
+						grid.setWeight(x, y, 1 + random.nextInt(4));
+					planner.cellChanged(x, y);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testChunkedGridMatchesDijkstra()
+	{
+		Random random = new Random(6);
+		for (int k = 0; k < GRIDS; k++)
+		{
+			final GridGraph grid = randomGrid(random, true);
+			GridStepCost step = new GridStepCost(grid, 1, DIAGONAL);
+			ChunkedGridGraph chunked = new ChunkedGridGraph(new TileProvider()
+				{
+					public void loadTile(int tileX, int tileY, int size,
+						float[] weights)
+					{
+						for (int y = 0; y < size; y++)
+							for (int x = 0; x < size; x++)
+							{
+								int wx = tileX * size + x, wy = tileY * size + y;
+								weights[y * size + x] = grid.contains(wx, wy)
+									? grid.weight(grid.node(wx, wy))
+									: GridGraph.BLOCKED;
+							}
+					}
+				}, 8, 64);
+			PathFinder finder = AStarPathFinder.buildIndexPathFinder(chunked,
+				chunked.octile(1, DIAGONAL), chunked.stepCost(1, DIAGONAL));
+			for (int[] pair : randomPairs(random, grid))
+			{
+				float expected = reference(grid, step, pair[0])[pair[1]];
+				int startId = chunkedId(grid, pair[0]);
+				int endId = chunkedId(grid, pair[1]);
+				SearchResult result = finder.computeBestPath(startId, endId,
+					new SearchLimits());
+				checkCost(expected, result);
+			}
+		}
+	}
+
+	@Test
+	public void testSnapshotRoundTrips() throws Exception
+	{
+		Random random = new Random(7);
+		GridGraph grid = randomGrid(random, true);
+		GridStepCost step = new GridStepCost(grid, 1, DIAGONAL);
+		PathCostEstimator pathCost = new ByIndex(GridDistance.octile(grid, 1,
+			DIAGONAL));
+		List<int[]> pairs = randomPairs(random, grid);
+
+		File file = folder.newFile("grid.snapshot");
+		GraphSnapshot.write(grid, file);
+		Graph copy = GraphSnapshot.read(file);
+		assertEquals(grid.size(), copy.size());
+		for (int node = 0; node < grid.size(); node++)
+		{
+			assertEquals(grid.isPassable(node), copy.isPassable(node));
+			assertEquals(grid.weight(node), copy.weight(node), 0);
+			assertEquals(grid.id(node), copy.id(node));
+		}
+
+		ContractionHierarchyPathFinder ch = ContractionHierarchyPathFinder
+			.buildIndexPathFinder(grid, step);
+		file = folder.newFile("ch.snapshot");
+		ch.writeSnapshot(file);
+		ContractionHierarchyPathFinder chCopy = ContractionHierarchyPathFinder
+			.readSnapshot(file);
+
+		HierarchicalPathFinder hpa = HierarchicalPathFinder.buildPathFinder(
+			grid, 6, pathCost, new ByIndex(step));
+		file = folder.newFile("hpa.snapshot");
+		hpa.writeSnapshot(file);
+		HierarchicalPathFinder hpaCopy = HierarchicalPathFinder.readSnapshot(
+			file, pathCost, new ByIndex(step));
+
+		Landmarks landmarks = Landmarks.selectFarthest(grid, step, 4);
+		file = folder.newFile("landmarks.snapshot");
+		landmarks.writeSnapshot(file);
+		Landmarks landmarksCopy = Landmarks.readSnapshot(file, grid);
+
+		for (int[] pair : pairs)
+		{
+			float expected = reference(grid, step, pair[0])[pair[1]];
+			checkQuery(chCopy, grid, step, pair[0], pair[1], expected);
+			SearchResult before = hpa.computeBestPath(pair[0], pair[1],
+				new SearchLimits());
+			SearchResult after = hpaCopy.computeBestPath(pair[0], pair[1],
+				new SearchLimits());
+			assertEquals(before.getStatus(), after.getStatus());
+			assertEquals(before.getCost(), after.getCost(), 0);
+			assertEquals(landmarks.cost(pair[0], pair[1]), landmarksCopy.cost(
+				pair[0], pair[1]), 0);
+		}
+	}
+
+	@Test
+	public void testPathCacheKeepsPathsAvoidingRaisedNodes() throws Exception
+	{
+		Random random = new Random(8);
+		for (int k = 0; k < GRIDS; k++)
+		{
+			GridGraph grid = randomGrid(random, true);
+			GridStepCost step = new GridStepCost(grid, 1, DIAGONAL);
+			PathCache cache = new PathCache(AStarPathFinder.buildIndexPathFinder(
+				grid, GridDistance.octile(grid, 1, DIAGONAL), step), 1000);
+			List<int[]> pairs = randomPairs(random, grid);
+			List<int[]> paths = new ArrayList<>();
+			int raised = -1;
+			for (int[] pair : pairs)
+			{
+				cachedCost(cache, pair);
+				int[] path = new int[cache.getBestPathLength()];
+				cache.getBestPathIds(path);
+				paths.add(path);
+				if (raised < 0 && path.length > 2)
+					raised = path[path.length / 2];
+			}
+			if (raised < 0)
+				continue; //no path long enough to cross
+
+			//raise a node on a cached path: only the paths crossing it go
+			long previousVersion = grid.version();
+			if (random.nextBoolean())
+				grid.setBlocked(grid.x(raised), grid.y(raised), true);
+			else
+				grid.setWeight(grid.x(raised), grid.y(raised), grid.weight(
+					raised) + 10);
+			cache.nodesRaised(new int[] { raised }, previousVersion);
+			cache.resetCounters();
+			int kept = 0;
+			for (int i = 0; i < pairs.size(); i++)
+			{
+				int[] pair = pairs.get(i);
+				if (!contains(paths.get(i), raised)
+					&& !contains(pairs.subList(0, i), pair))
+					kept++;
+				float expected = reference(grid, step, pair[0])[pair[1]];
+				float cost = cachedCost(cache, pair);
+				if (expected == Float.POSITIVE_INFINITY)
+					assertEquals(expected, cost, 0);
+				else
+					assertEquals(expected, cost, tolerance(expected));
+			}
+			assertEquals(kept, cache.getHitCount()
+				- (pairs.size() - distinct(pairs)));
+		}
+	}
+
+	/**
+	 * Runs a query and checks its cost against <code>expected</code>, and
+	 * its path against the cost.
+	 */
+	private static void checkQuery(PathFinder finder, GridGraph grid,
+		IndexCostEstimator step, int start, int dest, float expected)
+	{
+		SearchResult result = finder.computeBestPath(start, dest,
+			new SearchLimits());
+		checkCost(expected, result);
+		checkPath(grid, step, start, dest, result);
+	}
+
+	private static void checkCost(float expected, SearchResult result)
+	{
+		if (expected == Float.POSITIVE_INFINITY)
+			assertEquals(SearchResult.NO_PATH, result.getStatus());
+		else
+		{
+			assertEquals(SearchResult.FOUND, result.getStatus());
+			assertEquals(expected, result.getCost(), tolerance(expected));
+		}
+	}
+
+	/**
+	 * Checks that a path found runs from <code>start</code> to
+	 * <code>dest</code> through neighbors, and costs what was reported.
+	 */
+	private static void checkPath(GridGraph grid, IndexCostEstimator step,
+		int start, int dest, SearchResult result)
+	{
+		if (result.getStatus() != SearchResult.FOUND)
+			return;
+		int[] ids = result.getPathIds();
+		assertEquals(start, ids[0]);
+		assertEquals(dest, ids[ids.length - 1]);
+		int[] neighbors = new int[grid.maxDegree()];
+		float cost = 0;
+		for (int i = 1; i < ids.length; i++)
+		{
+			int from = grid.indexOf(ids[i - 1]), to = grid.indexOf(ids[i]);
+			int numNeigh = grid.neighbors(from, neighbors);
+			boolean adjacent = false;
+			for (int j = 0; j < numNeigh; j++)
+				adjacent |= neighbors[j] == to;
+			assertTrue(ids[i] + " does not neighbor " + ids[i - 1], adjacent);
+			cost += step.cost(from, to);
+		}
+		assertEquals(result.getCost(), cost, tolerance(cost));
+	}
+
+	private static void checkPlan(DStarLitePlanner planner,
+		IndexCostEstimator step, int start, int goal)
+	{
+		float expected = reference(planner.getGrid(), step, start)[goal];
+		try
+		{
+			float cost = planner.plan(start, goal);
+			assertEquals(expected, cost, tolerance(expected));
+		}
+		catch (NoPathFoundException e)
+		{
+			if (expected != Float.POSITIVE_INFINITY)
+				fail("D* Lite found no path, Dijkstra found " + expected);
+		}
+	}
+
+	private static float cachedCost(PathCache cache, int[] pair)
+	{
+		try
+		{
+			return cache.computeBestPath(pair[0], pair[1]);
+		}
+		catch (NoPathFoundException e)
+		{
+			return Float.POSITIVE_INFINITY;
+		}
+	}
+
+	/**
+	 * Computes the costs from <code>start</code> to every node, by plain
+	 * Dijkstra search.
+	 */
+	private static float[] reference(Graph graph, IndexCostEstimator step,
+		int start)
+	{
+		int n = graph.size();
+		float[] dist = new float[n];
+		boolean[] done = new boolean[n];
+		int[] neighbors = new int[graph.maxDegree()];
+		Arrays.fill(dist, Float.POSITIVE_INFINITY);
+		dist[start] = 0;
+		while (true)
+		{
+			int best = -1;
+			for (int node = 0; node < n; node++)
+				if (!done[node] && dist[node] != Float.POSITIVE_INFINITY
+					&& (best < 0 || dist[node] < dist[best]))
+					best = node;
+			if (best < 0)
+				return dist;
+			done[best] = true;
+			int numNeigh = graph.neighbors(best, neighbors);
+			for (int i = 0; i < numNeigh; i++)
+			{
+				int next = neighbors[i];
+				float cost = dist[best] + step.cost(best, next);
+				if (cost < dist[next])
+					dist[next] = cost;
+			}
+		}
+	}
+
+	/**
+	 * Builds a grid with about a quarter of its cells blocked, and the
+	 * others of weight 1, or of weights from 1 to 4 if <code>weighted</code>.
+	 * Ids equal cell indices.
+	 */
+	private static GridGraph randomGrid(Random random, boolean weighted)
+	{
+		int[][] cells = new int[SIZE][SIZE];
+		int[][] ids = new int[SIZE][SIZE];
+		for (int y = 0; y < SIZE; y++)
+			for (int x = 0; x < SIZE; x++)
+			{
+				ids[y][x] = y * SIZE + x;
+				cells[y][x] = random.nextInt(4) == 0 ? PathFinder.WEIGHT_INF
+					: weighted ? 1 + random.nextInt(4) : 1;
+			}
+		return weighted ? GridGraph.buildWeighted(cells, ids) : GridGraph
+			.build(cells, ids);
+	}
+
+	/** Picks pairs of passable cells, some of them unreachable. */
+	private static List<int[]> randomPairs(Random random, Graph graph)
+	{
+		List<int[]> pairs = new ArrayList<>();
+		while (pairs.size() < QUERIES)
+		{
+			int start = random.nextInt(graph.size());
+			int dest = random.nextInt(graph.size());
+			if (graph.isPassable(start) && graph.isPassable(dest))
+				pairs.add(new int[] { start, dest });
+		}
+		return pairs;
+	}
+
+	/** Gets the id of a grid cell in a <code>ChunkedGridGraph</code>. */
+	private static int chunkedId(GridGraph grid, int node)
+	{
+		return grid.y(node) << 16 | grid.x(node);
+	}
+
+	private static boolean contains(int[] path, int node)
+	{
+		for (int step : path)
+			if (step == node)
+				return true;
+		return false;
+	}
+
+	private static boolean contains(List<int[]> pairs, int[] pair)
+	{
+		for (int[] other : pairs)
+			if (other[0] == pair[0] && other[1] == pair[1])
+				return true;
+		return false;
+	}
+
+	private static int distinct(List<int[]> pairs)
+	{
+		int count = 0;
+		for (int i = 0; i < pairs.size(); i++)
+			if (!contains(pairs.subList(0, i), pairs.get(i)))
+				count++;
+		return count;
+	}
+
+	private static float tolerance(float cost)
+	{
+		return 1e-4f * Math.max(1, cost);
+	}
+
+	/**
+	 * Calls an <code>IndexCostEstimator</code> through the
+	 * <code>PathCostEstimator</code> interface, on grids whose ids equal
+	 * their cell indices.
+	 */
+	private static final class ByIndex implements PathCostEstimator
+	{
+		private final IndexCostEstimator estimator;
+
+		ByIndex(IndexCostEstimator estimator)
+		{
+			this.estimator = estimator;
+		}
+
+		public float cost(PathNode start, PathNode dest)
+		{
+			return estimator.cost(start.id(), dest.id());
+		}
+	}
+}